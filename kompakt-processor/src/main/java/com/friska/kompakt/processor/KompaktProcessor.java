@@ -0,0 +1,285 @@
+package com.friska.kompakt.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An annotation processor generating a {@code KompaktCodec} for every class implementing {@code JSONSerialisable} in
+ * the compiled sources. For a class {@code Foo}, the codec {@code FooKompaktCodec} is generated in the same package
+ * (nested classes are named after their enclosing classes, such as {@code Outer_InnerKompaktCodec}, while underscores
+ * within names are written as "_1", such as {@code Outer_1InnerKompaktCodec} for a class {@code Outer_Inner}), and
+ * every generated codec is registered in {@code META-INF/services/com.friska.kompakt.KompaktCodec}, where Kompakt finds
+ * it at runtime.<p>
+ * Codecs read and assign fields directly, hence a codec is only generated for a class when it can be done without
+ * reflection, that is, the class is a record, or a concrete top-level or static nested class with a non-private
+ * no-argument constructor whose serialised fields are neither private nor final. Classes annotated with
+ * {@code DeepSerialise} are skipped, as well as classes that are not accessible from their own package. Every class
+ * that is skipped keeps being serialised and deserialised through reflection.
+ */
+@SupportedAnnotationTypes("*")
+public class KompaktProcessor extends AbstractProcessor {
+
+    private static final String SERIALISABLE = "com.friska.kompakt.JSONSerialisable";
+
+    private static final String CODEC = "com.friska.kompakt.KompaktCodec";
+
+    private static final String IGNORED = "com.friska.kompakt.annotations.Ignored";
+
+    private static final String AS_STRING = "com.friska.kompakt.annotations.SerialiseAsString";
+
+    private static final String AS_BASE64 = "com.friska.kompakt.annotations.SerialiseAsBase64";
+
+    private static final String DEEP = "com.friska.kompakt.annotations.DeepSerialise";
+
+    private final Set<String> generated = new LinkedHashSet<>();
+
+    private Elements elements;
+
+    private Types types;
+
+    private Filer filer;
+
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        filer = processingEnv.getFiler();
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement serialisable = elements.getTypeElement(SERIALISABLE);
+        if (serialisable == null) return false;
+
+        if (roundEnv.processingOver()) {
+            writeRegistry();
+            return false;
+        }
+
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements()))
+            scan(type, serialisable);
+        return false;
+    }
+
+    /**
+     * Generates codecs for a type and every type nested inside it.
+     */
+    private void scan(TypeElement type, TypeElement serialisable) {
+        if (types.isAssignable(types.erasure(type.asType()), types.erasure(serialisable.asType())))
+            generate(type);
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements()))
+            scan(nested, serialisable);
+    }
+
+    private void generate(TypeElement type) {
+        String reason = unsupported(type);
+        if (reason != null) {
+            messager.printMessage(Diagnostic.Kind.NOTE,
+                    "No codec generated for " + type.getQualifiedName() + " (" + reason + "), it will be "
+                            + "serialised through reflection.", type);
+            return;
+        }
+
+        PackageElement pkg = elements.getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String codecName = codecName(type);
+        String qualifiedCodec = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+        String typeName = types.erasure(type.asType()).toString();
+
+        boolean record = type.getKind() == ElementKind.RECORD;
+        List<VariableElement> all = new ArrayList<>();
+        List<VariableElement> serialised = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)) continue;
+            all.add(field);
+            if (!hasAnnotation(field, IGNORED)) serialised.add(field);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("/**\n * Generated by the Kompakt annotation processor, do not edit.\n */\n");
+        sb.append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n");
+        sb.append("public final class ").append(codecName).append(" implements ").append(CODEC)
+                .append("<").append(typeName).append("> {\n\n");
+
+        sb.append("    private static final String[] NAMES = {");
+        for (int i = 0; i < serialised.size(); i++) {
+            if (i != 0) sb.append(", ");
+            sb.append(elements.getConstantExpression(serialised.get(i).getSimpleName().toString()));
+        }
+        sb.append("};\n\n");
+
+        sb.append("    @Override\n    public Class<").append(typeName).append("> type() {\n")
+                .append("        return ").append(typeName).append(".class;\n    }\n\n");
+
+        sb.append("    @Override\n    public String[] fieldNames() {\n        return NAMES.clone();\n    }\n\n");
+
+        appendFlag(sb, "serialiseAsString", serialised, AS_STRING);
+        appendFlag(sb, "serialiseAsBase64", serialised, AS_BASE64);
+
+        sb.append("    @Override\n    public Object read(").append(typeName).append(" obj, int index) {\n")
+                .append("        return switch (index) {\n");
+        for (int i = 0; i < serialised.size(); i++) {
+            String name = serialised.get(i).getSimpleName().toString();
+            sb.append("            case ").append(i).append(" -> obj.").append(name)
+                    .append(record ? "();\n" : ";\n");
+        }
+        sb.append("            default -> throw new IndexOutOfBoundsException(index);\n        };\n    }\n\n");
+
+        sb.append("    @Override\n    public ").append(typeName)
+                .append(" deserialise(com.friska.kompakt.JSONObject object) {\n");
+        if (record) {
+            sb.append("        return new ").append(typeName).append("(");
+            for (int i = 0; i < all.size(); i++) {
+                if (i != 0) sb.append(",\n                ");
+                sb.append(readExpression(all.get(i)));
+            }
+            sb.append(");\n");
+        } else {
+            sb.append("        ").append(typeName).append(" obj = new ").append(typeName).append("();\n");
+            for (VariableElement field : serialised) {
+                String name = field.getSimpleName().toString();
+                sb.append("        if (object.contains(").append(elements.getConstantExpression(name))
+                        .append(")) obj.").append(name).append(" = ").append(readExpression(field)).append(";\n");
+            }
+            sb.append("        return obj;\n");
+        }
+        sb.append("    }\n}\n");
+
+        try {
+            JavaFileObject file = filer.createSourceFile(qualifiedCodec, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(sb.toString());
+            }
+            generated.add(qualifiedCodec);
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Unable to write codec " + qualifiedCodec + ": " + e, type);
+        }
+    }
+
+    /**
+     * Appends a method returning whether the field at a given index is annotated with the given annotation.
+     */
+    private static void appendFlag(StringBuilder sb, String method, List<VariableElement> fields, String annotation) {
+        sb.append("    @Override\n    public boolean ").append(method).append("(int index) {\n")
+                .append("        return switch (index) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            if (hasAnnotation(fields.get(i), annotation))
+                sb.append("            case ").append(i).append(" -> true;\n");
+        }
+        sb.append("            default -> false;\n        };\n    }\n\n");
+    }
+
+    /**
+     * @return an expression reading the attribute of a field from the JSON object {@code object}, converted to the
+     * type of the field.
+     */
+    private String readExpression(VariableElement field) {
+        TypeMirror erased = types.erasure(field.asType());
+        return CODEC + ".read(object, " + elements.getConstantExpression(field.getSimpleName().toString()) + ", "
+                + erased + ".class)";
+    }
+
+    /**
+     * @return the reason a codec cannot be generated for a type, or null if it can.
+     */
+    private String unsupported(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS && type.getKind() != ElementKind.RECORD)
+            return "not a class or record";
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) return "abstract class";
+        if (hasAnnotation(type, DEEP)) return "deep serialised";
+        for (Element e = type; e instanceof TypeElement t; e = t.getEnclosingElement()) {
+            if (t.getModifiers().contains(Modifier.PRIVATE)) return "private class";
+            if (t.getNestingKind().isNested() && !t.getModifiers().contains(Modifier.STATIC)
+                    && t.getKind() == ElementKind.CLASS)
+                return "inner class";
+        }
+        if (type.getKind() == ElementKind.RECORD) return null;
+
+        boolean constructor = false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) constructor = true;
+        }
+        if (!constructor) return "no accessible no-argument constructor";
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || hasAnnotation(field, IGNORED)) continue;
+            if (modifiers.contains(Modifier.PRIVATE)) return "private field " + field.getSimpleName();
+            if (modifiers.contains(Modifier.FINAL)) return "final field " + field.getSimpleName();
+        }
+        return null;
+    }
+
+    /**
+     * Names the codec of a class after the simple names of the class and of its enclosing classes, separated by '_',
+     * where every '_' within a simple name is written as "_1". Since no simple name starts with a digit, distinct
+     * classes, such as the nested class {@code Outer.Inner} and the top-level class {@code Outer_Inner}, never share a
+     * codec name.
+     */
+    private static String codecName(TypeElement type) {
+        StringBuilder name = new StringBuilder(escape(type));
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement t; e = t.getEnclosingElement())
+            name.insert(0, escape(t) + "_");
+        return name.append("KompaktCodec").toString();
+    }
+
+    private static String escape(TypeElement type) {
+        return type.getSimpleName().toString().replace("_", "_1");
+    }
+
+    private static boolean hasAnnotation(Element element, String annotation) {
+        return element.getAnnotationMirrors().stream().anyMatch(a ->
+                ((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation));
+    }
+
+    /**
+     * Registers every generated codec as a service, such that Kompakt can find them through
+     * {@link java.util.ServiceLoader}.
+     */
+    private void writeRegistry() {
+        if (generated.isEmpty()) return;
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + CODEC);
+            try (Writer writer = file.openWriter()) {
+                for (String codec : generated) writer.write(codec + "\n");
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Unable to write the codec registry: " + e);
+        }
+    }
+}
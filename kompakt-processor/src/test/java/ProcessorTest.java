@@ -0,0 +1,122 @@
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.KompaktCodec;
+import com.friska.kompakt.processor.KompaktProcessor;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link KompaktProcessor} by compiling sample classes with it, and using the generated codecs.
+ */
+public class ProcessorTest {
+
+    private static final String SOURCE = """
+            package sample;
+
+            import com.friska.kompakt.JSONSerialisable;
+            import com.friska.kompakt.annotations.Ignored;
+            import com.friska.kompakt.annotations.SerialiseAsString;
+
+            public class Person implements JSONSerialisable {
+
+                public static final int LEGS = 2;
+
+                String name;
+
+                int age;
+
+                @Ignored
+                String secret = "hidden";
+
+                @SerialiseAsString
+                Integer id;
+
+                public Book[] books;
+
+                public record Book(String title, int year) implements JSONSerialisable {}
+
+                public static class Sealed implements JSONSerialisable {
+                    private int hidden;
+                }
+            }
+
+            class Person_Book implements JSONSerialisable {
+                String isbn;
+            }
+            """;
+
+    @Test
+    public void testGeneratedCodecs() throws Exception {
+        Path out = Files.createTempDirectory("kompakt-processor");
+        compile(out);
+
+        assertTrue(Files.exists(out.resolve("sample/PersonKompaktCodec.class")));
+        assertTrue(Files.exists(out.resolve("sample/Person_BookKompaktCodec.class")));
+        assertTrue(Files.exists(out.resolve("sample/Person_1BookKompaktCodec.class")));
+        assertFalse(Files.exists(out.resolve("sample/Person_SealedKompaktCodec.class")));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{out.toUri().toURL()},
+                ProcessorTest.class.getClassLoader())) {
+            List<String> registered = new ArrayList<>();
+            for (KompaktCodec<?> codec : ServiceLoader.load(KompaktCodec.class, loader))
+                registered.add(codec.type().getName());
+            assertEquals(List.of("sample.Person", "sample.Person$Book", "sample.Person_Book"), registered);
+
+            Thread.currentThread().setContextClassLoader(loader);
+            Class<?> person = loader.loadClass("sample.Person");
+            String json = """
+                    {
+                      "name": "John Doe",
+                      "age": 23,
+                      "secret": "exposed",
+                      "id": "7",
+                      "books": [
+                        {
+                          "title": "Dune",
+                          "year": 1965
+                        }
+                      ]
+                    }
+                    """;
+            Object p = JSONParser.parseAs(json.replace("\"7\"", "7"), person);
+            assertEquals(strip(json.replace("\"secret\": \"exposed\",", "")),
+                    strip(((JSONSerialisable) p).serialise()));
+        }
+    }
+
+    private static void compile(Path out) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///sample/Person.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return SOURCE;
+            }
+        };
+        StringWriter errors = new StringWriter();
+        JavaCompiler.CompilationTask task = compiler.getTask(errors, null, null,
+                List.of("-d", out.toString(), "-classpath", System.getProperty("java.class.path")),
+                null, List.of(source));
+        task.setProcessors(List.of(new KompaktProcessor()));
+        assertTrue(errors.toString(), task.call());
+    }
+
+    private static String strip(String input) {
+        return input.replaceAll("\\s+", "");
+    }
+}
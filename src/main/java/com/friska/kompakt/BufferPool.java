@@ -0,0 +1,74 @@
+package com.friska.kompakt;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A pool of string builders that {@link JSONWriter} writes into, such that serialising repeatedly does not allocate
+ * and grow a new string builder every time. Platform threads each keep one string builder of their own in a thread
+ * local. Virtual threads are short-lived and may be numerous, so keeping a string builder for each of them would
+ * defeat the purpose, hence they share a small array of string builders instead, taken and returned by compare and
+ * set.<p>
+ * A string builder is only held by one writer at a time: a writer serialising while another is running on the same
+ * thread, for instance from within {@link Object#toString()}, simply finds the pool empty and allocates. String
+ * builders that have grown larger than {@link BufferPool#MAX_RETAINED} characters are left to the garbage collector
+ * instead of being returned to the pool.
+ */
+final class BufferPool {
+
+    /**
+     * The largest capacity of a string builder kept in the pool.
+     */
+    static final int MAX_RETAINED = 1 << 20;
+
+    private static final ThreadLocal<StringBuilder> LOCAL = new ThreadLocal<>();
+
+    private static final AtomicReferenceArray<StringBuilder> SHARED =
+            new AtomicReferenceArray<>(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+
+    private BufferPool() {
+    }
+
+    /**
+     * Takes an empty string builder from the pool, or allocates one if the pool is empty.
+     *
+     * @param capacity the capacity expected to be needed.
+     * @return an empty string builder with at least the given capacity.
+     */
+    static StringBuilder acquire(int capacity) {
+        StringBuilder sb = null;
+        Thread thread = Thread.currentThread();
+        if (thread.isVirtual()) {
+            int mask = SHARED.length() - 1;
+            int start = (int) thread.threadId();
+            for (int i = 0; i <= mask && sb == null; i++) {
+                int slot = (start + i) & mask;
+                StringBuilder pooled = SHARED.get(slot);
+                if (pooled != null && SHARED.compareAndSet(slot, pooled, null)) sb = pooled;
+            }
+        } else {
+            sb = LOCAL.get();
+            if (sb != null) LOCAL.set(null);
+        }
+        if (sb == null) return new StringBuilder(Math.max(capacity, 16));
+        sb.setLength(0);
+        sb.ensureCapacity(capacity);
+        return sb;
+    }
+
+    /**
+     * Returns a string builder to the pool once it is no longer used.
+     */
+    static void release(StringBuilder sb) {
+        if (sb.capacity() > MAX_RETAINED) return;
+        Thread thread = Thread.currentThread();
+        if (thread.isVirtual()) {
+            int mask = SHARED.length() - 1;
+            int start = (int) thread.threadId();
+            for (int i = 0; i <= mask; i++) {
+                if (SHARED.compareAndSet((start + i) & mask, null, sb)) return;
+            }
+        } else {
+            LOCAL.set(sb);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.friska.kompakt;
+
+import com.friska.kompakt.annotations.CacheSerialised;
+import com.friska.kompakt.annotations.DeepSerialise;
+import com.friska.kompakt.annotations.Ignored;
+import com.friska.kompakt.annotations.SerialiseAsBase64;
+import com.friska.kompakt.annotations.SerialiseAsString;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessFlag;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A serialisation plan of a single class, computed once on first use and cached for the lifetime of the class. The
+ * plan holds every non-static, non-ignored field declared in the class, in declaration order, each paired with a
+ * pre-sanitised JSON key and a direct getter, such that {@link JSONSerialisable} never has to reflect on the class
+ * again after the first serialisation. If a {@link KompaktCodec} is registered for the class, the fields are read
+ * through the codec instead, and the class is not reflected on at all.
+ *
+ * @see JSONSerialisable
+ */
+final class ClassPlan {
+
+    private static final ClassValue<ClassPlan> PLANS = new ClassValue<>() {
+        @Override
+        protected ClassPlan computeValue(Class<?> type) {
+            return new ClassPlan(type);
+        }
+    };
+
+    /**
+     * Fields declared in the class itself that should be serialised.
+     */
+    final FieldPlan[] fields;
+
+    /**
+     * Whether the class overrides {@link JSONSerialisable#jsonAttributes()}, in which case its attributes cannot be
+     * read directly from its fields.
+     */
+    final boolean customAttributes;
+
+    /**
+     * Whether no field declared in the class can hold an object, array, collection or map, in which case an instance
+     * of the class can never contain itself.
+     */
+    private final boolean leaf;
+
+    /**
+     * Whether the class is annotated with {@link CacheSerialised}.
+     */
+    final boolean cacheSerialised;
+
+    /**
+     * Whether the class is annotated with {@link DeepSerialise}.
+     */
+    final boolean deepAnnotated;
+
+    private final Class<?> superclass;
+
+    /**
+     * The fields and leafness of the class along with every superclass, computed on first deep serialisation.
+     */
+    private volatile Inherited inherited;
+
+    /**
+     * The omitted field names last resolved for an instance of the class, see {@link ClassPlan#fields(boolean, String[])}.
+     */
+    private volatile Omission omission;
+
+    /**
+     * Moving average of the length of JSON strings written with an instance of the class at their root, used as the
+     * initial capacity of the string builder they are written into. Updates from concurrent serialisations may be
+     * lost, which only makes the average less precise.
+     */
+    private volatile int sizeHint = 256;
+
+    private ClassPlan(Class<?> clazz) {
+        KompaktCodec<?> codec = CodecRegistry.get(clazz);
+        if (codec != null) {
+            String[] names = codec.fieldNames();
+            this.fields = new FieldPlan[names.length];
+            for (int i = 0; i < names.length; i++)
+                fields[i] = new FieldPlan(codec, i, names[i]);
+        } else {
+            ArrayList<FieldPlan> list = new ArrayList<>();
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!field.accessFlags().contains(AccessFlag.STATIC) && !field.isAnnotationPresent(Ignored.class))
+                    list.add(new FieldPlan(field));
+            }
+            this.fields = list.toArray(new FieldPlan[0]);
+        }
+        this.customAttributes = overridesAttributes(clazz);
+        boolean leaf = codec == null && !customAttributes;
+        for (FieldPlan field : fields) leaf &= field.leaf;
+        this.leaf = leaf;
+        this.cacheSerialised = clazz.isAnnotationPresent(CacheSerialised.class);
+        this.deepAnnotated = clazz.isAnnotationPresent(DeepSerialise.class);
+        this.superclass = clazz.getSuperclass();
+    }
+
+    /**
+     * @return the cached plan of a class, computing it if this is the first time the class is seen.
+     */
+    static ClassPlan of(Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+    /**
+     * @param deep whether inherited fields are serialised too.
+     * @return whether the serialised fields of an instance of the class can never lead back to the instance itself,
+     * such that it need not be tracked for circular references.
+     */
+    boolean isLeaf(boolean deep) {
+        return deep ? inherited().leaf : leaf;
+    }
+
+    /**
+     * @param deep whether inherited fields are serialised too.
+     * @return the fields to serialise. If deep, the fields declared in the class come first, followed by those declared
+     * in each superclass in turn, up to {@link Object}.
+     */
+    FieldPlan[] fields(boolean deep) {
+        return deep ? inherited().fields : fields;
+    }
+
+    /**
+     * Resolves the fields to serialise once omitted field names, as returned by
+     * {@link JSONSerialisable#ignoredFields()}, are left out. The result is cached along with the names it was resolved
+     * for, and reused for as long as later instances omit the same names, compared by content, as the cached names are
+     * a copy. Classes whose omitted names never change therefore resolve them once, while classes whose names do change
+     * are resolved again whenever they do. Omitting no names takes the fields straight from the plan.
+     *
+     * @param deep    whether inherited fields are serialised too.
+     * @param omitted names of omitted field variables, or null.
+     * @return the fields to serialise, in the order of {@link ClassPlan#fields(boolean)}.
+     */
+    FieldPlan[] fields(boolean deep, String[] omitted) {
+        if (omitted == null || omitted.length == 0) return fields(deep);
+        return resolve(omitted, deep).fields;
+    }
+
+    /**
+     * @param omitted names of omitted field variables, or null.
+     * @return the omitted names as a set, cached as in {@link ClassPlan#fields(boolean, String[])}.
+     */
+    Set<String> omitted(String[] omitted) {
+        if (omitted == null || omitted.length == 0) return Set.of();
+        Omission res = omission;
+        if (res != null && Arrays.equals(res.names, omitted)) return res.set;
+        return resolve(omitted, false).set;
+    }
+
+    private Omission resolve(String[] omitted, boolean deep) {
+        Omission res = omission;
+        if (res != null && res.deep == deep && Arrays.equals(res.names, omitted)) return res;
+        Set<String> set = new HashSet<>(Arrays.asList(omitted));
+        ArrayList<FieldPlan> list = new ArrayList<>();
+        for (FieldPlan field : fields(deep)) {
+            if (!set.contains(field.name)) list.add(field);
+        }
+        //The names are copied, as the array returned by ignoredFields() may be modified later on
+        res = new Omission(omitted.clone(), set, deep, list.toArray(new FieldPlan[0]));
+        omission = res;
+        return res;
+    }
+
+    /**
+     * Flattens the fields of the class and its superclasses into one array, once for the lifetime of the class. The
+     * plans of superclasses are only computed when first needed, as classes that are never deep serialised may well
+     * extend classes that cannot be reflected on. Concurrent first calls may each compute an identical result.
+     */
+    private Inherited inherited() {
+        Inherited res = inherited;
+        if (res == null) {
+            if (superclass == null) {
+                res = new Inherited(fields, leaf);
+            } else {
+                Inherited parent = of(superclass).inherited();
+                FieldPlan[] all = Arrays.copyOf(fields, fields.length + parent.fields.length);
+                System.arraycopy(parent.fields, 0, all, fields.length, parent.fields.length);
+                res = new Inherited(all, leaf && parent.leaf);
+            }
+            inherited = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the expected length of a JSON string written with an instance of the class at its root.
+     */
+    int sizeHint() {
+        int hint = sizeHint;
+        return hint + (hint >> 3);
+    }
+
+    /**
+     * Records the length of a JSON string written with an instance of the class at its root, moving the size hint
+     * half of the way towards it if it is longer, such that string builders rarely have to grow, or an eighth of the
+     * way if it is shorter.
+     */
+    void recordSize(int size) {
+        int hint = sizeHint;
+        hint += size > hint ? (size - hint) >> 1 : (size - hint) >> 3;
+        sizeHint = Math.min(hint, BufferPool.MAX_RETAINED);
+    }
+
+    /**
+     * Converts the planned fields of an object to attributes.
+     *
+     * @param obj an instance of the planned class.
+     * @return a list of attributes representing the fields.
+     */
+    List<Attribute> attributes(Object obj) {
+        ArrayList<Attribute> attributes = new ArrayList<>(fields.length);
+        for (FieldPlan field : fields)
+            attributes.add(new Attribute(field.name, field.get(obj), field.asString));
+        return attributes;
+    }
+
+    /**
+     * Converts the fields an object inherits from every superclass of the planned class to attributes.
+     *
+     * @param obj  an instance of the planned class.
+     * @param list a list that the attributes are added to.
+     */
+    void addInheritedAttributes(Object obj, List<Attribute> list) {
+        if (superclass == null) return;
+        for (FieldPlan field : of(superclass).inherited().fields)
+            list.add(new Attribute(field.name, field.get(obj), field.asString));
+    }
+
+    private record Inherited(FieldPlan[] fields, boolean leaf) {
+    }
+
+    private record Omission(String[] names, Set<String> set, boolean deep, FieldPlan[] fields) {
+    }
+
+    private static boolean overridesAttributes(Class<?> clazz) {
+        if (!JSONSerialisable.class.isAssignableFrom(clazz)) return false;
+        try {
+            return clazz.getMethod("jsonAttributes").getDeclaringClass() != JSONSerialisable.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A single serialisable field. Fields of primitive number or boolean types are read through a getter of the exact
+     * primitive type, so that they are appended to the JSON string without being boxed. Fields read through a codec
+     * are always treated as objects.
+     */
+    static final class FieldPlan {
+
+        private static final int OBJECT = 0, INT = 1, LONG = 2, DOUBLE = 3, FLOAT = 4, SHORT = 5, BYTE = 6, BOOLEAN = 7;
+
+        /**
+         * Name of the field.
+         */
+        final String name;
+
+        /**
+         * The name of the field, sanitised and wrapped in string laterals and followed by a colon, in every variant
+         * indexed by {@link FieldPlan#keyStyle(boolean, boolean)}.
+         */
+        private final String[] keys;
+
+        /**
+         * Whether the field is annotated with {@link SerialiseAsString}.
+         */
+        final boolean asString;
+
+        /**
+         * Whether the field is annotated with {@link SerialiseAsBase64}.
+         */
+        final boolean asBase64;
+
+        /**
+         * Whether the field can be appended through {@link FieldPlan#appendPrimitive(Object, StringBuilder)}.
+         */
+        final boolean primitive;
+
+        /**
+         * Whether the declared type of the field only admits values written as a plain JSON string, number or boolean.
+         */
+        final boolean leaf;
+
+        private final int kind;
+
+        private final MethodHandle getter;
+
+        @SuppressWarnings("rawtypes")
+        private final KompaktCodec codec;
+
+        private final int index;
+
+        @SuppressWarnings("rawtypes")
+        private FieldPlan(KompaktCodec codec, int index, String name) {
+            this.name = name;
+            this.keys = keys(name);
+            this.asString = codec.serialiseAsString(index);
+            this.asBase64 = codec.serialiseAsBase64(index);
+            this.kind = OBJECT;
+            this.primitive = false;
+            this.leaf = false;
+            this.getter = null;
+            this.codec = codec;
+            this.index = index;
+        }
+
+        private FieldPlan(Field field) {
+            this.name = field.getName();
+            this.keys = keys(name);
+            this.asString = field.isAnnotationPresent(SerialiseAsString.class);
+            this.asBase64 = field.isAnnotationPresent(SerialiseAsBase64.class);
+            Class<?> type = field.getType();
+            this.kind = type == int.class ? INT
+                    : type == long.class ? LONG
+                    : type == double.class ? DOUBLE
+                    : type == float.class ? FLOAT
+                    : type == short.class ? SHORT
+                    : type == byte.class ? BYTE
+                    : type == boolean.class ? BOOLEAN
+                    : OBJECT;
+            this.primitive = kind != OBJECT && !asString;
+            this.leaf = asString || isLeafType(type);
+            try {
+                field.setAccessible(true);
+                MethodHandle mh = MethodHandles.lookup().unreflectGetter(field);
+                Class<?> ret = kind == OBJECT ? Object.class : type;
+                this.getter = mh.asType(MethodType.methodType(ret, Object.class));
+                this.codec = null;
+                this.index = -1;
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Unable to access field \"" + name + "\" for JSON serialisation.", e);
+            }
+        }
+
+        /**
+         * @return the index of the variant of keys written with the given options.
+         */
+        static int keyStyle(boolean compact, boolean asciiOnly) {
+            return (compact ? 1 : 0) | (asciiOnly ? 2 : 0);
+        }
+
+        private static String[] keys(String name) {
+            String[] keys = new String[4];
+            for (int style = 0; style < keys.length; style++) {
+                StringBuilder sb = new StringBuilder("\"");
+                JSONUtils.appendSanitised(name, sb, (style & 2) != 0);
+                keys[style] = sb.append((style & 1) != 0 ? "\":" : "\": ").toString();
+            }
+            return keys;
+        }
+
+        /**
+         * @param keyStyle the variant of the key, see {@link WriterConfig#keyStyle}.
+         * @return the name of the field, sanitised and wrapped in string laterals and followed by a colon.
+         */
+        String key(int keyStyle) {
+            return keys[keyStyle];
+        }
+
+        private static boolean isLeafType(Class<?> type) {
+            if (type.isPrimitive() || (type.isArray() && type.getComponentType().isPrimitive())) return true;
+            if (type.isEnum()) return !JSONSerialisable.class.isAssignableFrom(type);
+            return type == String.class || type == Integer.class || type == Long.class || type == Double.class
+                    || type == Float.class || type == Short.class || type == Byte.class || type == Boolean.class
+                    || type == Character.class;
+        }
+
+        /**
+         * @return the value of this field in an object, boxed if the field is primitive.
+         */
+        @SuppressWarnings("unchecked")
+        Object get(Object obj) {
+            if (codec != null) return codec.read(obj, index);
+            try {
+                return switch (kind) {
+                    case INT -> (int) getter.invokeExact(obj);
+                    case LONG -> (long) getter.invokeExact(obj);
+                    case DOUBLE -> (double) getter.invokeExact(obj);
+                    case FLOAT -> (float) getter.invokeExact(obj);
+                    case SHORT -> (short) getter.invokeExact(obj);
+                    case BYTE -> (byte) getter.invokeExact(obj);
+                    case BOOLEAN -> (boolean) getter.invokeExact(obj);
+                    default -> (Object) getter.invokeExact(obj);
+                };
+            } catch (Throwable e) {
+                throw new RuntimeException("An issue occurred on reading field \"" + name + "\".", e);
+            }
+        }
+
+        /**
+         * Appends the value of a primitive field in an object straight to a string builder.
+         */
+        void appendPrimitive(Object obj, StringBuilder sb) {
+            try {
+                switch (kind) {
+                    case INT -> sb.append((int) getter.invokeExact(obj));
+                    case LONG -> sb.append((long) getter.invokeExact(obj));
+                    case DOUBLE -> sb.append((double) getter.invokeExact(obj));
+                    case FLOAT -> sb.append((float) getter.invokeExact(obj));
+                    case SHORT -> sb.append((short) getter.invokeExact(obj));
+                    case BYTE -> sb.append((byte) getter.invokeExact(obj));
+                    case BOOLEAN -> sb.append((boolean) getter.invokeExact(obj));
+                    default -> throw new IllegalStateException("Field \"" + name + "\" is not primitive.");
+                }
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException("An issue occurred on reading field \"" + name + "\".", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.friska.kompakt;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Holds every {@link KompaktCodec} registered through {@link ServiceLoader}. The registry is loaded once, the first
+ * time a class is serialised or deserialised.
+ */
+final class CodecRegistry {
+
+    private CodecRegistry() {
+    }
+
+    /**
+     * @return the codec registered for a class, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> KompaktCodec<T> get(Class<T> clazz) {
+        return (KompaktCodec<T>) Holder.CODECS.get(clazz);
+    }
+
+    private static final class Holder {
+
+        private static final Map<Class<?>, KompaktCodec<?>> CODECS = load();
+
+        private static Map<Class<?>, KompaktCodec<?>> load() {
+            HashMap<Class<?>, KompaktCodec<?>> codecs = new HashMap<>();
+            Iterator<?> it = ServiceLoader.load(KompaktCodec.class).iterator();
+            while (true) {
+                try {
+                    if (!it.hasNext()) return codecs;
+                    KompaktCodec<?> codec = (KompaktCodec<?>) it.next();
+                    codecs.put(codec.type(), codec);
+                } catch (ServiceConfigurationError ignored) {
+                    //A codec that cannot be loaded simply falls back to reflection, and the next one is looked for.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.friska.kompakt;
+
+/**
+ * Represents what {@link JSONSerialisable} should do upon encountering a circular reference, that is, an object,
+ * array, collection or map that (directly or indirectly) contains itself. Objects that are merely shared, appearing
+ * more than once in the serialised tree without containing themselves, are serialised in full every time they appear.
+ *
+ * @see JSONSerialisable#setCyclePolicy(CyclePolicy)
+ */
+public enum CyclePolicy {
+
+    /**
+     * Throws a {@link com.friska.kompakt.exceptions.CircularReferenceException} as soon as a circular reference is
+     * found.
+     */
+    FAIL,
+
+    /**
+     * Serialises the circular reference as a JSON null.
+     */
+    NULL,
+
+    /**
+     * Serialises the circular reference as a JSON object of the form <code>{"$ref": "#/path/to/ancestor"}</code>,
+     * where the path is a JSON pointer (RFC 6901) to the ancestor being referenced, relative to the root of the
+     * serialised JSON string.
+     */
+    REFERENCE
+}
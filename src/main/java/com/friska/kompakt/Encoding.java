@@ -0,0 +1,181 @@
+package com.friska.kompakt;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The JSON string of a {@link JSONObject} or {@link JSONArray} whose changes are tracked, kept after it has been
+ * written such that it may be copied instead of being written again, see {@link JSONObject#trackChanges()}. The JSON
+ * string is held as a list of pieces, each being either a string, or the encoding of an object or array held by it,
+ * hence every character is only held once however deeply it is nested, and a changed object is re-encoded by reusing
+ * the encodings of its unchanged children.<p>
+ * Encodings are only valid for as long as the object or array, along with every value inside it, is left unchanged.
+ * Objects and arrays therefore keep a link to the object or array holding them, set when they are added to it, along
+ * which any change discards the encodings of every ancestor. A value held by more than one object or array is
+ * {@link Encoding#SHARED}, such that the objects and arrays holding it are never encoded, and neither are those
+ * holding a value whose changes cannot be told, such as an array or collection.
+ */
+final class Encoding {
+
+    /**
+     * Link of an object or array held by more than one object or array.
+     */
+    static final Object SHARED = new Object();
+
+    final WriterConfig config;
+
+    /**
+     * Size of the indentation the JSON string was written at.
+     */
+    final int currSize;
+
+    /**
+     * Strings and encodings of children, in order.
+     */
+    private final Object[] pieces;
+
+    /**
+     * Length of the whole JSON string.
+     */
+    final int length;
+
+    private Encoding(WriterConfig config, int currSize, Object[] pieces, int length) {
+        this.config = config;
+        this.currSize = currSize;
+        this.pieces = pieces;
+        this.length = length;
+    }
+
+    /**
+     * Encodes the JSON string written into a string builder from an index to its end.
+     *
+     * @param parts encodings of children copied into the JSON string, in order.
+     */
+    static Encoding of(WriterConfig config, int currSize, StringBuilder sb, int from, List<Part> parts) {
+        Object[] pieces = new Object[parts.size() * 2 + 1];
+        int n = 0;
+        int pos = from;
+        for (Part part : parts) {
+            if (part.start > pos) pieces[n++] = sb.substring(pos, part.start);
+            pieces[n++] = part.encoding;
+            pos = part.start + part.encoding.length;
+        }
+        if (sb.length() > pos) pieces[n++] = sb.substring(pos);
+        return new Encoding(config, currSize, n == pieces.length ? pieces : Arrays.copyOf(pieces, n),
+                sb.length() - from);
+    }
+
+    /**
+     * @return whether this encoding was written with a configuration at an indentation.
+     */
+    boolean fits(WriterConfig config, int currSize) {
+        return this.currSize == currSize && (this.config == config || this.config.equals(config));
+    }
+
+    /**
+     * Appends the whole JSON string, without recursion.
+     */
+    void appendTo(StringBuilder sb) {
+        sb.ensureCapacity(sb.length() + length);
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object piece = pending.pop();
+            if (piece instanceof String s) {
+                sb.append(s);
+                continue;
+            }
+            Object[] pieces = ((Encoding) piece).pieces;
+            for (int i = pieces.length - 1; i >= 0; i--) pending.push(pieces[i]);
+        }
+    }
+
+    /**
+     * @return the encoding of an object or array, or null if it has none.
+     */
+    static Encoding of(Object container) {
+        if (container instanceof JSONObject object) return object.encoding;
+        if (container instanceof JSONArray array) return array.encoding;
+        return null;
+    }
+
+    static void set(Object container, Encoding encoding) {
+        if (container instanceof JSONObject object) object.encoding = encoding;
+        else ((JSONArray) container).encoding = encoding;
+    }
+
+    /**
+     * Links a value added to an object or array to its holder, if it is an object or array whose changes are tracked.
+     * A value already held elsewhere becomes {@link Encoding#SHARED}, and the encodings of its previous holder and of
+     * its ancestors are discarded, since its changes would no longer reach them.
+     */
+    static void link(Object holder, Object value) {
+        Object parent;
+        if (value instanceof JSONObject object && object.getClass() == JSONObject.class && !object.isFrozen()) {
+            parent = object.parent;
+            object.parent = parent == null || parent == holder ? holder : SHARED;
+        } else if (value instanceof JSONArray array && !array.isFrozen()) {
+            parent = array.parent;
+            array.parent = parent == null || parent == holder ? holder : SHARED;
+        } else {
+            return;
+        }
+        if (parent != null && parent != holder && parent != SHARED) invalidate(parent);
+    }
+
+    /**
+     * Unlinks a value removed from an object or array from its holder. A value once shared stays so.
+     */
+    static void unlink(Object holder, Object value) {
+        if (value instanceof JSONObject object && object.parent == holder) object.parent = null;
+        else if (value instanceof JSONArray array && array.parent == holder) array.parent = null;
+    }
+
+    /**
+     * Discards the encodings of a changed object or array and of its ancestors. An object or array without an encoding
+     * is never held by the encoding of its holder, hence the walk stops at the first ancestor without one.
+     */
+    static void invalidate(Object container) {
+        Object node = container;
+        while (true) {
+            Object parent;
+            if (node instanceof JSONObject object) {
+                if (object.encoding == null && node != container) return;
+                object.encoding = null;
+                parent = object.parent;
+            } else if (node instanceof JSONArray array) {
+                if (array.encoding == null && node != container) return;
+                array.encoding = null;
+                parent = array.parent;
+            } else {
+                return;
+            }
+            node = parent;
+        }
+    }
+
+    /**
+     * @return whether a value held by an object or array may be part of its encoding, which is the case if the value
+     * never changes, or if it is an object or array whose changes are tracked and linked to the holder.
+     */
+    static boolean isTracked(Object value, Object holder) {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof RawJSON)
+            return true;
+        if (value instanceof JSONObject object) {
+            return object.isFrozen() || (object.getClass() == JSONObject.class && object.parent == holder);
+        }
+        if (value instanceof JSONArray array) return array.isFrozen() || array.parent == holder;
+        return value instanceof Integer || value instanceof Long || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte || value.getClass() == BigDecimal.class
+                || value.getClass() == BigInteger.class;
+    }
+
+    /**
+     * The encoding of a child, copied into the JSON string of its holder at an index.
+     */
+    record Part(int start, Encoding encoding) {
+    }
+}
@@ -0,0 +1,140 @@
+package com.friska.kompakt;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the JSON strings of objects whose class is annotated with
+ * {@link com.friska.kompakt.annotations.CacheSerialised}, keyed by the identity of each object and the configuration
+ * it was serialised with. Objects are only weakly referenced, such that caching a JSON string never keeps an object
+ * alive, and entries of collected objects are removed the next time a JSON string is cached.<p>
+ * JSON strings are cached along with the indentation they were written at, and copied by {@link JSONWriter} as they
+ * are wherever an object is written at the same indentation again. At most {@link FragmentCache#MAX_CONFIGS}
+ * configurations and indentations are cached for each object, replacing the oldest one beyond that. Frozen
+ * {@link JSONObject}s hold their fragments themselves, through {@link FragmentCache#find(Fragment[], WriterConfig, int)}
+ * and {@link FragmentCache#with(Fragment[], Fragment)}.
+ */
+final class FragmentCache {
+
+    private static final int MAX_CONFIGS = 4;
+
+    private static final ConcurrentHashMap<Key, Fragment[]> CACHE = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<>();
+
+    private FragmentCache() {
+    }
+
+    /**
+     * @return the cached JSON string of an object serialised with a configuration at an indentation, or null if there
+     * is none.
+     */
+    static Fragment get(Object obj, WriterConfig config, int currSize) {
+        return find(CACHE.get(new Key(obj, null)), config, currSize);
+    }
+
+    /**
+     * Caches the JSON string of an object serialised with a configuration at an indentation.
+     *
+     * @return the cached JSON string.
+     */
+    static Fragment put(Object obj, WriterConfig config, int currSize, String json) {
+        for (Reference<?> ref; (ref = QUEUE.poll()) != null; ) CACHE.remove((Key) ref);
+        Fragment fragment = new Fragment(config, currSize, json);
+        CACHE.merge(new Key(obj, QUEUE), new Fragment[]{fragment}, (old, added) -> with(old, fragment));
+        return fragment;
+    }
+
+    /**
+     * @return the fragment serialised with a configuration at an indentation, or null if there is none.
+     */
+    static Fragment find(Fragment[] fragments, WriterConfig config, int currSize) {
+        if (fragments == null) return null;
+        for (Fragment fragment : fragments) {
+            if (fragment.config == config && fragment.currSize == currSize) return fragment;
+        }
+        for (Fragment fragment : fragments) {
+            if (fragment.currSize == currSize && fragment.config.equals(config)) return fragment;
+        }
+        return null;
+    }
+
+    /**
+     * @return the fragments with another one added, dropping the oldest beyond {@link FragmentCache#MAX_CONFIGS}, or
+     * the same fragments if one with the same configuration and indentation is already there.
+     */
+    static Fragment[] with(Fragment[] fragments, Fragment fragment) {
+        if (fragments == null) return new Fragment[]{fragment};
+        if (find(fragments, fragment.config, fragment.currSize) != null) return fragments;
+        Fragment[] res = new Fragment[Math.min(fragments.length + 1, MAX_CONFIGS)];
+        System.arraycopy(fragments, fragments.length + 1 - res.length, res, 0, res.length - 1);
+        res[res.length - 1] = fragment;
+        return res;
+    }
+
+    /**
+     * A JSON string along with the configuration and indentation it was serialised with, and its UTF-8 encoding once
+     * needed.
+     */
+    static final class Fragment {
+
+        final WriterConfig config;
+
+        /**
+         * Size of the indentation the JSON string was written at, including the indentation before its first line.
+         */
+        final int currSize;
+
+        final String json;
+
+        /**
+         * Volatile such that a frozen object shared between threads never publishes the array before its contents.
+         */
+        private volatile byte[] utf8;
+
+        Fragment(WriterConfig config, int currSize, String json) {
+            this.config = config;
+            this.currSize = currSize;
+            this.json = json;
+        }
+
+        /**
+         * @return the JSON string encoded in UTF-8, which must not be modified.
+         */
+        byte[] utf8() {
+            byte[] bytes = utf8;
+            if (bytes == null) utf8 = bytes = json.getBytes(StandardCharsets.UTF_8);
+            return bytes;
+        }
+    }
+
+    /**
+     * A weak reference compared by the identity of its referent. Keys whose referent has been collected are only equal
+     * to themselves.
+     */
+    private static final class Key extends WeakReference<Object> {
+
+        private final int hash;
+
+        Key(Object obj, ReferenceQueue<Object> queue) {
+            super(obj, queue);
+            this.hash = System.identityHashCode(obj);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Key key)) return false;
+            Object referent = get();
+            return referent != null && referent == key.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,800 @@
+package com.friska.kompakt;
+
+import com.friska.kompakt.exceptions.IllegalTypeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A growable JSON array, to which elements may be appended, inserted and removed at runtime, much like attributes of a
+ * {@link JSONObject}. Elements are held in an array with spare room at its end, which doubles in length whenever it is
+ * full, such that appending takes amortised constant time.<p>
+ * An array holding only numbers of a single type may be specialised: arrays created through
+ * {@link JSONArray#ofLongs(long...)} or {@link JSONArray#ofDoubles(double...)}, or starting with
+ * {@link JSONArray#addLong(long)} or {@link JSONArray#addDouble(double)}, hold their elements in a {@code long[]} or
+ * {@code double[]} without boxing them. Elements are boxed as a {@link Long} or {@link Double} when read as objects,
+ * but {@link JSONArray#getLong(int)} and {@link JSONArray#getDouble(int)} read them as they are. Once an element of any
+ * other type is added, the array turns into an array of objects, boxing every number it holds.<p>
+ * Arrays are serialised straight from the array holding their elements, either as the value of a field, attribute or
+ * element, or on their own through {@link JSONArray#serialise()}. {@link JSONArray#asList()} views the elements as a
+ * list, and {@link JSONArray#toArray()} copies them into an array of objects, as returned by
+ * {@link JSONParser#parseAsArray(String)}.
+ */
+public final class JSONArray implements Iterable<Object> {
+
+    private static final Object[] NO_ELEMENTS = new Object[0];
+
+    /**
+     * Kinds of arrays holding the elements.
+     */
+    private static final byte OBJECTS = 0, LONGS = 1, DOUBLES = 2;
+
+    private byte kind = OBJECTS;
+
+    /**
+     * Elements of an array of objects, or null if the array is specialised.
+     */
+    private Object[] elements = NO_ELEMENTS;
+
+    /**
+     * Elements of an array specialised for longs, otherwise null.
+     */
+    private long[] longs;
+
+    /**
+     * Elements of an array specialised for doubles, otherwise null.
+     */
+    private double[] doubles;
+
+    private int size;
+
+    /**
+     * Whether this array may no longer be modified, see {@link JSONArray#freeze()}.
+     */
+    private boolean frozen;
+
+    /**
+     * The hash code of a frozen array, or 0 if not computed yet.
+     */
+    private int hash;
+
+    /**
+     * The object or array holding this array, {@link Encoding#SHARED} if there are several, or null if there is none.
+     */
+    Object parent;
+
+    /**
+     * The JSON string this array was last written as, if held by an object whose changes are tracked, otherwise null.
+     */
+    Encoding encoding;
+
+    /**
+     * Creates an empty array.
+     */
+    public JSONArray() {
+    }
+
+    /**
+     * Creates an empty array with room for a given number of elements.
+     *
+     * @param capacity the number of elements that may be added before the array grows.
+     */
+    public JSONArray(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative.");
+        elements = capacity == 0 ? NO_ELEMENTS : new Object[capacity];
+    }
+
+    /**
+     * @param elements the elements, which are copied.
+     * @return an array of objects holding the given elements.
+     */
+    public static @NotNull JSONArray of(@NotNull Object... elements) {
+        return wrap(elements.clone());
+    }
+
+    /**
+     * @param elements the elements, which are copied.
+     * @return an array specialised for longs holding the given elements.
+     */
+    public static @NotNull JSONArray ofLongs(@NotNull long... elements) {
+        return specialised(LONGS, elements.clone(), null, elements.length);
+    }
+
+    /**
+     * @param elements the elements, which are copied.
+     * @return an array specialised for doubles holding the given elements.
+     */
+    public static @NotNull JSONArray ofDoubles(@NotNull double... elements) {
+        return specialised(DOUBLES, null, elements.clone(), elements.length);
+    }
+
+    private static JSONArray specialised(byte kind, long[] longs, double[] doubles, int size) {
+        JSONArray array = new JSONArray();
+        array.kind = kind;
+        array.elements = null;
+        array.longs = longs;
+        array.doubles = doubles;
+        array.size = size;
+        return array;
+    }
+
+    /**
+     * @return an array of objects holding the given elements, without copying them.
+     */
+    static JSONArray wrap(Object[] elements) {
+        JSONArray array = new JSONArray();
+        array.elements = elements;
+        array.size = elements.length;
+        for (Object element : elements) Encoding.link(array, element);
+        return array;
+    }
+
+    /**
+     * Converts an array of any type, as parsed by {@link JSONParser}, into a JSON array. Arrays of objects, longs and
+     * doubles are held without being copied, arrays of other primitive number types are copied into a specialised
+     * array, and arrays of booleans and characters are boxed.
+     *
+     * @param array an array of any type.
+     * @return the JSON array holding the elements of the given array.
+     */
+    static JSONArray from(Object array) {
+        switch (array) {
+            case Object[] a -> {
+                return wrap(a);
+            }
+            case long[] a -> {
+                return specialised(LONGS, a, null, a.length);
+            }
+            case double[] a -> {
+                return specialised(DOUBLES, null, a, a.length);
+            }
+            case int[] a -> {
+                long[] res = new long[a.length];
+                for (int i = 0; i < a.length; i++) res[i] = a[i];
+                return specialised(LONGS, res, null, a.length);
+            }
+            case float[] a -> {
+                double[] res = new double[a.length];
+                for (int i = 0; i < a.length; i++) res[i] = a[i];
+                return specialised(DOUBLES, null, res, a.length);
+            }
+            default -> {
+                Object[] res = new Object[Array.getLength(array)];
+                for (int i = 0; i < res.length; i++) res[i] = Array.get(array, i);
+                return wrap(res);
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return whether this array holds no elements.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Appends an element to this array.
+     *
+     * @param val an arbitrary value.
+     * @return this, allowing chained method calls.
+     */
+    public JSONArray add(Object val) {
+        insert(size, val);
+        return this;
+    }
+
+    /**
+     * Appends a long to this array, stored without boxing it if this array is empty or specialised for longs.
+     *
+     * @param val the value.
+     * @return this, allowing chained method calls.
+     */
+    public JSONArray addLong(long val) {
+        checkModifiable();
+        Encoding.invalidate(this);
+        if (size == 0 && kind == OBJECTS) specialise(LONGS);
+        if (kind != LONGS) return add(val);
+        if (size == longs.length) longs = Arrays.copyOf(longs, grow());
+        longs[size++] = val;
+        return this;
+    }
+
+    /**
+     * Appends a double to this array, stored without boxing it if this array is empty or specialised for doubles.
+     *
+     * @param val the value.
+     * @return this, allowing chained method calls.
+     */
+    public JSONArray addDouble(double val) {
+        checkModifiable();
+        Encoding.invalidate(this);
+        if (size == 0 && kind == OBJECTS) specialise(DOUBLES);
+        if (kind != DOUBLES) return add(val);
+        if (size == doubles.length) doubles = Arrays.copyOf(doubles, grow());
+        doubles[size++] = val;
+        return this;
+    }
+
+    /**
+     * Inserts an element at an index, shifting the element at that index and every following one to the right.
+     *
+     * @param index the index of the inserted element, from 0 to {@link JSONArray#size()}.
+     * @param val   an arbitrary value.
+     * @return this, allowing chained method calls.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public JSONArray insert(int index, Object val) {
+        checkModifiable();
+        Objects.checkIndex(index, size + 1);
+        if (!fits(val)) generalise();
+        switch (kind) {
+            case LONGS -> {
+                if (size == longs.length) longs = Arrays.copyOf(longs, grow());
+                System.arraycopy(longs, index, longs, index + 1, size - index);
+                longs[index] = (Long) val;
+            }
+            case DOUBLES -> {
+                if (size == doubles.length) doubles = Arrays.copyOf(doubles, grow());
+                System.arraycopy(doubles, index, doubles, index + 1, size - index);
+                doubles[index] = (Double) val;
+            }
+            default -> {
+                if (size == elements.length) elements = Arrays.copyOf(elements, grow());
+                System.arraycopy(elements, index, elements, index + 1, size - index);
+                elements[index] = val;
+            }
+        }
+        size++;
+        Encoding.invalidate(this);
+        Encoding.link(this, val);
+        return this;
+    }
+
+    /**
+     * Replaces the element at an index.
+     *
+     * @param index the index of the element.
+     * @param val   an arbitrary value.
+     * @return the element previously at the index.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public Object set(int index, Object val) {
+        checkModifiable();
+        Object o = get(index);
+        if (!fits(val)) generalise();
+        switch (kind) {
+            case LONGS -> longs[index] = (Long) val;
+            case DOUBLES -> doubles[index] = (Double) val;
+            default -> elements[index] = val;
+        }
+        Encoding.invalidate(this);
+        Encoding.unlink(this, o);
+        Encoding.link(this, val);
+        return o;
+    }
+
+    /**
+     * Removes the element at an index, shifting every following element to the left.
+     *
+     * @param index the index of the element.
+     * @return the removed element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public Object remove(int index) {
+        checkModifiable();
+        Object o = get(index);
+        int moved = size - index - 1;
+        switch (kind) {
+            case LONGS -> System.arraycopy(longs, index + 1, longs, index, moved);
+            case DOUBLES -> System.arraycopy(doubles, index + 1, doubles, index, moved);
+            default -> {
+                System.arraycopy(elements, index + 1, elements, index, moved);
+                elements[size - 1] = null;
+            }
+        }
+        size--;
+        Encoding.invalidate(this);
+        Encoding.unlink(this, o);
+        return o;
+    }
+
+    /**
+     * Removes every element, keeping the kind of array holding them.
+     */
+    public void clear() {
+        checkModifiable();
+        Encoding.invalidate(this);
+        if (kind == OBJECTS) {
+            for (int i = 0; i < size; i++) Encoding.unlink(this, elements[i]);
+            Arrays.fill(elements, 0, size, null);
+        }
+        size = 0;
+    }
+
+    /**
+     * Freezes this array, such that any further attempt to modify it throws an {@link UnsupportedOperationException}.
+     * Every object and array held by this array is frozen as well, as in {@link JSONObject#freeze()}, and a frozen
+     * array computes its {@link JSONArray#hashCode()} once.
+     *
+     * @return this, allowing chained method calls.
+     */
+    public JSONArray freeze() {
+        JSONObject.freeze(this);
+        return this;
+    }
+
+    /**
+     * @return whether this array is frozen, see {@link JSONArray#freeze()}.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Marks this array as frozen, trimming it to its size, and queues every object and array it holds to be frozen.
+     */
+    void freeze(ArrayDeque<Object> pending) {
+        if (frozen) return;
+        frozen = true;
+        switch (kind) {
+            case LONGS -> longs = Arrays.copyOf(longs, size);
+            case DOUBLES -> doubles = Arrays.copyOf(doubles, size);
+            default -> {
+                elements = Arrays.copyOf(elements, size);
+                for (int i = 0; i < size; i++) elements[i] = JSONObject.frozen(elements[i], pending);
+            }
+        }
+    }
+
+    private void checkModifiable() {
+        if (frozen) throw new UnsupportedOperationException("Frozen JSONArrays cannot be modified.");
+    }
+
+    /**
+     * @return whether a value may be stored in the array currently holding the elements.
+     */
+    private boolean fits(Object val) {
+        return switch (kind) {
+            case LONGS -> val instanceof Long;
+            case DOUBLES -> val instanceof Double;
+            default -> true;
+        };
+    }
+
+    private int grow() {
+        return Math.max(4, size * 2);
+    }
+
+    /**
+     * Turns an empty array of objects into a specialised one.
+     */
+    private void specialise(byte kind) {
+        this.kind = kind;
+        if (kind == LONGS) longs = new long[elements.length];
+        else doubles = new double[elements.length];
+        elements = null;
+    }
+
+    /**
+     * Turns a specialised array into an array of objects, boxing every element.
+     */
+    private void generalise() {
+        Object[] boxed = new Object[Math.max(size, kind == LONGS ? longs.length : doubles.length)];
+        for (int i = 0; i < size; i++) boxed[i] = get(i);
+        elements = boxed;
+        longs = null;
+        doubles = null;
+        kind = OBJECTS;
+    }
+
+    /**
+     * Returns the element at an index, boxing it if this array is specialised.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public @Nullable Object get(int index) {
+        Objects.checkIndex(index, size);
+        return switch (kind) {
+            case LONGS -> longs[index];
+            case DOUBLES -> doubles[index];
+            default -> elements[index];
+        };
+    }
+
+    /**
+     * Returns the element at an index with type {@link String}.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is non-null and does not inherit the right type.
+     */
+    public @Nullable String getString(int index) {
+        Object o = get(index);
+        if (o == null) return null;
+        if (!(o instanceof String s))
+            throw new IllegalTypeException("Element at index " + index + " is not of type String.");
+        return s;
+    }
+
+    /**
+     * Returns the element at an index with type {@link Boolean}.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is non-null and does not inherit the right type.
+     */
+    public @Nullable Boolean getBool(int index) {
+        Object o = get(index);
+        if (o == null) return null;
+        if (!(o instanceof Boolean b))
+            throw new IllegalTypeException("Element at index " + index + " is not of type Boolean.");
+        return b;
+    }
+
+    /**
+     * Returns the element at an index that inherits {@link Number}.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is non-null and does not inherit the right type.
+     */
+    public @Nullable Number getNumber(int index) {
+        Object o = get(index);
+        if (o == null) return null;
+        if (!(o instanceof Number n))
+            throw new IllegalTypeException("Element at index " + index + " is not of type Number.");
+        return n;
+    }
+
+    /**
+     * Returns the number at an index as a long, reading arrays specialised for longs without boxing. Numbers of other
+     * types are converted as in {@link Number#longValue()}.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is null or not a number.
+     */
+    public long getLong(int index) {
+        Objects.checkIndex(index, size);
+        if (kind == LONGS) return longs[index];
+        if (kind == DOUBLES) return (long) doubles[index];
+        if (!(elements[index] instanceof Number n))
+            throw new IllegalTypeException("Element at index " + index + " is not of type Number.");
+        return n.longValue();
+    }
+
+    /**
+     * Returns the number at an index as a double, reading arrays specialised for doubles without boxing. Numbers of
+     * other types are converted as in {@link Number#doubleValue()}.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is null or not a number.
+     */
+    public double getDouble(int index) {
+        Objects.checkIndex(index, size);
+        if (kind == DOUBLES) return doubles[index];
+        if (kind == LONGS) return longs[index];
+        if (!(elements[index] instanceof Number n))
+            throw new IllegalTypeException("Element at index " + index + " is not of type Number.");
+        return n.doubleValue();
+    }
+
+    /**
+     * Returns the element at an index that inherits {@link JSONObject}.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is non-null and does not inherit the right type.
+     */
+    public @Nullable JSONObject getJSONObject(int index) {
+        Object o = get(index);
+        if (o == null) return null;
+        if (!(o instanceof JSONObject j))
+            throw new IllegalTypeException("Element at index " + index + " is not of type JSONObject.");
+        return j;
+    }
+
+    /**
+     * Returns the element at an index as a JSON array. If the element is an array of any other type, such as a nested
+     * array parsed by {@link JSONParser}, it is replaced by a JSON array holding its elements as in
+     * {@link JSONObject#getJSONArray(String)}, such that changes made to the returned array are reflected in this one.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     * @throws IllegalTypeException      if the element is non-null and is not an array.
+     */
+    public @Nullable JSONArray getJSONArray(int index) {
+        Object o = get(index);
+        if (o == null || o instanceof JSONArray) return (JSONArray) o;
+        if (!o.getClass().isArray())
+            throw new IllegalTypeException("Element at index " + index + " is not an Array.");
+        JSONArray array = from(o);
+        elements[index] = array;
+        Encoding.link(this, array);
+        return array;
+    }
+
+    /**
+     * @return a copy of the elements in an array of objects, boxing them if this array is specialised.
+     */
+    public @NotNull Object[] toArray() {
+        if (kind == OBJECTS) return Arrays.copyOf(elements, size);
+        Object[] res = new Object[size];
+        for (int i = 0; i < size; i++) res[i] = get(i);
+        return res;
+    }
+
+    /**
+     * @return a copy of the elements as longs, converted as in {@link JSONArray#getLong(int)}.
+     * @throws IllegalTypeException if an element is null or not a number.
+     */
+    public @NotNull long[] toLongArray() {
+        if (kind == LONGS) return Arrays.copyOf(longs, size);
+        long[] res = new long[size];
+        for (int i = 0; i < size; i++) res[i] = getLong(i);
+        return res;
+    }
+
+    /**
+     * @return a copy of the elements as doubles, converted as in {@link JSONArray#getDouble(int)}.
+     * @throws IllegalTypeException if an element is null or not a number.
+     */
+    public @NotNull double[] toDoubleArray() {
+        if (kind == DOUBLES) return Arrays.copyOf(doubles, size);
+        double[] res = new double[size];
+        for (int i = 0; i < size; i++) res[i] = getDouble(i);
+        return res;
+    }
+
+    /**
+     * @return a list backed by this array, such that changes made through either are reflected in the other.
+     */
+    public @NotNull List<Object> asList() {
+        return new AbstractList<>() {
+            @Override
+            public Object get(int index) {
+                return JSONArray.this.get(index);
+            }
+
+            @Override
+            public Object set(int index, Object element) {
+                return JSONArray.this.set(index, element);
+            }
+
+            @Override
+            public void add(int index, Object element) {
+                modCount++;
+                insert(index, element);
+            }
+
+            @Override
+            public Object remove(int index) {
+                modCount++;
+                return JSONArray.this.remove(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public @NotNull Iterator<Object> iterator() {
+        return asList().iterator();
+    }
+
+    /**
+     * @return the array holding the elements if this is an array of objects, which may be longer than
+     * {@link JSONArray#size()}, otherwise null.
+     */
+    Object[] elements() {
+        return elements;
+    }
+
+    /**
+     * @return the {@code long[]} or {@code double[]} holding the elements if this array is specialised, which may be
+     * longer than {@link JSONArray#size()}, otherwise null.
+     */
+    Object primitives() {
+        return kind == LONGS ? longs : doubles;
+    }
+
+    /**
+     * Serialises this array using the configuration set through the static setters of {@link JSONSerialisable}.
+     *
+     * @return a JSON-string representation of this array.
+     */
+    public String serialise() {
+        return serialise(JSONUtils.CONFIG);
+    }
+
+    /**
+     * Serialises this array using the given configuration.
+     *
+     * @param config the configuration to serialise with.
+     * @return a JSON-string representation of this array.
+     */
+    public String serialise(@NotNull WriterConfig config) {
+        return new JSONWriter(config).write(this);
+    }
+
+    /**
+     * String representation defined as its JSON-string representation.
+     */
+    @Override
+    public String toString() {
+        return serialise();
+    }
+
+    /**
+     * Two JSON arrays are equal if they hold the same number of elements, and the elements at each index are equal,
+     * comparing arrays by their content. Integral numbers are compared as longs and floating point numbers as doubles,
+     * whatever their type, hence specialised arrays are equal to arrays of objects holding the same numbers, and an
+     * array parsed with unboxed primitives is equal to the same array parsed without.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof JSONArray array) || size != array.size) return false;
+        if (kind == LONGS && array.kind == LONGS) return Arrays.equals(longs, 0, size, array.longs, 0, size);
+        if (kind == DOUBLES && array.kind == DOUBLES)
+            return Arrays.equals(doubles, 0, size, array.doubles, 0, size);
+        for (int i = 0; i < size; i++) {
+            if (!elementEquals(get(i), array.get(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the elements as in {@link List#hashCode()}, where numbers are hashed as a {@link Long} or {@link Double},
+     * hence specialised arrays hash the same as arrays of objects they are equal to. The hash code of a frozen array is
+     * only computed once.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h != 0) return h;
+        h = 1;
+        switch (kind) {
+            case LONGS -> {
+                for (int i = 0; i < size; i++) h = 31 * h + Long.hashCode(longs[i]);
+            }
+            case DOUBLES -> {
+                for (int i = 0; i < size; i++) h = 31 * h + Double.hashCode(doubles[i]);
+            }
+            default -> {
+                for (int i = 0; i < size; i++) h = 31 * h + elementHash(elements[i]);
+            }
+        }
+        if (frozen) hash = h;
+        return h;
+    }
+
+    /**
+     * Compares two values held by a JSON object or array, where arrays of any type, including JSON arrays, are
+     * compared by their elements as JSON arrays.
+     */
+    static boolean valueEquals(Object o1, Object o2) {
+        if (o1 == o2) return true;
+        if (o1 == null || o2 == null) return false;
+        if (!isArray(o1) || !isArray(o2)) return o1.equals(o2);
+        if (o1 instanceof JSONArray a && o2 instanceof JSONArray b) return a.equals(b);
+
+        //Arrays of other types are compared where they are, without being copied into a JSON array
+        int size = lengthOf(o1);
+        if (size != lengthOf(o2)) return false;
+        switch (o1) {
+            case int[] a when o2 instanceof int[] b -> {
+                return Arrays.equals(a, b);
+            }
+            case long[] a when o2 instanceof long[] b -> {
+                return Arrays.equals(a, b);
+            }
+            case double[] a when o2 instanceof double[] b -> {
+                return Arrays.equals(a, b);
+            }
+            case float[] a when o2 instanceof float[] b -> {
+                return Arrays.equals(a, b);
+            }
+            default -> {
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (!elementEquals(elementOf(o1, i), elementOf(o2, i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes a value held by a JSON object or array, consistently with {@link JSONArray#valueEquals(Object, Object)}.
+     */
+    static int valueHash(Object o) {
+        if (o == null) return 0;
+        if (o instanceof JSONArray array) return array.hashCode();
+        if (!o.getClass().isArray()) return o.hashCode();
+        int h = 1;
+        switch (o) {
+            case Object[] a -> {
+                for (Object element : a) h = 31 * h + elementHash(element);
+            }
+            case int[] a -> {
+                for (int element : a) h = 31 * h + Long.hashCode(element);
+            }
+            case long[] a -> {
+                for (long element : a) h = 31 * h + Long.hashCode(element);
+            }
+            case double[] a -> {
+                for (double element : a) h = 31 * h + Double.hashCode(element);
+            }
+            case float[] a -> {
+                for (float element : a) h = 31 * h + Double.hashCode(element);
+            }
+            default -> {
+                for (int i = 0, n = Array.getLength(o); i < n; i++) h = 31 * h + elementHash(Array.get(o, i));
+            }
+        }
+        return h;
+    }
+
+    private static int lengthOf(Object array) {
+        return array instanceof JSONArray a ? a.size : Array.getLength(array);
+    }
+
+    private static Object elementOf(Object array, int index) {
+        if (array instanceof JSONArray a) return a.get(index);
+        if (array instanceof Object[] a) return a[index];
+        return Array.get(array, index);
+    }
+
+    /**
+     * Compares two members of JSON objects or elements of arrays, where integral numbers are compared as longs and
+     * floating point numbers as doubles, whatever their type.
+     */
+    static boolean elementEquals(Object o1, Object o2) {
+        if (isIntegral(o1) && isIntegral(o2)) return ((Number) o1).longValue() == ((Number) o2).longValue();
+        if (isFloating(o1) && isFloating(o2))
+            return Double.valueOf(((Number) o1).doubleValue()).equals(((Number) o2).doubleValue());
+        return valueEquals(o1, o2);
+    }
+
+    /**
+     * Hashes a member of a JSON object or an element of an array, consistently with
+     * {@link JSONArray#elementEquals(Object, Object)}.
+     */
+    static int elementHash(Object o) {
+        if (isIntegral(o)) return Long.hashCode(((Number) o).longValue());
+        if (isFloating(o)) return Double.hashCode(((Number) o).doubleValue());
+        return valueHash(o);
+    }
+
+    private static boolean isIntegral(Object o) {
+        return o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte;
+    }
+
+    private static boolean isFloating(Object o) {
+        return o instanceof Double || o instanceof Float;
+    }
+
+    private static boolean isArray(Object o) {
+        return o instanceof JSONArray || o.getClass().isArray();
+    }
+}
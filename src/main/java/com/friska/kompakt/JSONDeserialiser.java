@@ -0,0 +1,161 @@
+package com.friska.kompakt;
+
+import com.friska.kompakt.annotations.DeepSerialise;
+import com.friska.kompakt.annotations.Ignored;
+import com.friska.kompakt.exceptions.IllegalTypeException;
+
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessFlag;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.RecordComponent;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * Converts deserialised JSON values into instances of arbitrary classes. Classes with a registered
+ * {@link KompaktCodec} are instantiated through their codec, every other class is instantiated through reflection:
+ * records through their canonical constructor, and other classes through their no-argument constructor, after which
+ * each non-static, non-ignored field present in the JSON object is assigned.
+ */
+final class JSONDeserialiser {
+
+    private JSONDeserialiser() {
+    }
+
+    /**
+     * Creates an instance of a class from a JSON object.
+     *
+     * @param object the JSON object.
+     * @param type   the class to instantiate.
+     * @return a new instance of the class.
+     * @throws IllegalTypeException if the class cannot be instantiated, or an attribute cannot be converted to the
+     *                              type of its field.
+     */
+    static <T> T deserialise(JSONObject object, Class<T> type) {
+        KompaktCodec<T> codec = CodecRegistry.get(type);
+        if (codec != null) return codec.deserialise(object);
+        try {
+            if (type.isRecord()) return deserialiseRecord(object, type);
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            T instance = constructor.newInstance();
+            boolean deep = type.isAnnotationPresent(DeepSerialise.class);
+            for (Class<?> clazz = type; clazz != null; clazz = deep ? clazz.getSuperclass() : null) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (field.accessFlags().contains(AccessFlag.STATIC) || field.isAnnotationPresent(Ignored.class)
+                            || !object.contains(field.getName()))
+                        continue;
+                    field.setAccessible(true);
+                    field.set(instance, convert(object.getItem(field.getName()), field.getType()));
+                }
+            }
+            return instance;
+        } catch (NoSuchMethodException e) {
+            throw new IllegalTypeException("Class " + type.getName()
+                    + " must declare a no-argument constructor in order to be deserialised.");
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalTypeException("Unable to instantiate class " + type.getName() + ".");
+        }
+    }
+
+    private static <T> T deserialiseRecord(JSONObject object, Class<T> type)
+            throws NoSuchMethodException, InstantiationException, IllegalAccessException, InvocationTargetException {
+        RecordComponent[] components = type.getRecordComponents();
+        Class<?>[] types = new Class<?>[components.length];
+        Object[] args = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            String name = components[i].getName();
+            types[i] = components[i].getType();
+            args[i] = convert(object.contains(name) ? object.getItem(name) : null, types[i]);
+        }
+        Constructor<T> constructor = type.getDeclaredConstructor(types);
+        constructor.setAccessible(true);
+        return constructor.newInstance(args);
+    }
+
+    /**
+     * Converts a deserialised JSON value to a given type. Numbers are converted between each other, JSON objects are
+     * deserialised into the type or copied into maps, and arrays are converted element-wise into arrays or copied into
+     * collections.
+     *
+     * @param value a value deserialised from JSON.
+     * @param type  the type to convert to.
+     * @return the converted value, or the default value of the type if value is null.
+     * @throws IllegalTypeException if the value cannot be converted to the type.
+     */
+    @SuppressWarnings("unchecked")
+    static <V> V convert(Object value, Class<V> type) {
+        if (value == null) return type.isPrimitive() ? (V) defaultValue(type) : null;
+        Class<?> boxed = box(type);
+        if (boxed.isInstance(value)) return (V) value;
+        if (value instanceof JSONArray array) value = array.toArray();
+
+        if (value instanceof Number n) {
+            Object res = null;
+            if (boxed == Integer.class) res = n.intValue();
+            else if (boxed == Long.class) res = n.longValue();
+            else if (boxed == Double.class) res = n.doubleValue();
+            else if (boxed == Float.class) res = n.floatValue();
+            else if (boxed == Short.class) res = n.shortValue();
+            else if (boxed == Byte.class) res = n.byteValue();
+            else if (boxed == BigDecimal.class) res = new BigDecimal(n.toString());
+            else if (boxed == BigInteger.class) res = new BigDecimal(n.toString()).toBigInteger();
+            if (res != null) return (V) res;
+        } else if (value instanceof String s) {
+            if (boxed == Character.class && s.length() == 1) return (V) (Character) s.charAt(0);
+            if (type.isEnum()) return (V) toEnum(s, type);
+            if (type == byte[].class) {
+                try {
+                    return (V) Base64.getDecoder().decode(s);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalTypeException("\"" + s + "\" is not a Base64 string.");
+                }
+            }
+        } else if (value instanceof Object[] array) {
+            if (type.isArray()) {
+                Object res = Array.newInstance(type.getComponentType(), array.length);
+                for (int i = 0; i < array.length; i++)
+                    Array.set(res, i, convert(array[i], type.getComponentType()));
+                return (V) res;
+            }
+            if (type.isAssignableFrom(ArrayList.class)) return (V) new ArrayList<>(Arrays.asList(array));
+            if (type.isAssignableFrom(LinkedHashSet.class)) return (V) new LinkedHashSet<>(Arrays.asList(array));
+        } else if (value instanceof JSONObject object && type.isAssignableFrom(LinkedHashMap.class)) {
+            LinkedHashMap<String, Object> map = new LinkedHashMap<>();
+            for (Attribute attribute : object.jsonAttributes())
+                map.put(attribute.name(), attribute.val());
+            return (V) map;
+        } else if (value instanceof JSONObject object && !type.isInterface() && !type.isPrimitive()
+                && !type.isArray() && !Collection.class.isAssignableFrom(type)) {
+            return deserialise(object, type);
+        }
+        throw new IllegalTypeException("Value " + value + " cannot be converted to an instance of "
+                + type.getName() + ".");
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object toEnum(String name, Class<?> type) {
+        try {
+            return Enum.valueOf((Class) type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalTypeException("\"" + name + "\" is not a constant of " + type.getName() + ".");
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return Array.get(Array.newInstance(type, 1), 0);
+    }
+
+    private static Class<?> box(Class<?> type) {
+        return MethodType.methodType(type).wrap().returnType();
+    }
+}
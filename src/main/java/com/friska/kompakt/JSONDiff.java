@@ -0,0 +1,173 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Computes the differences between two trees of JSON objects and arrays as a JSON patch (see
+ * <a href="https://www.rfc-editor.org/rfc/rfc6902">RFC 6902</a>), which turns the first tree into the second when
+ * applied through {@link JSONPatch#apply(Object, Object)}.<p>
+ * Objects are compared member by member, and arrays element by element after aligning them along their longest common
+ * subsequence of equal elements, such that inserting or removing a few elements only yields as many operations.
+ * Common leading and trailing elements are skipped first, and the longest common subsequence of the remaining elements
+ * is only searched for if it would take at most {@link JSONDiff#MAX_LCS_CELLS} comparisons, otherwise they are compared
+ * at the same index. Values held by both trees are skipped without being walked, and so are equal frozen objects and
+ * arrays, whose hash codes are cached. Trees are walked breadth first without recursion.
+ */
+public final class JSONDiff {
+
+    /**
+     * The largest product of the numbers of elements of two arrays aligned along their longest common subsequence.
+     */
+    public static final int MAX_LCS_CELLS = 1 << 20;
+
+    private JSONDiff() {
+    }
+
+    /**
+     * Computes the JSON patch turning a value into another. Values added or replaced by the patch are held by it
+     * without being copied.
+     *
+     * @param source the value the patch applies to, usually a {@link JSONObject} or an array.
+     * @param target the value the patch yields.
+     * @return the JSON patch, as an array of operations, each being a {@link JSONObject}, which is empty if both values
+     * are equal.
+     */
+    public static @NotNull JSONArray diff(@Nullable Object source, @Nullable Object target) {
+        JSONArray patch = new JSONArray();
+        ArrayDeque<Object[]> pending = new ArrayDeque<>();
+        compare("", source, target, patch, pending);
+        while (!pending.isEmpty()) {
+            Object[] task = pending.poll();
+            String path = (String) task[0];
+            if (task[1] instanceof JSONObject a) diffObjects(path, a, (JSONObject) task[2], patch, pending);
+            else diffArrays(path, task[1], task[2], patch, pending);
+        }
+        return patch;
+    }
+
+    /**
+     * Compares two values at the same path, replacing the first by the second if they differ, unless both are objects
+     * or both are arrays, in which case they are queued to be compared member by member or element by element.
+     */
+    private static void compare(String path, Object a, Object b, JSONArray patch, ArrayDeque<Object[]> pending) {
+        if (a == b) return;
+        boolean objects = a instanceof JSONObject && b instanceof JSONObject;
+        boolean arrays = JSONPath.sizeOf(a) >= 0 && JSONPath.sizeOf(b) >= 0;
+        if ((objects || arrays) && !isCachedEqual(a, b)) pending.add(new Object[]{path, a, b});
+        else if (!objects && !arrays && !JSONArray.elementEquals(a, b)) patch.add(operation("replace", path, b));
+    }
+
+    /**
+     * @return whether two objects or arrays are equal, only if telling so is cheap, which is the case for frozen
+     * values whose hash codes are cached.
+     */
+    private static boolean isCachedEqual(Object a, Object b) {
+        boolean frozen;
+        if (a instanceof JSONObject x && b instanceof JSONObject y) frozen = x.isFrozen() && y.isFrozen();
+        else frozen = a instanceof JSONArray x && b instanceof JSONArray y && x.isFrozen() && y.isFrozen();
+        return frozen && a.hashCode() == b.hashCode() && a.equals(b);
+    }
+
+    private static void diffObjects(String path, JSONObject a, JSONObject b, JSONArray patch,
+                                    ArrayDeque<Object[]> pending) {
+        for (int i = 0; i < a.end(); i++) {
+            String name = a.nameAt(i);
+            if (name == null) continue;
+            String child = JSONPath.append(path, name);
+            if (!b.contains(name)) patch.add(operation("remove", child, null));
+            else compare(child, a.valueAt(i), b.getItem(name), patch, pending);
+        }
+        for (int i = 0; i < b.end(); i++) {
+            String name = b.nameAt(i);
+            if (name != null && !a.contains(name))
+                patch.add(operation("add", JSONPath.append(path, name), b.valueAt(i)));
+        }
+    }
+
+    /**
+     * Aligns two arrays along their longest common subsequence, and turns every gap between common elements of the
+     * first array into the gap of the second one. Elements of both gaps at the same offset are compared as by
+     * {@link JSONDiff#compare(String, Object, Object, JSONArray, ArrayDeque)}, and the remaining elements of either gap
+     * are removed or added. Every operation refers to indices of the array as left by the previous operations, which
+     * are those of the second array up to the current element.
+     */
+    private static void diffArrays(String path, Object a, Object b, JSONArray patch, ArrayDeque<Object[]> pending) {
+        int n = JSONPath.sizeOf(a), m = JSONPath.sizeOf(b);
+        int prefix = 0;
+        while (prefix < n && prefix < m && equal(a, prefix, b, prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix && equal(a, n - 1 - suffix, b, m - 1 - suffix)) suffix++;
+
+        //Pairs of indices of common elements within the remaining elements, ending with both ends
+        int[] common = common(a, prefix, n - suffix, b, prefix, m - suffix);
+        int i = prefix, j = prefix;
+        for (int c = 0; c <= common.length; c += 2) {
+            int endA = c < common.length ? common[c] : n - suffix;
+            int endB = c < common.length ? common[c + 1] : m - suffix;
+            for (; i < endA && j < endB; i++, j++) {
+                String child = JSONPath.append(path, Integer.toString(j));
+                compare(child, JSONPath.elementAt(a, i), JSONPath.elementAt(b, j), patch, pending);
+            }
+            for (; i < endA; i++) patch.add(operation("remove", JSONPath.append(path, Integer.toString(j)), null));
+            for (; j < endB; j++) {
+                String child = JSONPath.append(path, Integer.toString(j));
+                patch.add(operation("add", child, JSONPath.elementAt(b, j)));
+            }
+            i++;
+            j++;
+        }
+    }
+
+    private static boolean equal(Object a, int i, Object b, int j) {
+        return JSONArray.elementEquals(JSONPath.elementAt(a, i), JSONPath.elementAt(b, j));
+    }
+
+    /**
+     * Finds the longest common subsequence of two ranges of elements, comparing the hash codes of elements before
+     * comparing the elements themselves.
+     *
+     * @return the indices of each common element in both arrays, in pairs, or no indices if the ranges are too long.
+     */
+    private static int[] common(Object a, int fromA, int toA, Object b, int fromB, int toB) {
+        int n = toA - fromA, m = toB - fromB;
+        if (n == 0 || m == 0 || (long) n * m > MAX_LCS_CELLS) return new int[0];
+        int[] hashA = new int[n], hashB = new int[m];
+        for (int i = 0; i < n; i++) hashA[i] = JSONArray.elementHash(JSONPath.elementAt(a, fromA + i));
+        for (int j = 0; j < m; j++) hashB[j] = JSONArray.elementHash(JSONPath.elementAt(b, fromB + j));
+
+        //lengths[i * (m + 1) + j] is the length of the longest common subsequence of both ranges from i and j
+        int[] lengths = new int[(n + 1) * (m + 1)];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                int cell = i * (m + 1) + j;
+                if (hashA[i] == hashB[j] && equal(a, fromA + i, b, fromB + j))
+                    lengths[cell] = lengths[cell + m + 2] + 1;
+                else
+                    lengths[cell] = Math.max(lengths[cell + m + 1], lengths[cell + 1]);
+            }
+        }
+
+        int[] common = new int[lengths[0] * 2];
+        int c = 0, i = 0, j = 0;
+        while (i < n && j < m) {
+            int cell = i * (m + 1) + j;
+            if (hashA[i] == hashB[j] && lengths[cell] == lengths[cell + m + 2] + 1 && equal(a, fromA + i, b, fromB + j)) {
+                common[c++] = fromA + i++;
+                common[c++] = fromB + j++;
+            } else if (lengths[cell + m + 1] >= lengths[cell + 1]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return common;
+    }
+
+    static JSONObject operation(String op, String path, Object value) {
+        JSONObject operation = new JSONObject().addAttribute("op", op).addAttribute("path", path);
+        return op.equals("remove") ? operation : operation.addAttribute("value", value);
+    }
+}
@@ -5,6 +5,7 @@ import com.friska.kompakt.exceptions.IllegalTypeException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Array;
 import java.util.*;
 
 /**
@@ -12,24 +13,79 @@ import java.util.*;
  * It may be considered a "free" object where attributes can be added and removed at runtime. An attribute is a
  * String-Object pair, where an object is uniquely identified by a unique name, similar to fields in an arbitrary
  * Java class. Not only does this class keep track of attributes, it must also keep track of the order of the attributes,
- * hence attributes are stored oth in a {@link HashMap} for constant time access, and also {@link List} for ordering.<p>
+ * hence names and values are stored in two parallel arrays in insertion order, indexed by an open-addressing hash table
+ * for constant time access. Removing an attribute leaves a gap in the arrays, which are compacted once gaps take up half
+ * of them, such that removal also takes constant time. The names and hash table form a shape, shared by every
+ * object adding the same names in the same order, such as the rows of a parsed JSON array, hence each of these objects
+ * only holds its own values.<p>
+ * An object may be frozen through {@link JSONObject#freeze()}, after which it can no longer be modified, and caches its
+ * hash code and JSON strings. Changes made to an object may instead be tracked through
+ * {@link JSONObject#trackChanges()}, such that serialising it again only re-encodes the objects changed since.<p>
  * Deserialising JSON strings representing type object will also result in an instance of this class.
  *
  * @see Attribute
  */
 public class JSONObject implements JSONSerialisable {
 
+    private static final Object[] NO_VALUES = new Object[0];
+
     /**
-     * A list that tracks the ordering of attributes, as well as used for JSON serialisation.
-     *
-     * @see JSONSerialisable
+     * Names of the attributes, and the indices of their values, possibly shared with other objects.
+     */
+    private Shape shape = Shape.EMPTY;
+
+    /**
+     * Tags of the type of primitive values stored unboxed.
+     */
+    static final byte BOXED = 0, INT = 1, LONG = 2, FLOAT = 3, DOUBLE = 4;
+
+    /**
+     * Values of attributes, at the same index as their names in the shape.
+     */
+    private Object[] values = NO_VALUES;
+
+    /**
+     * Primitive values stored unboxed, as raw bits, at the same index as their names, or null if there are none.
+     * Floating point values are stored as the bits of a double.
+     */
+    private long[] bits;
+
+    /**
+     * Type of each value stored unboxed, or {@link JSONObject#BOXED} for values held in {@link JSONObject#values}, or
+     * null if there are none.
+     */
+    private byte[] tags;
+
+    /**
+     * Whether this object may no longer be modified, see {@link JSONObject#freeze()}.
      */
-    private final List<Attribute> attributeList = new ArrayList<>();
+    private boolean frozen;
 
     /**
-     * A hash-map storing each attribute uniquely identified by its name, for constant time access.
+     * The hash code of a frozen object, or 0 if not computed yet.
      */
-    private final HashMap<String, Object> attributeMap = new HashMap<>();
+    private int hash;
+
+    /**
+     * JSON strings of a frozen object, for each configuration it has been serialised with.
+     */
+    private volatile FragmentCache.Fragment[] fragments;
+
+    /**
+     * Whether the JSON strings of this object and of every object and array inside it are kept, see
+     * {@link JSONObject#trackChanges()}.
+     */
+    private boolean tracking;
+
+    /**
+     * The object or array holding this object, {@link Encoding#SHARED} if there are several, or null if there is none.
+     */
+    Object parent;
+
+    /**
+     * The JSON string this object was last written as, if its changes are tracked, otherwise null.
+     */
+    Encoding encoding;
 
     /**
      * Adds an attribute to this object.
@@ -39,19 +95,257 @@ public class JSONObject implements JSONSerialisable {
      * @return this, allowing chained method calls.
      */
     public JSONObject addAttribute(@NotNull String name, Object val) {
+        int index = append(name);
+        values[index] = val;
+        Encoding.link(this, val);
+        return this;
+    }
+
+    /**
+     * Sets the value of an attribute, which keeps its position if it already exists, or is otherwise added as in
+     * {@link JSONObject#addAttribute(String, Object)}.
+     *
+     * @param name name of attribute.
+     * @param val  an arbitrary value.
+     * @return this, allowing chained method calls.
+     */
+    public JSONObject setAttribute(@NotNull String name, Object val) {
+        int index = shape.indexOf(name);
+        if (index < 0) return addAttribute(name, val);
+        checkModifiable();
+        Encoding.invalidate(this);
+        Encoding.unlink(this, values[index]);
+        values[index] = val;
+        if (tags != null) tags[index] = BOXED;
+        Encoding.link(this, val);
+        return this;
+    }
+
+    /**
+     * Adds an attribute holding a long, stored without boxing it. Note that {@link JSONObject#getNumber(String)}
+     * returns it as a {@link Long}.
+     *
+     * @param name name of attribute, which must be unique and not pre-existing in this object.
+     * @param val  the value.
+     * @return this, allowing chained method calls.
+     */
+    public JSONObject addLong(@NotNull String name, long val) {
+        return addPrimitive(name, LONG, val);
+    }
+
+    /**
+     * Adds an attribute holding a double, stored without boxing it. Note that {@link JSONObject#getNumber(String)}
+     * returns it as a {@link Double}.
+     *
+     * @param name name of attribute, which must be unique and not pre-existing in this object.
+     * @param val  the value.
+     * @return this, allowing chained method calls.
+     */
+    public JSONObject addDouble(@NotNull String name, double val) {
+        return addPrimitive(name, DOUBLE, Double.doubleToRawLongBits(val));
+    }
+
+    /**
+     * Adds an attribute holding a primitive number stored without boxing it.
+     *
+     * @param tag  type of the number, boxed as that type when read as an object.
+     * @param bits the number as a long, or the bits of a double for floating point types.
+     */
+    JSONObject addPrimitive(@NotNull String name, byte tag, long bits) {
+        int index = append(name);
+        if (tags == null) {
+            tags = new byte[values.length];
+            this.bits = new long[values.length];
+        }
+        tags[index] = tag;
+        this.bits[index] = bits;
+        return this;
+    }
+
+    /**
+     * Adds a name to the shape of this object, making room for its value.
+     *
+     * @return the index of the value.
+     */
+    private int append(String name) {
+        checkModifiable();
+        Encoding.invalidate(this);
         name = safeName(name);
-        if (attributeMap.containsKey(name))
+        if (shape.indexOf(name) >= 0)
             throw new IllegalArgumentException("Cannot add pre-existing attribute \"" + name + "\".");
-        attributeList.add(new Attribute(name, val));
-        attributeMap.put(name, val);
+
+        //A private shape full of gaps is compacted instead of growing
+        int end = shape.end();
+        if (!shape.shared && end == shape.capacity() && shape.size() <= end / 2) {
+            int j = 0;
+            for (int i = 0; i < end; i++) {
+                if (shape.nameAt(i) == null) continue;
+                values[j] = values[i];
+                if (tags != null) {
+                    tags[j] = tags[i];
+                    bits[j] = bits[i];
+                }
+                j++;
+            }
+            Arrays.fill(values, j, end, null);
+            if (tags != null) Arrays.fill(tags, j, end, BOXED);
+            shape.compact();
+            end = j;
+        }
+        shape = shape.add(name);
+        if (end == values.length) resize(Math.max(4, end * 2));
+        return end;
+    }
+
+    private void resize(int length) {
+        values = Arrays.copyOf(values, length);
+        if (tags != null) {
+            tags = Arrays.copyOf(tags, length);
+            bits = Arrays.copyOf(bits, length);
+        }
+    }
+
+    /**
+     * Trims the arrays of values to the number of attributes, once no more attributes are expected to be added, such
+     * as when an object has been parsed.
+     */
+    void trim() {
+        if (values.length > shape.end()) resize(shape.end());
+    }
+
+    /**
+     * Freezes this object, such that any further attempt to add or remove an attribute throws an
+     * {@link UnsupportedOperationException}. Every object and array held by this object, at any depth, is frozen as
+     * well, where arrays other than {@link JSONArray}s are replaced by frozen JSON arrays holding their elements.
+     * Values of any other type, such as collections, maps or serialisable objects, are left as they are, and must not
+     * be modified once frozen.<p>
+     * A frozen object computes its {@link JSONObject#hashCode()} once, and caches its JSON string for each
+     * configuration it is serialised with, such that serialising it again, on its own or inside another value, only
+     * copies the cached JSON string. Once safely published, for instance through a final or volatile field, a frozen
+     * object may be shared between threads and used as a key of hash maps.
+     *
+     * @return this, allowing chained method calls.
+     */
+    public JSONObject freeze() {
+        freeze(this);
+        return this;
+    }
+
+    /**
+     * @return whether this object is frozen, see {@link JSONObject#freeze()}.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Freezes every object and array reachable from a root object or array, without recursion.
+     */
+    static void freeze(Object root) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            if (o instanceof JSONObject object) {
+                if (object.frozen) continue;
+                object.frozen = true;
+                object.trim();
+                for (int i = 0; i < object.shape.end(); i++) object.values[i] = frozen(object.values[i], pending);
+            } else {
+                ((JSONArray) o).freeze(pending);
+            }
+        }
+    }
+
+    /**
+     * @return the given value, or a JSON array holding its elements if it is any other array, queued to be frozen if it
+     * is an object or array.
+     */
+    static Object frozen(Object value, ArrayDeque<Object> pending) {
+        if (value == null) return null;
+        if (value instanceof JSONObject object) {
+            if (!object.frozen) pending.push(object);
+        } else if (value instanceof JSONArray array) {
+            if (!array.isFrozen()) pending.push(array);
+        } else if (value.getClass().isArray()) {
+            value = JSONArray.from(value);
+            pending.push(value);
+        }
+        return value;
+    }
+
+    private void checkModifiable() {
+        if (frozen) throw new UnsupportedOperationException("Frozen JSONObjects cannot be modified.");
+    }
+
+    /**
+     * Tracks the changes made to this object, such that serialising it keeps the JSON string of this object, and of
+     * every {@link JSONObject} and {@link JSONArray} inside it, at any depth. Serialising it again, such as through
+     * {@link JSONObject#toString()}, only re-encodes the objects and arrays that were changed since, along with the
+     * objects and arrays holding them, and copies the JSON strings of every other one. Changing a single attribute of
+     * a large object therefore only re-encodes the path from this object down to the changed one.<p>
+     * Objects and arrays are told to have changed when an attribute or element is added to or removed from them. An
+     * object or array holding any value whose changes cannot be told, such as an array other than a
+     * {@link JSONArray}, a collection, a map or a serialisable object of any other class, or holding an object or array
+     * also held by another one, is always re-encoded, though the objects and arrays inside it keep their JSON strings.
+     * Arrays parsed by {@link JSONParser} are therefore best parsed as JSON arrays, through
+     * {@link ParserConfig#withJSONArrays(boolean)}.<p>
+     * Only the JSON string written with the last configuration is kept.
+     *
+     * @return this, allowing chained method calls.
+     */
+    public JSONObject trackChanges() {
+        tracking = true;
         return this;
     }
 
+    /**
+     * @return whether the changes made to this object are tracked, see {@link JSONObject#trackChanges()}.
+     */
+    public boolean isTrackingChanges() {
+        return tracking;
+    }
+
+    /**
+     * @return the cached JSON string of this frozen object serialised with a configuration at an indentation, or null
+     * if there is none.
+     */
+    FragmentCache.Fragment fragment(WriterConfig config, int currSize) {
+        return FragmentCache.find(fragments, config, currSize);
+    }
+
+    /**
+     * Caches the JSON string of this frozen object serialised with a configuration at an indentation.
+     *
+     * @return the cached JSON string.
+     */
+    FragmentCache.Fragment cache(WriterConfig config, int currSize, String json) {
+        FragmentCache.Fragment fragment = new FragmentCache.Fragment(config, currSize, json);
+        synchronized (this) {
+            fragments = FragmentCache.with(fragments, fragment);
+        }
+        return fragment;
+    }
+
+    /**
+     * @return the value at an index, boxing it if it is stored unboxed.
+     */
+    private Object item(int index) {
+        if (tags == null) return values[index];
+        return switch (tags[index]) {
+            case INT -> (int) bits[index];
+            case LONG -> bits[index];
+            case FLOAT -> (float) Double.longBitsToDouble(bits[index]);
+            case DOUBLE -> Double.longBitsToDouble(bits[index]);
+            default -> values[index];
+        };
+    }
+
     /**
      * This method detects and renames duplicate names.
      */
     private String safeName(@NotNull String name){
-        if(!attributeMap.containsKey(name)) return name;
+        if(shape.indexOf(name) < 0) return name;
         Integer i = getNameEnd(name);
         if(i == null) return safeName(name + "_1");
         int len = i.toString().length() + 1;
@@ -85,31 +379,120 @@ public class JSONObject implements JSONSerialisable {
      * @throws AttributeNotFoundException if no value associated with the given name is found.
      */
     public Object removeAttribute(@NotNull String name) {
-        if (!attributeMap.containsKey(name))
+        checkModifiable();
+        if (shape.indexOf(name) < 0)
             throw new AttributeNotFoundException(name);
-        Object o = attributeMap.get(name);
-        attributeMap.remove(name);
-        for (int i = 0; i < attributeList.size(); i++) {
-            if (attributeList.get(i).name().equals(name)) {
-                attributeList.remove(i);
-                break;
+        if (shape.shared) shape = shape.copy();
+        Encoding.invalidate(this);
+        int index = shape.remove(name);
+        Object o = item(index);
+        values[index] = null;
+        Encoding.unlink(this, o);
+        if (tags != null) tags[index] = BOXED;
+        return o;
+    }
+
+    /**
+     * Applies a JSON merge patch (see <a href="https://www.rfc-editor.org/rfc/rfc7386">RFC 7386</a>) to this object in
+     * place. Each attribute of the patch whose value is null removes the attribute of the same name, each one holding
+     * an object is merged into the object held by the attribute of the same name, which is replaced by an empty object
+     * first if it holds anything else, and each other one replaces the value of the attribute of the same name, or is
+     * added. Attributes not named by the patch are left untouched, and so are those already holding an equal value,
+     * such that the JSON strings of objects whose changes are tracked are only discarded if they change.<p>
+     * Objects of the patch are copied, without their null attributes, rather than held by this object, while any other
+     * value, such as an array, is held without being copied.
+     *
+     * @param patch the merge patch.
+     * @return this, allowing chained method calls.
+     * @see JSONObject#merged(JSONObject)
+     */
+    public JSONObject merge(@NotNull JSONObject patch) {
+        merge(this, patch, false);
+        return this;
+    }
+
+    /**
+     * Applies a JSON merge patch to a copy of this object, as in {@link JSONObject#merge(JSONObject)}, leaving this
+     * object untouched. Only the objects changed by the patch are copied, along with the objects holding them, while
+     * the copy holds every other value of this object without copying it, such that layering several patches over a
+     * large object only costs as much as the patches. Values held by both objects must therefore not be modified in
+     * place unless the change is meant to show in both. If the changes of this object are tracked, the values it
+     * shares with the copy keep their JSON strings, see {@link JSONObject#trackChanges()}.
+     *
+     * @param patch the merge patch.
+     * @return the patched copy of this object.
+     */
+    public JSONObject merged(@NotNull JSONObject patch) {
+        JSONObject res = shallowCopy();
+        merge(res, patch, true);
+        return res;
+    }
+
+    /**
+     * Merges a patch into an object, walking both breadth first without recursion.
+     *
+     * @param copy whether objects of the target are copied before being merged into.
+     */
+    private static void merge(JSONObject target, JSONObject patch, boolean copy) {
+        ArrayDeque<JSONObject> pending = new ArrayDeque<>();
+        pending.add(target);
+        pending.add(patch);
+        while (!pending.isEmpty()) {
+            JSONObject t = pending.poll(), p = pending.poll();
+            for (int i = 0; i < p.shape.end(); i++) {
+                String name = p.shape.nameAt(i);
+                if (name == null) continue;
+                Object value = p.item(i);
+                int index = t.shape.indexOf(name);
+                Object old = index < 0 ? null : t.item(index);
+                if (value == null) {
+                    if (index >= 0) t.removeAttribute(name);
+                } else if (value instanceof JSONObject object) {
+                    JSONObject into;
+                    if (!(old instanceof JSONObject existing)) into = new JSONObject();
+                    else if (copy) into = existing.shallowCopy();
+                    else into = existing;
+                    if (into != old) t.setAttribute(name, into);
+                    pending.add(into);
+                    pending.add(object);
+                } else if (index < 0 || !JSONArray.elementEquals(old, value)) {
+                    t.setAttribute(name, value);
+                }
             }
         }
-        return o;
+    }
+
+    /**
+     * Values are not linked to the copy, such that they still tell this object when they change, and keep their JSON
+     * strings if its changes are tracked. A copy whose changes are tracked in turn re-encodes itself every time, as
+     * it holds values linked elsewhere.
+     *
+     * @return a new object holding the same attributes as this one, in the same order, without copying their values.
+     */
+    private JSONObject shallowCopy() {
+        JSONObject copy = new JSONObject();
+        int end = shape.end();
+        copy.shape = shape.shared ? shape : shape.copy();
+        copy.values = Arrays.copyOf(values, end);
+        if (tags != null) {
+            copy.tags = Arrays.copyOf(tags, end);
+            copy.bits = Arrays.copyOf(bits, end);
+        }
+        return copy;
     }
 
     /**
      * @return whether there are no attributes stored in this object.
      */
     public boolean isEmpty() {
-        return attributeMap.isEmpty();
+        return shape.size() == 0;
     }
 
     /**
      * @return whether an object associates to a given name by an attribute.
      */
     public boolean contains(@NotNull String name) {
-        return attributeMap.containsKey(name);
+        return shape.indexOf(name) >= 0;
     }
 
     /**
@@ -120,9 +503,145 @@ public class JSONObject implements JSONSerialisable {
      * @throws AttributeNotFoundException if no value associated with the given name is found.
      */
     public @Nullable Object getItem(@NotNull String name) {
-        if (!attributeMap.containsKey(name))
+        int index = shape.indexOf(name);
+        if (index < 0)
+            throw new AttributeNotFoundException(name);
+        return item(index);
+    }
+
+    /**
+     * Returns a number associated by a name as a long, reading numbers stored unboxed without boxing them. Numbers of
+     * other types are converted as in {@link Number#longValue()}.
+     *
+     * @param name name of the number.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     * @throws IllegalTypeException       if the object associated with the name is null or not a number.
+     */
+    public long getLong(@NotNull String name) {
+        int index = shape.indexOf(name);
+        if (index < 0)
             throw new AttributeNotFoundException(name);
-        return attributeMap.get(name);
+        if (tags != null) {
+            switch (tags[index]) {
+                case INT, LONG -> {
+                    return bits[index];
+                }
+                case FLOAT, DOUBLE -> {
+                    return (long) Double.longBitsToDouble(bits[index]);
+                }
+            }
+        }
+        if (!(values[index] instanceof Number n))
+            throw new IllegalTypeException("Attribute identified by \"" + name + "\" is not of type Number.");
+        return n.longValue();
+    }
+
+    /**
+     * Returns a number associated by a name as a double, reading numbers stored unboxed without boxing them. Numbers
+     * of other types are converted as in {@link Number#doubleValue()}.
+     *
+     * @param name name of the number.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     * @throws IllegalTypeException       if the object associated with the name is null or not a number.
+     */
+    public double getDouble(@NotNull String name) {
+        int index = shape.indexOf(name);
+        if (index < 0)
+            throw new AttributeNotFoundException(name);
+        if (tags != null) {
+            switch (tags[index]) {
+                case INT, LONG -> {
+                    return bits[index];
+                }
+                case FLOAT, DOUBLE -> {
+                    return Double.longBitsToDouble(bits[index]);
+                }
+            }
+        }
+        if (!(values[index] instanceof Number n))
+            throw new IllegalTypeException("Attribute identified by \"" + name + "\" is not of type Number.");
+        return n.doubleValue();
+    }
+
+    /**
+     * Returns an array of numbers associated by a name as an array of doubles. An array of doubles is returned as is,
+     * while arrays of other primitive number types, arrays of numbers and {@link JSONArray}s are converted as in
+     * {@link Number#doubleValue()}.
+     *
+     * @param name name of the array.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     * @throws IllegalTypeException       if the object associated with the name is non-null and is not an array of
+     *                                    numbers.
+     */
+    public @Nullable double[] getDoubleArray(@NotNull String name) {
+        Object o = getItem(name);
+        if (o == null) return null;
+        if (o instanceof double[] array) return array;
+        if (o instanceof JSONArray array) return array.toDoubleArray();
+        double[] res = new double[Array.getLength(checkNumbers(name, o))];
+        switch (o) {
+            case float[] array -> {
+                for (int i = 0; i < res.length; i++) res[i] = array[i];
+            }
+            case int[] array -> {
+                for (int i = 0; i < res.length; i++) res[i] = array[i];
+            }
+            case long[] array -> {
+                for (int i = 0; i < res.length; i++) res[i] = array[i];
+            }
+            default -> {
+                for (int i = 0; i < res.length; i++) res[i] = ((Number) Array.get(o, i)).doubleValue();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Returns an array of numbers associated by a name as an array of longs. An array of longs is returned as is,
+     * while arrays of other primitive number types, arrays of numbers and {@link JSONArray}s are converted as in
+     * {@link Number#longValue()}.
+     *
+     * @param name name of the array.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     * @throws IllegalTypeException       if the object associated with the name is non-null and is not an array of
+     *                                    numbers.
+     */
+    public @Nullable long[] getLongArray(@NotNull String name) {
+        Object o = getItem(name);
+        if (o == null) return null;
+        if (o instanceof long[] array) return array;
+        if (o instanceof JSONArray array) return array.toLongArray();
+        long[] res = new long[Array.getLength(checkNumbers(name, o))];
+        switch (o) {
+            case int[] array -> {
+                for (int i = 0; i < res.length; i++) res[i] = array[i];
+            }
+            case double[] array -> {
+                for (int i = 0; i < res.length; i++) res[i] = (long) array[i];
+            }
+            case float[] array -> {
+                for (int i = 0; i < res.length; i++) res[i] = (long) array[i];
+            }
+            default -> {
+                for (int i = 0; i < res.length; i++) res[i] = ((Number) Array.get(o, i)).longValue();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the given array, if it is an array of a primitive number type, or an array holding only numbers.
+     */
+    private static Object checkNumbers(String name, Object o) {
+        boolean numbers = o instanceof int[] || o instanceof long[] || o instanceof float[] || o instanceof double[]
+                || o instanceof short[] || o instanceof byte[];
+        if (!numbers && o instanceof Object[] array) {
+            numbers = true;
+            for (Object element : array) numbers &= element instanceof Number;
+        }
+        if (!numbers)
+            throw new IllegalTypeException("Attribute identified by \"" + name + "\" is not an array of numbers.");
+        return o;
     }
 
     /**
@@ -189,8 +708,27 @@ public class JSONObject implements JSONSerialisable {
         return n;
     }
 
+    /**
+     * Returns an object associated by a name with type {@link RawJSON}, such as a value kept raw by
+     * {@link JSONParser#parse(String, ParserConfig)}.
+     *
+     * @param name name of the object.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     * @throws IllegalTypeException       if the object associated with the name is non-null and does not inherit the
+     *                                    right type.
+     */
+    public @Nullable RawJSON getRawJSON(@NotNull String name) {
+        Object o = getItem(name);
+        if (o == null) return null;
+        if (!(o instanceof RawJSON r))
+            throw new IllegalTypeException("Attribute identified by \"" + name + "\" is not of type RawJSON.");
+        return r;
+    }
+
     /**
      * Returns an object associated by a name that has the form of an array, (can be safely cast to an object array).
+     * If the array is of a primitive type, a boxed copy of it is returned, and if it is a {@link JSONArray}, a copy of
+     * its elements is returned.
      *
      * @param name name of the object.
      * @throws AttributeNotFoundException if no value associated with the given name is found.
@@ -199,9 +737,51 @@ public class JSONObject implements JSONSerialisable {
     public @Nullable Object[] getArray(@NotNull String name) {
         Object o = getItem(name);
         if (o == null) return null;
+        if (o instanceof JSONArray array) return array.toArray();
         if (!(o.getClass().isArray()))
             throw new IllegalTypeException("Attribute identified by \"" + name + "\" is not an Array.");
-        return (Object[]) o;
+        if (o instanceof Object[] array) return array;
+
+        //Arrays of primitive types are boxed.
+        Object[] boxed = new Object[Array.getLength(o)];
+        for (int i = 0; i < boxed.length; i++)
+            boxed[i] = Array.get(o, i);
+        return boxed;
+    }
+
+    /**
+     * Returns an object associated by a name as a {@link JSONArray}. If the object is an array of any other type, such
+     * as an array parsed by {@link JSONParser}, it is replaced in this object by a JSON array holding its elements,
+     * without copying them if it is an array of objects, longs or doubles. Changes made to the returned array are
+     * therefore reflected in this object.
+     *
+     * @param name name of the object.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     * @throws IllegalTypeException       if the object associated with the name is non-null and is not an array.
+     */
+    public @Nullable JSONArray getJSONArray(@NotNull String name) {
+        Object o = getItem(name);
+        if (o == null || o instanceof JSONArray) return (JSONArray) o;
+        if (!(o.getClass().isArray()))
+            throw new IllegalTypeException("Attribute identified by \"" + name + "\" is not an Array.");
+        JSONArray array = JSONArray.from(o);
+        values[shape.indexOf(name)] = array;
+        Encoding.link(this, array);
+        return array;
+    }
+
+    /**
+     * Deserialises this object into an instance of a given class. See {@link JSONParser#parseAs(String, Class)} for
+     * how instances are created.
+     *
+     * @param type the class to deserialise into.
+     * @param <T>  type of the resulting instance.
+     * @return a new instance of the class.
+     * @throws IllegalTypeException if the class cannot be instantiated, or an attribute cannot be converted to the
+     *                              type of its field.
+     */
+    public <T> @NotNull T deserialise(@NotNull Class<T> type) {
+        return JSONDeserialiser.deserialise(this, type);
     }
 
     /**
@@ -211,7 +791,53 @@ public class JSONObject implements JSONSerialisable {
      */
     @Override
     public List<Attribute> jsonAttributes() {
-        return new ArrayList<>(attributeList);
+        ArrayList<Attribute> attributes = new ArrayList<>(shape.size());
+        for (int i = 0; i < shape.end(); i++) {
+            String name = shape.nameAt(i);
+            if (name != null) attributes.add(new Attribute(name, item(i)));
+        }
+        return attributes;
+    }
+
+    /**
+     * @return the number of indices of the arrays of names and values in use, including removed attributes. Used by
+     * {@link JSONWriter} to write attributes without creating an {@link Attribute} for each.
+     */
+    int end() {
+        return shape.end();
+    }
+
+    /**
+     * @return the name of the attribute at an index, or null if it is removed.
+     */
+    @Nullable String nameAt(int index) {
+        return shape.nameAt(index);
+    }
+
+    /**
+     * @return the value of the attribute at an index.
+     */
+    @Nullable Object valueAt(int index) {
+        return item(index);
+    }
+
+    /**
+     * @return whether the value at an index is stored unboxed.
+     */
+    boolean isPrimitive(int index) {
+        return tags != null && tags[index] != BOXED;
+    }
+
+    /**
+     * Appends the value at an index stored unboxed, without boxing it.
+     */
+    void appendPrimitive(int index, StringBuilder sb) {
+        switch (tags[index]) {
+            case INT -> sb.append((int) bits[index]);
+            case LONG -> sb.append(bits[index]);
+            case FLOAT -> sb.append((float) Double.longBitsToDouble(bits[index]));
+            default -> sb.append(Double.longBitsToDouble(bits[index]));
+        }
     }
 
     /**
@@ -227,7 +853,9 @@ public class JSONObject implements JSONSerialisable {
      * <b>and</b> that the values associated by each name are equal. Note that in the case of equivalence, order does not
      * matter, but unlike attribute equivalence, the equivalence value-wise does matter. Note that this definition is
      * recursive in nature. Note also for arrays, order does matter, since an array on its own is considered an object,
-     * and ordering is considered in array equivalence.
+     * and ordering is considered in array equivalence. Arrays of any type are compared by their elements, as if they
+     * were {@link JSONArray}s, and numbers are compared by value, so that an int and a long which are serialised alike
+     * are equal.
      */
     @Override
     public boolean equals(Object obj) {
@@ -238,29 +866,37 @@ public class JSONObject implements JSONSerialisable {
         if (!(obj instanceof JSONObject jsonObject))
             return false;
 
-        //Checks if the set of all attribute names are equal.
-        Set<String> set1 = jsonObject.attributeMap.keySet();
-        Set<String> set2 = this.attributeMap.keySet();
-        if (!set1.equals(set2)) return false;
-
-        //Checks equivalence between values.
-        for (Attribute a : attributeList) {
-            Object o1 = this.getItem(a.name());
-            Object o2 = jsonObject.getItem(a.name());
-
-            if (o1 != null && o2 == null)
-                return false;
-            if (o1 == null && o2 != null)
-                return false;
-            if (o1 != null) { //Both not null
-                if (o1.getClass().isArray() && o2.getClass().isArray()) {
-                    Object[] arr1 = (Object[]) o1;
-                    Object[] arr2 = (Object[]) o2;
-                    if(!Arrays.deepEquals(arr1, arr2)) return false;
-                } else if (!o1.equals(o2))
-                    return false;
-            }
+        //Checks if the set of all attribute names are equal, which is the case if both have the same number of names and
+        //every name of this object is found in the other.
+        if (shape.size() != jsonObject.shape.size()) return false;
+
+        //Checks equivalence between values, which are at the same indices if both objects share a shape.
+        for (int i = 0; i < shape.end(); i++) {
+            String name = shape.nameAt(i);
+            if (name == null) continue;
+            int index = shape == jsonObject.shape ? i : jsonObject.shape.indexOf(name);
+            if (index < 0) return false;
+            Object o1 = item(i);
+            Object o2 = jsonObject.item(index);
+
+            if (!JSONArray.elementEquals(o1, o2)) return false;
         }
         return true;
     }
+
+    /**
+     * Hashes the attributes regardless of their order, consistently with {@link JSONObject#equals(Object)}. The hash
+     * code of a frozen object is only computed once.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h != 0) return h;
+        for (int i = 0; i < shape.end(); i++) {
+            String name = shape.nameAt(i);
+            if (name != null) h += name.hashCode() ^ JSONArray.elementHash(item(i));
+        }
+        if (frozen) hash = h;
+        return h;
+    }
 }
@@ -33,6 +33,11 @@ abstract public class JSONParser {
      */
     private static final HashSet<Character> DIGITS;
 
+    /**
+     * The maximum depth of nested objects and arrays in a JSON string, unless specified otherwise.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+
     static {
         ESCAPE_CHARS = new HashMap<>();
         ESCAPE_CHARS.put('\"', '\"');
@@ -150,6 +155,23 @@ abstract public class JSONParser {
         return parseAsArray(jsonString, NumberType.FLOAT);
     }
 
+    /**
+     * Given a JSON string representing an array, parses it with every array, including nested ones, parsed as a
+     * {@link JSONArray}, see {@link ParserConfig#withJSONArrays(boolean)}.
+     *
+     * @param jsonString JSON string to be parsed and deserialised.
+     * @return a {@link JSONArray} representing the JSON string.
+     * @throws IllegalArgumentException if a syntax error occurs in the JSON string.
+     * @throws IllegalTypeException     if the object represented by the JSON string is not an array.
+     */
+    public static JSONArray parseAsJSONArray(@NotNull String jsonString) {
+        try {
+            return (JSONArray) parse(jsonString, ParserConfig.DEFAULT.withJSONArrays(true));
+        } catch (ClassCastException e) {
+            throw new IllegalTypeException("Value represented by an input JSON-string is not an array.");
+        }
+    }
+
     /**
      * Given a JSON string, calls {@link JSONParser#parse(String)} on it and casts the result as a boolean value.
      * For more information, see documentations for {@link JSONParser#parse(String)}.
@@ -224,6 +246,26 @@ abstract public class JSONParser {
         }
     }
 
+    /**
+     * Given a JSON string representing an object, parses it and deserialises it into an instance of the given class.
+     * If a {@link KompaktCodec} is registered for the class, the codec creates the instance. Otherwise, records are
+     * created through their canonical constructor, and other classes through their no-argument constructor after which
+     * each non-static field not annotated with {@link com.friska.kompakt.annotations.Ignored} is assigned the
+     * attribute of the same name, if present. Numbers are parsed as {@link BigDecimal} and converted to the exact type
+     * of each field, and nested objects and arrays are deserialised recursively.
+     *
+     * @param jsonString JSON string to be parsed and deserialised.
+     * @param type       the class to deserialise into.
+     * @param <T>        type of the resulting instance.
+     * @return an instance of the class represented by the JSON string.
+     * @throws IllegalArgumentException if a syntax error occurs in the JSON string.
+     * @throws IllegalTypeException     if the JSON string does not represent an object, or an attribute cannot be
+     *                                  converted to the type of its field.
+     */
+    public static <T> T parseAs(@NotNull String jsonString, @NotNull Class<T> type) {
+        return parseAsObject(jsonString, NumberType.BIGDECIMAL).deserialise(type);
+    }
+
     /**
      * Given a JSON string, parses and deserialises the string into an instance of one of the following:
      * <ul>
@@ -303,7 +345,42 @@ abstract public class JSONParser {
      * @throws IllegalTypeException     if a number cannot be converted to a type specified by the type value.
      */
     public static Object parse(@NotNull String jsonString, @NotNull NumberType type) {
-        return parseValue(deleteSurroundingWhitespace(jsonString), type);
+        return parse(jsonString, type, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Given a JSON string, parses and deserialises the string the same way as
+     * {@link JSONParser#parse(String, NumberType)}, allowing at most the given number of objects and arrays to be nested
+     * inside one another. The JSON string is parsed without recursion, hence deeply nested JSON strings never overflow
+     * the stack, and memory used for nesting is bounded by the maximum depth.
+     *
+     * @param jsonString A JSON string.
+     * @param type       resulting type of any sub-values represented in the JSON string that represents a number.
+     * @param maxDepth   the maximum depth of nested objects and arrays.
+     * @return a Java object representing the object specified by the JSON string.
+     * @throws IllegalArgumentException if a syntax error occurs in the JSON string, or it is nested deeper than the
+     *                                  maximum depth.
+     * @throws IllegalTypeException     if a number cannot be converted to a type specified by the type value.
+     */
+    public static Object parse(@NotNull String jsonString, @NotNull NumberType type, int maxDepth) {
+        return new JSONReader(jsonString, type, maxDepth).parse();
+    }
+
+    /**
+     * Given a JSON string, parses and deserialises the string the same way as
+     * {@link JSONParser#parse(String, NumberType, int)}, using the number type and maximum depth of a configuration.
+     * Values selected through {@link ParserConfig#withRawPaths(String...)} are not parsed, and are instead kept as
+     * {@link RawJSON} slices of the JSON string, which are written verbatim if serialised again.
+     *
+     * @param jsonString A JSON string.
+     * @param config     the configuration to parse with.
+     * @return a Java object representing the object specified by the JSON string.
+     * @throws IllegalArgumentException if a syntax error occurs in the JSON string, or it is nested deeper than the
+     *                                  maximum depth.
+     * @throws IllegalTypeException     if a number cannot be converted to a type specified by the configuration.
+     */
+    public static Object parse(@NotNull String jsonString, @NotNull ParserConfig config) {
+        return new JSONReader(jsonString, config).parse();
     }
 
 
@@ -313,19 +390,17 @@ abstract public class JSONParser {
 
 
     /**
-     * Simple recursive function used to remove delete whitespace characters surrounding a string.
+     * Deletes whitespace characters surrounding a string.
      *
      * @param str input string.
      * @return str with surrounding white spaces removed.
      */
     private static String deleteSurroundingWhitespace(String str) {
         if (str == null) return null;
-        if (str.isBlank()) return "";
-        if (Character.isWhitespace(str.charAt(0)))
-            return deleteSurroundingWhitespace(str.substring(1));
-        if (Character.isWhitespace(str.charAt(str.length() - 1)))
-            return deleteSurroundingWhitespace(str.substring(0, str.length() - 1));
-        return str;
+        int start = 0, end = str.length();
+        while (start < end && Character.isWhitespace(str.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(str.charAt(end - 1))) end--;
+        return str.substring(start, end);
     }
 
     /**
@@ -333,7 +408,7 @@ abstract public class JSONParser {
      * or an array. A value is either an object, array, string, number, boolean, or null. This method takes a string
      * input representing a value and deserialises it into an arbitrary {@link Object} of the aforementioned types.
      * Since this method may require parsing objects and arrays, which are defined using the definition of a value, this
-     * method is in mutual recursion with {@link JSONParser#parseObject(String, NumberType)} and {@link JSONParser#parseArray(String, NumberType)}.
+     * method parses the whole value in a single pass, see {@link JSONParser#parse(String, NumberType, int)}.
      * For more information, please refer to <a href="https://www.json.org/json-en.html">the JSON documentations.</a>
      *
      * @param value string representation of the value.
@@ -345,20 +420,7 @@ abstract public class JSONParser {
      * @throws IllegalTypeException     if the input string contains that cannot be converted to the specified type.
      */
     public static Object parseValue(@NotNull String value, @NotNull NumberType type) {
-        if (value.isEmpty()) throw new IllegalArgumentException("Expected JSON value.");
-        if (value.equals("null")) return null;
-        if (value.startsWith("\"")) return parseString(value);
-        if (value.startsWith("{")) return parseObject(value, type);
-        if (value.startsWith("[")) return parseArray(value, type);
-        try {
-            return parseNumber(value, type);
-        } catch (IllegalArgumentException ignored) {
-        }
-        try {
-            return parseBool(value);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Unexpected representation of a JSON value: " + value);
-        }
+        return parse(value, type);
     }
 
     /**
@@ -376,21 +438,7 @@ abstract public class JSONParser {
     public static JSONObject parseObject(@NotNull String value, @NotNull NumberType type) {
         if (!value.startsWith("{") || !value.endsWith("}"))
             throw new IllegalArgumentException("JSON objects must be wrapped in curly braces.");
-        String inside = value.substring(1, value.length() - 1);
-
-        //Blank object corresponding to "{  }".
-        if (inside.isBlank()) return new JSONObject();
-
-        String[] members = safeSplit(inside, ',');
-        Attribute[] attributes = new Attribute[members.length];
-        for (int i = 0; i < attributes.length; i++) {
-            attributes[i] = parseMember(members[i], type);
-        }
-        var res = new JSONObject();
-        for (Attribute attribute : attributes) {
-            res.addAttribute(attribute.name(), attribute.val());
-        }
-        return res;
+        return (JSONObject) parse(value, type);
     }
 
     /**
@@ -407,17 +455,7 @@ abstract public class JSONParser {
     public static Object[] parseArray(@NotNull String value, @NotNull NumberType type) {
         if (!value.startsWith("[") || !value.endsWith("]"))
             throw new IllegalArgumentException("JSON arrays must be wrapped in square brackets.");
-        String inside = value.substring(1, value.length() - 1);
-
-        //Blank array corresponding to "[  ]".
-        if (inside.isBlank()) return new Object[0];
-
-        String[] elements = safeSplit(inside, ',');
-        Object[] values = new Object[elements.length];
-        for (int i = 0; i < values.length; i++) {
-            values[i] = parseValue(deleteSurroundingWhitespace(elements[i]), type);
-        }
-        return values;
+        return (Object[]) parse(value, type);
     }
 
     /**
@@ -538,14 +576,22 @@ abstract public class JSONParser {
             if (!isExponent(value.substring(fracEnd)))
                 throw new IllegalArgumentException(err);
         }
+        return toNumber(value, type);
+    }
+
+    /**
+     * Converts a valid JSON number to the specified type.
+     *
+     * @throws IllegalTypeException if the number cannot be converted to the specified type.
+     */
+    static Number toNumber(@NotNull String value, @NotNull NumberType type) {
         try {
-            Number res = switch (type) {
+            return switch (type) {
                 case INT -> Integer.parseInt(value);
                 case FLOAT -> Float.parseFloat(value);
                 case DOUBLE -> Double.parseDouble(value);
                 case BIGDECIMAL -> new BigDecimal(value);
             };
-            return res;
         } catch (NumberFormatException e) {
             throw new IllegalTypeException("Number represented by " + value
                     + " cannot be converted to an instance of " + type + ".");
@@ -0,0 +1,371 @@
+package com.friska.kompakt;
+
+import com.friska.kompakt.exceptions.JSONPatchException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+/**
+ * Applies JSON patches (see <a href="https://www.rfc-editor.org/rfc/rfc6902">RFC 6902</a>) to trees of JSON objects
+ * and arrays, such as those computed by {@link JSONDiff#diff(Object, Object)} or parsed by {@link JSONParser}. A patch
+ * is an array of operations, each being an object with an "op" member naming one of "add", "remove", "replace", "move",
+ * "copy" or "test", a "path" member holding a JSON pointer to the value it applies to, and either a "value" or a
+ * "from" member as needed by the operation.<p>
+ * The document is modified in place, through {@link JSONObject#setAttribute(String, Object)} and the methods of
+ * {@link JSONArray}, without being copied. Arrays other than {@link JSONArray}s are modified in place if an element is
+ * replaced by another of a type they may hold, and are otherwise replaced in their holder by a JSON array holding their
+ * elements, as in {@link JSONObject#getJSONArray(String)}. Every change made is recorded along with how to undo it,
+ * such that if any operation fails, every change made by the previous ones is undone before the exception is thrown,
+ * leaving the document as it was, except for attributes of objects that were removed and added back, which are moved
+ * to the end of their object.<p>
+ * Values added by "add" and "replace" are held by the document without being copied, while values copied by "copy"
+ * are deeply copied.
+ */
+public final class JSONPatch {
+
+    private Object root;
+
+    /**
+     * Changes to undo if an operation fails, the last one first.
+     */
+    private final ArrayDeque<Runnable> undo = new ArrayDeque<>();
+
+    //The container holding the value the last resolved pointer leads to, along with its own holder and token
+    private Object holder;
+    private Object outer;
+    private String outerToken;
+
+    private JSONPatch(Object root) {
+        this.root = root;
+    }
+
+    /**
+     * Applies a JSON patch to a document, modifying it in place.
+     *
+     * @param document the document to patch, usually a {@link JSONObject} or an array.
+     * @param patch    the operations to apply in order, as a {@link JSONArray} or an array of {@link JSONObject}s.
+     * @return the patched document, which is the given document unless it was replaced as a whole, or it is an array
+     * other than a {@link JSONArray} whose length has changed.
+     * @throws JSONPatchException       if an operation is malformed, its path leads nowhere, or a test fails, in which
+     *                                  case the document is left as it was.
+     * @throws IllegalArgumentException if the patch is not an array, or a path is not a valid JSON pointer.
+     */
+    public static @Nullable Object apply(@Nullable Object document, @NotNull Object patch) {
+        Object[] operations;
+        if (patch instanceof JSONArray array) operations = array.toArray();
+        else if (patch instanceof Object[] array) operations = array;
+        else throw new IllegalArgumentException("A JSON patch must be an array of operations.");
+
+        JSONPatch state = new JSONPatch(document);
+        for (int i = 0; i < operations.length; i++) {
+            try {
+                state.apply(i, operations[i]);
+            } catch (RuntimeException e) {
+                while (!state.undo.isEmpty()) state.undo.pop().run();
+                throw e;
+            }
+        }
+        return state.root;
+    }
+
+    private void apply(int index, Object operation) {
+        if (!(operation instanceof JSONObject op))
+            throw new JSONPatchException("Operation " + index + " is not an object.");
+        String name = member(index, op, "op");
+        String path = member(index, op, "path");
+        switch (name) {
+            case "add" -> add(index, path, value(index, op));
+            case "remove" -> remove(index, path);
+            case "replace" -> replace(index, path, value(index, op));
+            case "move" -> {
+                String from = member(index, op, "from");
+                if (path.equals(from)) return;
+                if (path.startsWith(from + "/"))
+                    throw new JSONPatchException("Operation " + index + " moves \"" + from + "\" into itself.");
+                add(index, path, remove(index, from));
+            }
+            case "copy" -> add(index, path, copy(get(index, member(index, op, "from"))));
+            case "test" -> {
+                if (!jsonEquals(get(index, path), value(index, op)))
+                    throw new JSONPatchException("Operation " + index + " tests \"" + path + "\", which differs.");
+            }
+            default -> throw new JSONPatchException("Operation " + index + " is unknown: \"" + name + "\".");
+        }
+    }
+
+    private static String member(int index, JSONObject op, String name) {
+        if (!op.contains(name) || !(op.getItem(name) instanceof String s))
+            throw new JSONPatchException("Operation " + index + " has no string member \"" + name + "\".");
+        return s;
+    }
+
+    private static Object value(int index, JSONObject op) {
+        if (!op.contains("value"))
+            throw new JSONPatchException("Operation " + index + " has no member \"value\".");
+        return op.getItem("value");
+    }
+
+    /**
+     * Walks down to the container holding the value a pointer leads to, which must exist.
+     *
+     * @return the last token of the pointer, or null if the pointer leads to the root.
+     */
+    private String resolve(int index, String pointer) {
+        String[] tokens = JSONPath.tokens(pointer);
+        if (tokens.length == 0) return null;
+        Object node = root;
+        outer = null;
+        outerToken = null;
+        for (int i = 0; i < tokens.length - 1; i++) {
+            Object next = JSONPath.child(node, tokens[i], JSONPath.arrayIndex(tokens[i]));
+            if (next == JSONPath.MISSING) throw missing(index, pointer);
+            outer = node;
+            outerToken = tokens[i];
+            node = next;
+        }
+        holder = node;
+        return tokens[tokens.length - 1];
+    }
+
+    private Object get(int index, String pointer) {
+        String token = resolve(index, pointer);
+        if (token == null) return root;
+        Object value = JSONPath.child(holder, token, JSONPath.arrayIndex(token));
+        if (value == JSONPath.MISSING) throw missing(index, pointer);
+        return value;
+    }
+
+    private void add(int index, String pointer, Object value) {
+        String token = resolve(index, pointer);
+        if (token == null) {
+            setRoot(value);
+        } else if (holder instanceof JSONObject object) {
+            if (object.contains(token)) {
+                Object old = object.getItem(token);
+                object.setAttribute(token, value);
+                undo.push(() -> object.setAttribute(token, old));
+            } else {
+                object.addAttribute(token, value);
+                undo.push(() -> object.removeAttribute(token));
+            }
+        } else {
+            JSONArray array = growable(index, pointer);
+            int i = token.equals("-") ? array.size() : JSONPath.arrayIndex(token);
+            if (i < 0 || i > array.size()) throw missing(index, pointer);
+            array.insert(i, value);
+            undo.push(() -> array.remove(i));
+        }
+    }
+
+    private Object remove(int index, String pointer) {
+        String token = resolve(index, pointer);
+        if (token == null) throw new JSONPatchException("Operation " + index + " removes the whole document.");
+        if (holder instanceof JSONObject object) {
+            if (!object.contains(token)) throw missing(index, pointer);
+            Object old = object.removeAttribute(token);
+            undo.push(() -> object.addAttribute(token, old));
+            return old;
+        }
+        if (JSONPath.child(holder, token, JSONPath.arrayIndex(token)) == JSONPath.MISSING)
+            throw missing(index, pointer);
+        JSONArray array = growable(index, pointer);
+        int i = JSONPath.arrayIndex(token);
+        Object old = array.remove(i);
+        undo.push(() -> array.insert(i, old));
+        return old;
+    }
+
+    private void replace(int index, String pointer, Object value) {
+        String token = resolve(index, pointer);
+        if (token == null) setRoot(value);
+        else if (!replaceIn(holder, token, value)) {
+            if (JSONPath.sizeOf(holder) < 0 || JSONPath.child(holder, token, JSONPath.arrayIndex(token)) == JSONPath.MISSING)
+                throw missing(index, pointer);
+            replaceIn(growable(index, pointer), token, value);
+        }
+    }
+
+    /**
+     * Replaces the member of an object or the element of an array, if it exists and the container may hold the new
+     * value without being replaced itself.
+     *
+     * @return whether the value was replaced.
+     */
+    private boolean replaceIn(Object container, String token, Object value) {
+        if (container instanceof JSONObject object) {
+            if (!object.contains(token)) return false;
+            Object old = object.getItem(token);
+            object.setAttribute(token, value);
+            undo.push(() -> object.setAttribute(token, old));
+            return true;
+        }
+        int i = JSONPath.arrayIndex(token);
+        if (i < 0 || i >= JSONPath.sizeOf(container)) return false;
+        if (container instanceof JSONArray array) {
+            Object old = array.set(i, value);
+            undo.push(() -> array.set(i, old));
+            return true;
+        }
+        if (container instanceof Object[] array && (value == null
+                || array.getClass().getComponentType().isInstance(value))) {
+            Object old = array[i];
+            array[i] = value;
+            undo.push(() -> array[i] = old);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the array holding the value the last resolved pointer leads to, replaced in its own holder by a JSON
+     * array holding its elements if it is any other array.
+     */
+    private JSONArray growable(int index, String pointer) {
+        if (holder instanceof JSONArray array) return array;
+        if (holder == null || !holder.getClass().isArray())
+            throw new JSONPatchException("Operation " + index + " applies to \"" + pointer
+                    + "\", which is not inside an object or modifiable array.");
+        JSONArray array = JSONArray.from(cloneArray(holder));
+        if (outer == null) setRoot(array);
+        else replaceIn(outer, outerToken, array);
+        holder = array;
+        return array;
+    }
+
+    private void setRoot(Object value) {
+        Object old = root;
+        root = value;
+        undo.push(() -> root = old);
+    }
+
+    private static JSONPatchException missing(int index, String pointer) {
+        return new JSONPatchException("Operation " + index + " applies to \"" + pointer + "\", which does not exist.");
+    }
+
+    /**
+     * Compares two values as in {@link JSONObject#equals(Object)}, except that numbers of different types are equal if
+     * they stand for the same number, at any depth inside objects and arrays. Both values are walked without recursion.
+     */
+    private static boolean jsonEquals(Object a, Object b) {
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        pending.push(b);
+        pending.push(a);
+        while (!pending.isEmpty()) {
+            Object x = pending.pop(), y = pending.pop();
+            if (x == y) continue;
+            if (x instanceof Number m && y instanceof Number n) {
+                if (!numberEquals(m, n)) return false;
+            } else if (x instanceof JSONObject o && y instanceof JSONObject p) {
+                if (sizeOf(o) != sizeOf(p)) return false;
+                for (int i = 0; i < o.end(); i++) {
+                    String name = o.nameAt(i);
+                    if (name == null) continue;
+                    if (!p.contains(name)) return false;
+                    pending.push(p.getItem(name));
+                    pending.push(o.valueAt(i));
+                }
+            } else if (JSONPath.sizeOf(x) >= 0 && JSONPath.sizeOf(y) >= 0) {
+                int size = JSONPath.sizeOf(x);
+                if (size != JSONPath.sizeOf(y)) return false;
+                for (int i = 0; i < size; i++) {
+                    pending.push(JSONPath.elementAt(y, i));
+                    pending.push(JSONPath.elementAt(x, i));
+                }
+            } else if (!JSONArray.valueEquals(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean numberEquals(Number a, Number b) {
+        if (a.equals(b)) return true;
+        try {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString())) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static int sizeOf(JSONObject object) {
+        int size = 0;
+        for (int i = 0; i < object.end(); i++) {
+            if (object.nameAt(i) != null) size++;
+        }
+        return size;
+    }
+
+    /**
+     * Deeply copies a value, copying every object and array inside it, without recursion. An object or array held more
+     * than once is only copied once.
+     */
+    static Object copy(Object value) {
+        IdentityHashMap<Object, Object> copies = new IdentityHashMap<>();
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        Object res = shallowCopy(value, copies, pending);
+        while (!pending.isEmpty()) {
+            Object container = pending.pop();
+            if (container instanceof JSONObject object) {
+                for (int i = 0; i < object.end(); i++) {
+                    String name = object.nameAt(i);
+                    if (name == null || object.isPrimitive(i)) continue;
+                    Object child = object.valueAt(i);
+                    Object copied = shallowCopy(child, copies, pending);
+                    if (copied != child) object.setAttribute(name, copied);
+                }
+            } else if (container instanceof JSONArray array) {
+                for (int i = 0; array.elements() != null && i < array.size(); i++) {
+                    Object child = array.get(i);
+                    Object copied = shallowCopy(child, copies, pending);
+                    if (copied != child) array.set(i, copied);
+                }
+            } else if (container instanceof Object[] array) {
+                for (int i = 0; i < array.length; i++) array[i] = shallowCopy(array[i], copies, pending);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return a copy of an object or array still holding the same values, queued to have them copied as well, or the
+     * given value if it is neither.
+     */
+    private static Object shallowCopy(Object value, IdentityHashMap<Object, Object> copies,
+                                      ArrayDeque<Object> pending) {
+        if (value == null) return null;
+        Object copied = copies.get(value);
+        if (copied != null) return copied;
+        if (value instanceof JSONObject object) {
+            JSONObject res = new JSONObject();
+            for (int i = 0; i < object.end(); i++) {
+                String name = object.nameAt(i);
+                if (name != null) res.addAttribute(name, object.valueAt(i));
+            }
+            copied = res;
+        } else if (value instanceof JSONArray array) {
+            Object primitives = array.primitives();
+            copied = primitives == null ? JSONArray.wrap(array.toArray())
+                    : primitives instanceof long[] ? JSONArray.ofLongs(array.toLongArray())
+                    : JSONArray.ofDoubles(array.toDoubleArray());
+        } else if (value.getClass().isArray()) {
+            copied = cloneArray(value);
+        } else {
+            return value;
+        }
+        copies.put(value, copied);
+        pending.push(copied);
+        return copied;
+    }
+
+    private static Object cloneArray(Object array) {
+        if (array instanceof Object[] a) return a.clone();
+        int length = Array.getLength(array);
+        Object res = Array.newInstance(array.getClass().getComponentType(), length);
+        System.arraycopy(array, 0, res, 0, length);
+        return res;
+    }
+}
@@ -0,0 +1,611 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A path to values inside a tree of JSON objects and arrays, compiled once from its expression such that it may be
+ * evaluated any number of times without parsing the expression again. Two kinds of expressions are accepted:
+ * <ul>
+ *     <li>JSON pointers (see <a href="https://www.rfc-editor.org/rfc/rfc6901">RFC 6901</a>), such as
+ *     {@code "/store/books/0"}, which are either empty or start with '/'. Each token selects the member of an object
+ *     with that name, or the element of an array at that index, where "~1" and "~0" stand for '/' and '~'.</li>
+ *     <li>A subset of JSONPath, starting with '$', made of the following segments: {@code .name} or {@code ['name']}
+ *     for the member of an object, {@code [3]} for the element of an array at an index, counted from the end if
+ *     negative, {@code .*} or {@code [*]} for every member or element, {@code ..} followed by any other segment for the
+ *     same segment applied to every object and array at any depth, and {@code [?(filter)]} for every member or element
+ *     matching a filter, such as {@code [?(@.price < 10 && @.tags)]}. A filter is made of tests joined by
+ *     {@code &&} and {@code ||}, each being a relative path starting with '@', made of names and indices only, either on
+ *     its own to test that it exists, or compared to a number, a string in single or double quotes, {@code true},
+ *     {@code false} or {@code null} through {@code ==}, {@code !=}, {@code <}, {@code <=}, {@code >} or {@code >=}.</li>
+ * </ul>
+ * Paths are evaluated over {@link JSONObject}s, {@link JSONArray}s, their persistent counterparts, lists and arrays of
+ * any type, such as the trees returned by {@link JSONParser}. A path made only of names and indices is definite, and
+ * selects at most one value: {@link JSONPath#find(Object)} then walks down the tree without allocating anything but
+ * the boxed value of a primitive number. Other paths may select any number of values, collected in document order by
+ * {@link JSONPath#findAll(Object)}.<p>
+ * Compiled paths are immutable, and may be shared between threads.
+ */
+public final class JSONPath {
+
+    /**
+     * Marks a missing value, as opposed to a null value.
+     */
+    static final Object MISSING = new Object();
+
+    /**
+     * Index of a step that does not select an element of an array.
+     */
+    static final int NO_INDEX = Integer.MIN_VALUE;
+
+    private final String expression;
+
+    private final Step[] steps;
+
+    private final boolean definite;
+
+    private JSONPath(String expression, Step[] steps) {
+        this.expression = expression;
+        this.steps = steps;
+        boolean definite = true;
+        for (Step step : steps) definite &= step.kind == Step.CHILD;
+        this.definite = definite;
+    }
+
+    /**
+     * Compiles a JSON pointer or JSONPath expression.
+     *
+     * @param expression a JSON pointer, which is empty or starts with '/', or a JSONPath expression, which starts with
+     *                   '$'.
+     * @return the compiled path.
+     * @throws IllegalArgumentException if the expression is neither a valid JSON pointer nor a valid JSONPath
+     *                                  expression of the supported subset.
+     */
+    public static @NotNull JSONPath compile(@NotNull String expression) {
+        if (expression.isEmpty() || expression.charAt(0) == '/') return new JSONPath(expression, pointer(expression));
+        if (expression.charAt(0) == '$') return new JSONPath(expression, new Parser(expression).path());
+        throw new IllegalArgumentException("Path \"" + expression + "\" must either start with '/' or '$'.");
+    }
+
+    private static Step[] pointer(String expression) {
+        String[] tokens = tokens(expression);
+        Step[] steps = new Step[tokens.length];
+        for (int i = 0; i < tokens.length; i++) steps[i] = Step.child(tokens[i], arrayIndex(tokens[i]));
+        return steps;
+    }
+
+    /**
+     * Splits a JSON pointer into its tokens, replacing "~1" and "~0" by '/' and '~'.
+     *
+     * @throws IllegalArgumentException if the pointer is neither empty nor starts with '/', or holds a '~' followed by
+     *                                  anything else.
+     */
+    static String[] tokens(String pointer) {
+        if (pointer.isEmpty()) return new String[0];
+        if (pointer.charAt(0) != '/')
+            throw new IllegalArgumentException("JSON pointer \"" + pointer + "\" must start with '/'.");
+        List<String> tokens = new ArrayList<>();
+        int from = 1;
+        while (true) {
+            int to = pointer.indexOf('/', from);
+            tokens.add(unescape(pointer, pointer.substring(from, to < 0 ? pointer.length() : to)));
+            if (to < 0) break;
+            from = to + 1;
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * Appends a token to a JSON pointer, replacing '~' and '/' by "~0" and "~1".
+     */
+    static String append(String pointer, String token) {
+        if (token.indexOf('~') < 0 && token.indexOf('/') < 0) return pointer + '/' + token;
+        return pointer + '/' + token.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String unescape(String expression, String token) {
+        if (token.indexOf('~') < 0) return token;
+        StringBuilder sb = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c != '~') {
+                sb.append(c);
+                continue;
+            }
+            char next = i + 1 < token.length() ? token.charAt(++i) : 0;
+            if (next != '0' && next != '1')
+                throw new IllegalArgumentException("JSON pointer \"" + expression + "\" holds '~' not followed by 0 or 1.");
+            sb.append(next == '0' ? '~' : '/');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the array index written by a token of a JSON pointer, which holds decimal digits without leading zeros,
+     * or {@link JSONPath#NO_INDEX} if it is not an index.
+     */
+    static int arrayIndex(String token) {
+        if (token.isEmpty() || token.length() > 9 || (token.length() > 1 && token.charAt(0) == '0')) return NO_INDEX;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) < '0' || token.charAt(i) > '9') return NO_INDEX;
+        }
+        return Integer.parseInt(token);
+    }
+
+    /**
+     * @return whether this path selects at most one value, being made only of names and indices.
+     */
+    public boolean isDefinite() {
+        return definite;
+    }
+
+    /**
+     * Selects the first value this path leads to.
+     *
+     * @param root the root of a tree of objects and arrays.
+     * @return the first value selected, or null if none is selected.
+     */
+    public @Nullable Object find(@Nullable Object root) {
+        Object value = definite ? walk(root, steps) : first(root);
+        return value == MISSING ? null : value;
+    }
+
+    /**
+     * @param root the root of a tree of objects and arrays.
+     * @return whether this path selects any value, which tells a missing value from a null one.
+     */
+    public boolean exists(@Nullable Object root) {
+        return (definite ? walk(root, steps) : first(root)) != MISSING;
+    }
+
+    /**
+     * Selects every value this path leads to.
+     *
+     * @param root the root of a tree of objects and arrays.
+     * @return the values selected in document order, which is empty if none is selected.
+     */
+    public @NotNull List<Object> findAll(@Nullable Object root) {
+        if (definite) {
+            Object value = walk(root, steps);
+            return value == MISSING ? new ArrayList<>() : new ArrayList<>(Collections.singletonList(value));
+        }
+        List<Object> current = new ArrayList<>();
+        current.add(root);
+        for (Step step : steps) {
+            List<Object> next = new ArrayList<>();
+            for (Object node : current) step.select(node, next);
+            current = next;
+            if (current.isEmpty()) break;
+        }
+        return current;
+    }
+
+    private Object first(Object root) {
+        List<Object> all = findAll(root);
+        return all.isEmpty() ? MISSING : all.get(0);
+    }
+
+    /**
+     * Walks down a definite path.
+     *
+     * @return the value selected, or {@link JSONPath#MISSING}.
+     */
+    private static Object walk(Object node, Step[] steps) {
+        for (Step step : steps) {
+            node = child(node, step.name, step.index);
+            if (node == MISSING) return MISSING;
+        }
+        return node;
+    }
+
+    /**
+     * @return the member of an object with a name, or the element of an array at an index, or
+     * {@link JSONPath#MISSING} if there is none.
+     */
+    static Object child(Object node, String name, int index) {
+        if (name != null) {
+            if (node instanceof JSONObject object) return object.contains(name) ? object.getItem(name) : MISSING;
+            if (node instanceof PersistentJSONObject object) return object.has(name) ? object.get(name) : MISSING;
+        }
+        if (index == NO_INDEX) return MISSING;
+        int size = sizeOf(node);
+        if (index < 0) index += size;
+        return index >= 0 && index < size ? elementAt(node, index) : MISSING;
+    }
+
+    /**
+     * @return the number of elements of an array, or -1 if the value is not an array.
+     */
+    static int sizeOf(Object node) {
+        if (node instanceof JSONArray array) return array.size();
+        if (node instanceof Object[] array) return array.length;
+        if (node instanceof List<?> list) return list.size();
+        if (node instanceof PersistentJSONArray array) return array.size();
+        if (node != null && node.getClass().isArray()) return Array.getLength(node);
+        return -1;
+    }
+
+    static Object elementAt(Object node, int index) {
+        if (node instanceof JSONArray array) return array.get(index);
+        if (node instanceof Object[] array) return array[index];
+        if (node instanceof List<?> list) return list.get(index);
+        if (node instanceof PersistentJSONArray array) return array.get(index);
+        return Array.get(node, index);
+    }
+
+    private static boolean isContainer(Object node) {
+        return node instanceof JSONObject || node instanceof PersistentJSONObject || sizeOf(node) >= 0;
+    }
+
+    /**
+     * Adds every member value of an object, or every element of an array, in order.
+     */
+    private static void children(Object node, List<Object> out) {
+        if (node instanceof JSONObject object) {
+            for (int i = 0; i < object.end(); i++) {
+                if (object.nameAt(i) != null) out.add(object.valueAt(i));
+            }
+        } else if (node instanceof PersistentJSONObject object) {
+            for (Attribute attribute : object.jsonAttributes()) out.add(attribute.val());
+        } else {
+            int size = sizeOf(node);
+            for (int i = 0; i < size; i++) out.add(elementAt(node, i));
+        }
+    }
+
+    /**
+     * Adds a value if it is an object or array, and every object and array inside it, at any depth, in document order
+     * and without recursion. An object or array held more than once is only added once, such that circular references
+     * end.
+     */
+    private static void descendants(Object root, List<Object> out) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Object> children = new ArrayList<>();
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        if (isContainer(root)) pending.push(root);
+        while (!pending.isEmpty()) {
+            Object node = pending.pop();
+            if (!seen.add(node)) continue;
+            out.add(node);
+            children.clear();
+            children(node, children);
+            for (int i = children.size() - 1; i >= 0; i--) {
+                if (isContainer(children.get(i))) pending.push(children.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return the expression this path was compiled from.
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof JSONPath path && expression.equals(path.expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    /**
+     * A single segment of a path.
+     */
+    private static final class Step {
+
+        static final int CHILD = 0, WILDCARD = 1, DESCENDANTS = 2, FILTER = 3;
+
+        final int kind;
+
+        /**
+         * Name of the member selected, or null.
+         */
+        final String name;
+
+        /**
+         * Index of the element selected, or {@link JSONPath#NO_INDEX}.
+         */
+        final int index;
+
+        final Condition[][] filter;
+
+        private Step(int kind, String name, int index, Condition[][] filter) {
+            this.kind = kind;
+            this.name = name;
+            this.index = index;
+            this.filter = filter;
+        }
+
+        static Step child(String name, int index) {
+            return new Step(CHILD, name, index, null);
+        }
+
+        /**
+         * Adds the values selected by this step from a value.
+         */
+        void select(Object node, List<Object> out) {
+            switch (kind) {
+                case CHILD -> {
+                    Object child = JSONPath.child(node, name, index);
+                    if (child != MISSING) out.add(child);
+                }
+                case WILDCARD -> children(node, out);
+                case DESCENDANTS -> descendants(node, out);
+                default -> {
+                    int from = out.size();
+                    children(node, out);
+                    int j = from;
+                    for (int i = from; i < out.size(); i++) {
+                        if (matches(out.get(i))) out.set(j++, out.get(i));
+                    }
+                    out.subList(j, out.size()).clear();
+                }
+            }
+        }
+
+        /**
+         * @return whether a value matches the filter, which holds alternatives of tests that must all pass.
+         */
+        private boolean matches(Object value) {
+            for (Condition[] all : filter) {
+                boolean res = true;
+                for (Condition condition : all) {
+                    if (!condition.test(value)) {
+                        res = false;
+                        break;
+                    }
+                }
+                if (res) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A test of a filter, telling whether the value at a relative path exists, or how it compares to a literal.
+     */
+    private record Condition(Step[] path, int op, Object literal) {
+
+        static final int EXISTS = 0, EQ = 1, NE = 2, LT = 3, LE = 4, GT = 5, GE = 6;
+
+        boolean test(Object node) {
+            Object value = walk(node, path);
+            if (value == MISSING) return false;
+            if (op == EXISTS) return true;
+            int cmp;
+            if (value instanceof Number a && literal instanceof Number b) {
+                cmp = isIntegral(a) && isIntegral(b) ? Long.compare(a.longValue(), b.longValue())
+                        : Double.compare(toDouble(a), toDouble(b));
+            } else if (value instanceof String a && literal instanceof String b) {
+                cmp = a.compareTo(b);
+            } else {
+                boolean equal = value == null ? literal == null : value.equals(literal);
+                return op == EQ ? equal : op == NE && !equal;
+            }
+            return switch (op) {
+                case EQ -> cmp == 0;
+                case NE -> cmp != 0;
+                case LT -> cmp < 0;
+                case LE -> cmp <= 0;
+                case GT -> cmp > 0;
+                default -> cmp >= 0;
+            };
+        }
+
+        private static boolean isIntegral(Number n) {
+            return n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte;
+        }
+
+        /**
+         * @return a number as a double, where floats are widened from their decimal representation, such that 0.1f
+         * equals 0.1 as parsed from a filter.
+         */
+        private static double toDouble(Number n) {
+            return n instanceof Float ? Double.parseDouble(n.toString()) : n.doubleValue();
+        }
+    }
+
+    /**
+     * Parses a JSONPath expression into steps.
+     */
+    private static final class Parser {
+
+        private final String s;
+
+        private int pos;
+
+        Parser(String s) {
+            this.s = s;
+            this.pos = 1;
+        }
+
+        Step[] path() {
+            List<Step> steps = new ArrayList<>();
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c == '[') {
+                    steps.add(bracket());
+                } else if (c == '.' && pos + 1 < s.length() && s.charAt(pos + 1) == '.') {
+                    pos += 2;
+                    steps.add(new Step(Step.DESCENDANTS, null, NO_INDEX, null));
+                    steps.add(at('[') ? bracket() : dotted());
+                } else if (c == '.') {
+                    pos++;
+                    steps.add(dotted());
+                } else {
+                    throw error("expected '.' or '['");
+                }
+            }
+            return steps.toArray(new Step[0]);
+        }
+
+        /**
+         * Parses a name or wildcard following a dot.
+         */
+        private Step dotted() {
+            if (at('*')) {
+                pos++;
+                return new Step(Step.WILDCARD, null, NO_INDEX, null);
+            }
+            return Step.child(name(), NO_INDEX);
+        }
+
+        private String name() {
+            int from = pos;
+            while (pos < s.length() && s.charAt(pos) != '.' && s.charAt(pos) != '[' && !isSpecial(s.charAt(pos))) pos++;
+            if (pos == from) throw error("expected a name");
+            return s.substring(from, pos);
+        }
+
+        private static boolean isSpecial(char c) {
+            return Character.isWhitespace(c) || "]()=!<>&|,'\"".indexOf(c) >= 0;
+        }
+
+        private Step bracket() {
+            pos++;
+            skipSpaces();
+            Step step;
+            if (at('*')) {
+                pos++;
+                step = new Step(Step.WILDCARD, null, NO_INDEX, null);
+            } else if (at('?')) {
+                pos++;
+                skipSpaces();
+                expect('(');
+                step = new Step(Step.FILTER, null, NO_INDEX, filter());
+                skipSpaces();
+                expect(')');
+            } else if (at('\'') || at('"')) {
+                step = Step.child(quoted(), NO_INDEX);
+            } else {
+                step = Step.child(null, integer());
+            }
+            skipSpaces();
+            expect(']');
+            return step;
+        }
+
+        private Condition[][] filter() {
+            List<Condition[]> any = new ArrayList<>();
+            List<Condition> all = new ArrayList<>();
+            while (true) {
+                all.add(condition());
+                skipSpaces();
+                if (s.startsWith("&&", pos)) {
+                    pos += 2;
+                } else if (s.startsWith("||", pos)) {
+                    pos += 2;
+                    any.add(all.toArray(new Condition[0]));
+                    all.clear();
+                } else {
+                    any.add(all.toArray(new Condition[0]));
+                    return any.toArray(new Condition[0][]);
+                }
+            }
+        }
+
+        private Condition condition() {
+            skipSpaces();
+            expect('@');
+            List<Step> path = new ArrayList<>();
+            while (true) {
+                if (at('.') && !s.startsWith("..", pos)) {
+                    pos++;
+                    path.add(Step.child(name(), NO_INDEX));
+                } else if (at('[')) {
+                    Step step = bracket();
+                    if (step.kind != Step.CHILD) throw error("filters may only hold names and indices");
+                    path.add(step);
+                } else {
+                    break;
+                }
+            }
+            skipSpaces();
+            int op;
+            if (s.startsWith("==", pos)) op = Condition.EQ;
+            else if (s.startsWith("!=", pos)) op = Condition.NE;
+            else if (s.startsWith("<=", pos)) op = Condition.LE;
+            else if (s.startsWith(">=", pos)) op = Condition.GE;
+            else if (at('<')) op = Condition.LT;
+            else if (at('>')) op = Condition.GT;
+            else return new Condition(path.toArray(new Step[0]), Condition.EXISTS, null);
+            pos += op == Condition.LT || op == Condition.GT ? 1 : 2;
+            skipSpaces();
+            return new Condition(path.toArray(new Step[0]), op, literal());
+        }
+
+        private Object literal() {
+            if (at('\'') || at('"')) return quoted();
+            for (String word : new String[]{"true", "false", "null"}) {
+                if (s.startsWith(word, pos)) {
+                    pos += word.length();
+                    return word.equals("null") ? null : Boolean.valueOf(word);
+                }
+            }
+            int from = pos;
+            while (pos < s.length() && "+-.eE0123456789".indexOf(s.charAt(pos)) >= 0) pos++;
+            String number = s.substring(from, pos);
+            try {
+                if (JSONParser.isInteger(number)) return Long.parseLong(number);
+                return Double.parseDouble(number);
+            } catch (NumberFormatException e) {
+                pos = from;
+                throw error("expected a literal");
+            }
+        }
+
+        private String quoted() {
+            char quote = s.charAt(pos++);
+            StringBuilder sb = new StringBuilder();
+            while (pos < s.length() && s.charAt(pos) != quote) {
+                char c = s.charAt(pos++);
+                if (c == '\\' && pos < s.length()) c = s.charAt(pos++);
+                sb.append(c);
+            }
+            expect(quote);
+            return sb.toString();
+        }
+
+        private int integer() {
+            int from = pos;
+            if (at('-')) pos++;
+            while (pos < s.length() && Character.isDigit(s.charAt(pos))) pos++;
+            try {
+                return Integer.parseInt(s.substring(from, pos));
+            } catch (NumberFormatException e) {
+                pos = from;
+                throw error("expected '*', '?', a quoted name or an index");
+            }
+        }
+
+        private boolean at(char c) {
+            return pos < s.length() && s.charAt(pos) == c;
+        }
+
+        private void expect(char c) {
+            if (!at(c)) throw error("expected '" + c + "'");
+            pos++;
+        }
+
+        private void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSONPath \"" + s + "\" at index " + pos + ", " + message + ".");
+        }
+    }
+}
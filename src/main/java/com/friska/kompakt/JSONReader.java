@@ -0,0 +1,501 @@
+package com.friska.kompakt;
+
+import java.util.Arrays;
+
+/**
+ * Parses a JSON string in a single pass over its characters, without recursion and without cutting the string into
+ * substrings. Every object and array that is currently being parsed is held on an explicit stack, whose size is
+ * bounded by a maximum depth, such that deeply nested JSON strings never cause a {@link StackOverflowError}. Elements
+ * of arrays are collected on one shared stack of values, and copied into an array of the exact size once the array is
+ * closed.<p>
+ * If numbers are stored unboxed, a number is read into {@link JSONReader#tag} and {@link JSONReader#bits} rather than
+ * boxed, and the stack of values has parallel stacks of tags and bits, from which a closed array becomes an array of
+ * primitives if all its elements share a tag.<p>
+ * The syntax accepted is the same as that of the helper methods of {@link JSONParser}, and syntax errors are thrown as
+ * {@link IllegalArgumentException}.
+ *
+ * @see JSONParser#parse(String, NumberType, int)
+ */
+final class JSONReader {
+
+    private final String json;
+
+    private final NumberType type;
+
+    private final int maxDepth;
+
+    /**
+     * Tree of the paths to values kept as {@link RawJSON}, or null if every value is parsed.
+     */
+    private final ParserConfig.PathNode rawTree;
+
+    /**
+     * Whether arrays are parsed as {@link JSONArray}s instead of {@code Object[]}.
+     */
+    private final boolean jsonArrays;
+
+    private int pos;
+
+    /**
+     * Open containers, either a {@link JSONObject}, or null for an array.
+     */
+    private Object[] containers = new Object[16];
+
+    /**
+     * For objects, the name of the member being parsed. For arrays, the index in {@link JSONReader#values} of their
+     * first element.
+     */
+    private Object[] keys = new Object[16];
+
+    /**
+     * For each open container, the node of the tree of raw paths it is reached through, or null if no value inside it
+     * is kept raw. Only allocated if there are raw paths.
+     */
+    private ParserConfig.PathNode[] nodes;
+
+    private int depth;
+
+    private Object[] values = new Object[16];
+
+    private int size;
+
+    /**
+     * Marks a value read into {@link JSONReader#tag} and {@link JSONReader#bits} instead of being boxed.
+     */
+    private static final Object PRIMITIVE = new Object();
+
+    /**
+     * Tag of a boolean element of an array, next to the tags of {@link JSONObject}.
+     */
+    private static final byte BOOLEAN = 5;
+
+    /**
+     * For each element of {@link JSONReader#values}, its tag, and its bits if it is a number stored unboxed. Only
+     * allocated if numbers are stored unboxed.
+     */
+    private byte[] tags;
+
+    private long[] valueBits;
+
+    private byte tag;
+
+    private long bits;
+
+    JSONReader(String json, NumberType type, int maxDepth) {
+        this.json = json;
+        this.type = type;
+        this.maxDepth = maxDepth;
+        this.rawTree = null;
+        this.jsonArrays = false;
+    }
+
+    JSONReader(String json, ParserConfig config) {
+        this.json = json;
+        this.type = config.getNumberType();
+        this.maxDepth = config.getMaxDepth();
+        this.rawTree = config.rawTree;
+        this.jsonArrays = config.isJSONArrays();
+        if (rawTree != null) nodes = new ParserConfig.PathNode[16];
+        if (config.isUnboxedPrimitives() && type != NumberType.BIGDECIMAL) {
+            tags = new byte[16];
+            valueBits = new long[16];
+        }
+    }
+
+    /**
+     * Parses the whole JSON string as a single value, surrounded by any amount of whitespace.
+     */
+    Object parse() {
+        skipWhitespace();
+        Object value = null;
+        boolean done = false;
+        while (!done) {
+            //Reads a value, or opens a container
+            if (pos == json.length()) throw new IllegalArgumentException("Expected JSON value.");
+            char c = json.charAt(pos);
+            ParserConfig.PathNode node = rawTree == null ? null : depth == 0 ? rawTree : child();
+            if (node != null && node.raw) {
+                value = readRaw();
+            } else if (c == '{') {
+                pos++;
+                if (skipWhitespace() == '}') {
+                    pos++;
+                    value = new JSONObject();
+                } else {
+                    push(new JSONObject(), readName(), node);
+                    continue;
+                }
+            } else if (c == '[') {
+                pos++;
+                if (skipWhitespace() == ']') {
+                    pos++;
+                    value = jsonArrays ? new JSONArray() : new Object[0];
+                } else {
+                    push(null, size, node);
+                    continue;
+                }
+            } else {
+                value = readScalar();
+            }
+
+            //Adds the value to its container, closing every container that ends after it
+            while (true) {
+                if (depth == 0) {
+                    done = true;
+                    break;
+                }
+                Object container = containers[depth - 1];
+                if (!(container instanceof JSONObject object)) add(value);
+                else if (value == PRIMITIVE) object.addPrimitive((String) keys[depth - 1], tag, bits);
+                else object.addAttribute((String) keys[depth - 1], value);
+
+                char next = skipWhitespace();
+                pos++;
+                if (next == ',') {
+                    if (container instanceof JSONObject) keys[depth - 1] = readName();
+                    else skipWhitespace();
+                    break;
+                } else if (next == '}' && container instanceof JSONObject object) {
+                    object.trim();
+                    value = object;
+                    pop();
+                } else if (next == ']' && container == null) {
+                    int start = (Integer) keys[depth - 1];
+                    value = tags == null ? Arrays.copyOfRange(values, start, size) : toArray(start);
+                    if (jsonArrays) value = JSONArray.from(value);
+                    Arrays.fill(values, start, size, null);
+                    size = start;
+                    pop();
+                } else {
+                    throw new IllegalArgumentException(next == 0 ? "Unexpected end of JSON string."
+                            : "Unexpected character '" + next + "' at index " + (pos - 1) + ".");
+                }
+            }
+        }
+
+        if (skipWhitespace() != 0)
+            throw new IllegalArgumentException("Unexpected character '" + json.charAt(pos) + "' after JSON value.");
+        return value == PRIMITIVE ? box(tag, bits) : value;
+    }
+
+    private void push(Object container, Object key, ParserConfig.PathNode node) {
+        if (depth == maxDepth)
+            throw new IllegalArgumentException("JSON string is nested deeper than " + maxDepth + " levels.");
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+            if (nodes != null) nodes = Arrays.copyOf(nodes, depth * 2);
+        }
+        containers[depth] = container;
+        keys[depth] = key;
+        if (nodes != null) nodes[depth] = node;
+        depth++;
+    }
+
+    private void pop() {
+        depth--;
+        containers[depth] = null;
+        keys[depth] = null;
+        if (nodes != null) nodes[depth] = null;
+    }
+
+    /**
+     * @return the node of the tree of raw paths that the value about to be read is reached through, or null if there
+     * is none.
+     */
+    private ParserConfig.PathNode child() {
+        ParserConfig.PathNode parent = nodes[depth - 1];
+        if (parent == null || parent.children.isEmpty()) return null;
+        Object container = containers[depth - 1];
+        String name = container instanceof JSONObject ? (String) keys[depth - 1]
+                : Integer.toString(size - (Integer) keys[depth - 1]);
+        return parent.children.get(name);
+    }
+
+    /**
+     * Skips a value without parsing it, only checking that its brackets and string laterals are balanced and
+     * correctly nested.
+     *
+     * @return the value as a slice of the JSON string.
+     */
+    private RawJSON readRaw() {
+        int start = pos;
+        char c = json.charAt(pos);
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            //Closing brackets expected for the brackets opened so far, innermost last
+            char[] closers = new char[8];
+            int open = 0;
+            do {
+                if (pos == json.length()) throw new IllegalArgumentException("Unexpected end of JSON string.");
+                c = json.charAt(pos);
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    if (open == closers.length) closers = Arrays.copyOf(closers, open * 2);
+                    closers[open++] = c == '{' ? '}' : ']';
+                } else if (c == '}' || c == ']') {
+                    if (closers[--open] != c)
+                        throw new IllegalArgumentException("Unexpected character '" + c + "' at index " + pos + ".");
+                }
+                pos++;
+            } while (open > 0);
+        } else {
+            readScalar();
+        }
+        return new RawJSON(json, start, pos);
+    }
+
+    /**
+     * Skips a string, along with its escape sequences, without decoding it.
+     */
+    private void skipString() {
+        pos++;
+        while (true) {
+            if (pos >= json.length())
+                throw new IllegalArgumentException("Representations of a JSON string must be wrapped with string laterals.");
+            char c = json.charAt(pos++);
+            if (c == '"') return;
+            if (c == '\\') pos++;
+        }
+    }
+
+    private void add(Object value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            if (tags != null) {
+                tags = Arrays.copyOf(tags, size * 2);
+                valueBits = Arrays.copyOf(valueBits, size * 2);
+            }
+        }
+        if (tags != null) {
+            if (value == PRIMITIVE) {
+                tags[size] = tag;
+                valueBits[size] = bits;
+                value = null;
+            } else {
+                tags[size] = value instanceof Boolean ? BOOLEAN : JSONObject.BOXED;
+            }
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Copies the elements of a closed array from the stack of values into an array of primitives if they all share a
+     * tag, or else into an array of objects, boxing numbers stored unboxed. If arrays are parsed as {@link JSONArray}s,
+     * integers are copied into a {@code long[]} and doubles into a {@code double[]}, which the JSON array then holds as
+     * they are, while floats are boxed such that they are not widened.
+     *
+     * @param start index of the first element.
+     */
+    private Object toArray(int start) {
+        int n = size - start;
+        byte first = tags[start];
+        boolean shared = first != JSONObject.BOXED && !(jsonArrays && (first == BOOLEAN || first == JSONObject.FLOAT));
+        for (int i = start + 1; i < size && shared; i++) shared = tags[i] == first;
+        Object array;
+        if (!shared) {
+            Object[] res = new Object[n];
+            for (int i = 0; i < n; i++) {
+                byte t = tags[start + i];
+                res[i] = t == JSONObject.BOXED || t == BOOLEAN ? values[start + i] : box(t, valueBits[start + i]);
+            }
+            array = res;
+        } else if (first == BOOLEAN) {
+            boolean[] res = new boolean[n];
+            for (int i = 0; i < n; i++) res[i] = (Boolean) values[start + i];
+            array = res;
+        } else if (first == JSONObject.INT && jsonArrays) {
+            long[] res = new long[n];
+            System.arraycopy(valueBits, start, res, 0, n);
+            array = res;
+        } else if (first == JSONObject.INT) {
+            int[] res = new int[n];
+            for (int i = 0; i < n; i++) res[i] = (int) valueBits[start + i];
+            array = res;
+        } else if (first == JSONObject.FLOAT) {
+            float[] res = new float[n];
+            for (int i = 0; i < n; i++) res[i] = (float) Double.longBitsToDouble(valueBits[start + i]);
+            array = res;
+        } else {
+            double[] res = new double[n];
+            for (int i = 0; i < n; i++) res[i] = Double.longBitsToDouble(valueBits[start + i]);
+            array = res;
+        }
+        Arrays.fill(tags, start, size, JSONObject.BOXED);
+        return array;
+    }
+
+    private static Object box(byte tag, long bits) {
+        return switch (tag) {
+            case JSONObject.INT -> (int) bits;
+            case JSONObject.FLOAT -> (float) Double.longBitsToDouble(bits);
+            default -> Double.longBitsToDouble(bits);
+        };
+    }
+
+    /**
+     * Reads the name of a member and the colon following it, along with surrounding whitespace.
+     */
+    private String readName() {
+        if (skipWhitespace() != '"') throw new IllegalArgumentException("All members must have the form <String> : <Value>.");
+        String name = readString();
+        if (skipWhitespace() != ':') throw new IllegalArgumentException("All members must have the form <String> : <Value>.");
+        pos++;
+        if (skipWhitespace() == 0) throw new IllegalArgumentException("Expected JSON value.");
+        return name;
+    }
+
+    /**
+     * Reads a string, number, boolean or null.
+     */
+    private Object readScalar() {
+        char c = json.charAt(pos);
+        if (c == '"') return readString();
+        if (c == '-' || (c >= '0' && c <= '9')) return readNumber();
+        if (json.startsWith("true", pos)) return readLiteral("true", Boolean.TRUE);
+        if (json.startsWith("false", pos)) return readLiteral("false", Boolean.FALSE);
+        if (json.startsWith("null", pos)) return readLiteral("null", null);
+        throw new IllegalArgumentException("Unexpected representation of a JSON value at index " + pos + ".");
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        pos += literal.length();
+        if (pos < json.length() && !isDelimiter(json.charAt(pos)))
+            throw new IllegalArgumentException("Unexpected representation of a JSON value at index " + pos + ".");
+        return value;
+    }
+
+    /**
+     * Reads a number of the form integer, fraction, then exponent, as defined in {@link JSONParser#isInteger(String)},
+     * {@link JSONParser#isFraction(String)} and {@link JSONParser#isExponent(String)}.
+     */
+    private Object readNumber() {
+        String err = "Input string does not represent a JSON number.";
+        int start = pos;
+        if (json.charAt(pos) == '-') pos++;
+        if (peek() == '0') pos++;
+        else if (skipDigits() == 0) throw new IllegalArgumentException(err);
+        if (peek() == '.') {
+            pos++;
+            if (skipDigits() == 0) throw new IllegalArgumentException(err);
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            pos++;
+            if (peek() == '+' || peek() == '-') pos++;
+            if (skipDigits() == 0) throw new IllegalArgumentException(err);
+        }
+        if (pos < json.length() && !isDelimiter(json.charAt(pos))) throw new IllegalArgumentException(err);
+        String value = json.substring(start, pos);
+        if (tags == null) return JSONParser.toNumber(value, type);
+        try {
+            switch (type) {
+                case INT -> {
+                    tag = JSONObject.INT;
+                    bits = Integer.parseInt(value);
+                }
+                case FLOAT -> {
+                    tag = JSONObject.FLOAT;
+                    bits = Double.doubleToRawLongBits(Float.parseFloat(value));
+                }
+                default -> {
+                    tag = JSONObject.DOUBLE;
+                    bits = Double.doubleToRawLongBits(Double.parseDouble(value));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return JSONParser.toNumber(value, type);
+        }
+        return PRIMITIVE;
+    }
+
+    private int skipDigits() {
+        int start = pos;
+        while (pos < json.length() && json.charAt(pos) >= '0' && json.charAt(pos) <= '9') pos++;
+        return pos - start;
+    }
+
+    /**
+     * Reads a string, decoding its escape sequences. Strings without escape sequences are cut straight out of the
+     * JSON string.
+     */
+    private String readString() {
+        int start = ++pos;
+        StringBuilder sb = null;
+        while (true) {
+            if (pos >= json.length())
+                throw new IllegalArgumentException("Representations of a JSON string must be wrapped with string laterals.");
+            char c = json.charAt(pos);
+            if (c == '"') {
+                String str = sb == null ? json.substring(start, pos) : sb.append(json, start, pos).toString();
+                pos++;
+                return str;
+            }
+            if (Character.isISOControl(c)) throw new IllegalArgumentException("Unexpected control character.");
+            if (c != '\\') {
+                pos++;
+                continue;
+            }
+
+            if (sb == null) sb = new StringBuilder();
+            sb.append(json, start, pos);
+            char escape = pos + 1 < json.length() ? json.charAt(pos + 1) : 0;
+            switch (escape) {
+                case '"', '\\', '/' -> sb.append(escape);
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    int unicode = pos + 6 <= json.length() ? hex(pos + 2) : -1;
+                    if (unicode < 0)
+                        throw new IllegalArgumentException("Erroneous unicode character. " +
+                                "Unicodes must be represented in the form \"\\uXXXX\", where" +
+                                " \"XXXX\" is a substring of 4 hex digits.");
+                    sb.append((char) unicode);
+                    pos += 4;
+                }
+                default -> throw new IllegalArgumentException("Erroneous use of the escape lateral.");
+            }
+            pos += 2;
+            start = pos;
+        }
+    }
+
+    /**
+     * @return the value of the 4 hex digits starting at an index, or -1 if they are not hex digits.
+     */
+    private int hex(int index) {
+        int res = 0;
+        for (int i = index; i < index + 4; i++) {
+            char c = json.charAt(i);
+            if (c >= '0' && c <= '9') res = res * 16 + (c - '0');
+            else if (c >= 'a' && c <= 'f') res = res * 16 + (c - 'a' + 10);
+            else if (c >= 'A' && c <= 'F') res = res * 16 + (c - 'A' + 10);
+            else return -1;
+        }
+        return res;
+    }
+
+    /**
+     * Skips whitespace.
+     *
+     * @return the next character, or 0 if the end of the string is reached.
+     */
+    private char skipWhitespace() {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) pos++;
+        return peek();
+    }
+
+    private char peek() {
+        return pos < json.length() ? json.charAt(pos) : 0;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ',' || c == ']' || c == '}' || Character.isWhitespace(c);
+    }
+}
@@ -3,12 +3,11 @@ package com.friska.kompakt;
 import com.friska.kompakt.annotations.DeepSerialise;
 import com.friska.kompakt.annotations.Ignored;
 import com.friska.kompakt.annotations.SerialiseAsString;
+import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Set;
-import java.util.function.Consumer;
+import java.util.Map;
 
 /**
  * Classes implementing this interface allows Kompakt to search through field variables and serialise them into a
@@ -34,162 +33,85 @@ import java.util.function.Consumer;
  *         Custom indent sizes - to customise the JSON indent size, call the static setter
  *         {@link JSONSerialisable#setIndentSize(int)}.
  *     </li>
+ *     <li>
+ *         Sorted map keys - to serialise the entries of maps in the order of their keys, call the static setter
+ *         {@link JSONSerialisable#setSortMapKeys(boolean)}.
+ *     </li>
  * </ul>
  */
 public interface JSONSerialisable {
 
     /**
-     * Sets a new indentation size for JSON serialisations.
+     * Sets a new indentation size for JSON serialisations. This and the other static setters below change the
+     * configuration used by {@link JSONSerialisable#serialise()}, which is replaced as a whole, such that a
+     * serialisation running at the same time keeps using the configuration it started with, and setters called at the
+     * same time never undo each other's change. To serialise with a configuration of its own regardless of these
+     * setters, call {@link JSONSerialisable#serialise(WriterConfig)}.
      *
      * @param newSize the number of spaces for each indentation.
      */
     static void setIndentSize(int newSize) {
-        JSONUtils.INDENT_SIZE = newSize;
+        JSONUtils.updateConfig(config -> config.withIndentSize(newSize));
     }
 
     /**
-     * Fetches non-static fields from an object's class and converts them to instances of {@link Attribute}.
+     * Sets whether the entries of a {@link Map} should be serialised in the order of their keys, rather than the
+     * iteration order of the map. Keys are compared by their string representation. Maps that are already sorted by
+     * the natural order of their string keys are iterated directly, other maps have their entries sorted without being
+     * copied into a new map.
      *
-     * @param obj the object to fetch the fields from.
-     * @return a list of attributes representing these fields.
+     * @param sort whether map keys should be sorted.
      */
-    private static List<Attribute> fetchFieldsAsAttributes(Object obj) {
-        return JSONUtils.fieldToAttributes(obj.getClass().getDeclaredFields(), obj);
+    static void setSortMapKeys(boolean sort) {
+        JSONUtils.updateConfig(config -> config.withSortMapKeys(sort));
     }
 
     /**
-     * Serialises an a JSON-serialisable object.
+     * Sets what should happen when an object being serialised contains itself, directly or through any of its fields,
+     * arrays, collections or maps. By default, a
+     * {@link com.friska.kompakt.exceptions.CircularReferenceException} is thrown. Objects appearing more than once
+     * without containing themselves are not affected, and are serialised in full every time.
      *
-     * @param obj      the object to serialise.
-     * @param currSize current size of the indentation.
-     * @param omitted  a set of names of omitted field variables.
-     * @param <T>      an arbitrary type that extends {@link JSONSerialisable}.
-     * @return a string representation of the serialised JSON object.
+     * @param policy the policy applied to circular references.
+     * @see CyclePolicy
      */
-    private static <T extends JSONSerialisable> String serialise(T obj, int currSize, Set<String> omitted)
-            throws IllegalAccessException {
-
-        //Fetches the attributes
-        List<Attribute> attributes = new ArrayList<>();
-        getAttributes(obj, obj.getClass(), attributes, obj.deepSerialise());
-
-        //Initialise string builder
-        StringBuilder sb = new StringBuilder();
-        indent(sb, currSize, s -> s.append("{").append("\n"));
-
-        //Iterate
-        for (Attribute attribute : attributes) {
-            String name = attribute.name();
-            Object val = attribute.val();
-            if (!omitted.contains(name)) {
-                indent(sb, currSize + JSONUtils.INDENT_SIZE, s -> s.append(wrap(name)).append(": "));
-                serialiseItem(currSize, val, sb, false, attribute.serialiseAsString());
-                sb.append(",").append("\n");
-            }
-        }
-
-        if (sb.charAt(sb.length() - 2) == ',')
-            sb.delete(sb.length() - 2, sb.length() - 1);
-        indent(sb, currSize, s -> s.append("}"));
-        return sb.toString();
+    static void setCyclePolicy(CyclePolicy policy) {
+        JSONUtils.updateConfig(config -> config.withCyclePolicy(policy));
     }
 
     /**
-     * Fetches all attributes that will be serialised into the JSON string. By default, this means every non-static
-     * field of an object. However, one may override {@link JSONSerialisable#jsonAttributes()} to explicitly denote
-     * each attribute that should be serialised.
+     * Sets the least number of elements an array or {@link java.util.Collection} must hold to be serialised in
+     * parallel. Such arrays and collections are split into chunks serialised on the common
+     * {@link java.util.concurrent.ForkJoinPool}, and the chunks are joined in order, such that the resulting JSON
+     * string is the same as if it were serialised sequentially. Elements are read from several threads at once, hence
+     * their fields and {@link Object#toString()} should be safe to call concurrently. The threshold is 65536 by
+     * default, and setting it to {@link Integer#MAX_VALUE} disables parallel serialisation.
      *
-     * @param obj          the object whose attributes are fetched.
-     * @param clazz        class from which attributes are fetched (may be the class of obj, or superclasses of obj).
-     * @param list         a list that will be mutated by this method to store the attributes.
-     * @param getFieldDeep whether inheritted fields should be serialised as attributes.
-     * @param <T>          an arbitrary inheriter of {@link JSONSerialisable}.
-     * @see Attribute
+     * @param threshold the least number of elements serialised in parallel.
      */
-    private static <T extends JSONSerialisable> void
-    getAttributes(T obj, Class<?> clazz, List<Attribute> list, boolean getFieldDeep) {
-        if (!getFieldDeep) {
-            if (clazz.equals(obj.getClass())) list.addAll(obj.jsonAttributes());
-            else list.addAll(JSONUtils.fieldToAttributes(clazz.getDeclaredFields(), obj));
-            return;
-        }
-
-        Class<?> superClass = clazz.getSuperclass();
-        getAttributes(obj, clazz, list, false);
-
-        //Base case
-        if (superClass == null) return;
-
-        //Inductive case
-        getAttributes(obj, superClass, list, true);
-
+    static void setParallelThreshold(int threshold) {
+        JSONUtils.updateConfig(config -> config.withParallelThreshold(threshold));
     }
 
     /**
-     * Helper method to serialise a single value, which is either the value to field or another serialisable object.
+     * Sets the maximum number of objects, arrays, collections and maps that may be nested inside one another in a
+     * serialised JSON string, 1000 by default. Serialisation does not recurse, hence deeply nested objects never
+     * overflow the stack, but an {@link IllegalArgumentException} is thrown once the maximum depth is exceeded.
      *
-     * @param currSize current size of the indentation.
-     * @param item     the item to serialise.
-     * @param sb       current string builder used in the serialisation.
+     * @param maxDepth the maximum depth of nesting.
      */
-    private static void serialiseItem(int currSize, Object item, StringBuilder sb, boolean indentAlways, boolean asString) {
-
-        if (item instanceof JSONSerialisable s)
-            sb.append(s.serialise(currSize + JSONUtils.INDENT_SIZE, s.ignoredFields()));
-
-        else if (item == null)
-            handle(currSize, sb, indentAlways, "null");
-        else if (asString)
-            handle(currSize, sb, indentAlways, wrap(item.toString()));
-        else if (item instanceof Number || item instanceof Boolean)
-            handle(currSize, sb, indentAlways, item.toString());
-        else if (item.getClass().isArray())
-            handleArray(currSize, (Object[]) item, sb);
-        else if (item instanceof Iterable<?> iterable)
-            handleIterable(currSize, sb, iterable);
-        else
-            handle(currSize, sb, indentAlways, wrap(item.toString()));
-    }
-
-    private static void handleArray(int currSize, Object[] item, StringBuilder sb) {
-        sb.append("[").append("\n");
-        Object[] array = item;
-        for (int i = 0; i < array.length; i++) {
-            serialiseItem(currSize + JSONUtils.INDENT_SIZE, array[i], sb, true, false);
-            if (i != array.length - 1) sb.append(",");
-            sb.append("\n");
-        }
-        indent(sb, currSize + JSONUtils.INDENT_SIZE, s -> s.append("]"));
-    }
-
-    private static void handleIterable(int currSize, StringBuilder sb, Iterable<?> iterable) {
-        sb.append("[").append("\n");
-        boolean flag = false;
-        for (Object o : iterable) {
-            if (flag) {
-                sb.append(",");
-                sb.append("\n");
-            }
-            serialiseItem(currSize + JSONUtils.INDENT_SIZE, o, sb, true, false);
-            flag = true;
-        }
-        indent(sb, currSize + JSONUtils.INDENT_SIZE, s -> s.append("]"));
-    }
-
-    private static void handle(int currSize, StringBuilder sb, boolean indentAlways, String str) {
-        if (indentAlways)
-            indent(sb, currSize + JSONUtils.INDENT_SIZE, s -> s.append(str));
-        else
-            sb.append(str);
-    }
-
-    private static void indent(StringBuilder sb, int indentSize, Consumer<StringBuilder> action) {
-        sb.append(" ".repeat(Math.max(0, indentSize)));
-        action.accept(sb);
+    static void setMaxDepth(int maxDepth) {
+        JSONUtils.updateConfig(config -> config.withMaxDepth(maxDepth));
     }
 
-    private static String wrap(String str) {
-        return "\"" + JSONUtils.sanitiseString(str) + "\"";
+    /**
+     * Fetches non-static fields from an object's class and converts them to instances of {@link Attribute}.
+     *
+     * @param obj the object to fetch the fields from.
+     * @return a list of attributes representing these fields.
+     */
+    private static List<Attribute> fetchFieldsAsAttributes(Object obj) {
+        return ClassPlan.of(obj.getClass()).attributes(obj);
     }
 
     /**
@@ -208,12 +130,12 @@ public interface JSONSerialisable {
      * By default, Kompakt only serialises non-inherited fields in the child class. In order to serialise
      * inherited ones too, this method should be overridden to return true, or the class of the object being serialised
      * should be annotated with {@link DeepSerialise}, in which case every non-static fields,
-     * including private ones, unless ignored, will be serialised.
+     * including private ones, unless ignored, will be serialised. The annotation is looked up once per class.
      *
      * @return whether inherited fields should be serialised.
      */
     default boolean deepSerialise() {
-        return this.getClass().isAnnotationPresent(DeepSerialise.class);
+        return ClassPlan.of(this.getClass()).deepAnnotated;
     }
 
     /**
@@ -236,8 +158,8 @@ public interface JSONSerialisable {
      * inherited ones. Any fields that has the form of an array of objects will be serialised as a JSON array.
      * Primitive number types, or any fields that inherit {@link Number} will be serialised as a JSON number, and
      * booleans will be serialised as a JSON boolean. Any other form of objects will be serialised as strings by
-     * calling {@link Object#toString()}. This method is recursive in nature, and note that any circular dependency
-     * of fields may cause non-termination.
+     * calling {@link Object#toString()}. Objects that contain themselves are handled according to the policy set
+     * through {@link JSONSerialisable#setCyclePolicy(CyclePolicy)}.
      *
      * @return a JSON-string representation of the object.
      */
@@ -245,6 +167,47 @@ public interface JSONSerialisable {
         return serialise(0, ignoredFields());
     }
 
+    /**
+     * Serialises the object in the same way as {@link JSONSerialisable#serialise()}, using the given configuration
+     * instead of the one set through the static setters of this interface.
+     *
+     * @param config the configuration to serialise with.
+     * @return a JSON-string representation of the object.
+     * @see WriterConfig
+     */
+    default String serialise(@NotNull WriterConfig config) {
+        return new JSONWriter(config).write(this, 0, ignoredFields());
+    }
+
+    /**
+     * Serialises the object in the same way as {@link JSONSerialisable#serialise()}, writing the JSON string straight
+     * into a byte buffer, encoded in UTF-8, starting at its position. The JSON string is first written into a string
+     * builder pooled across calls, such that serialising repeatedly into a reused byte buffer does not allocate any
+     * intermediate string.
+     *
+     * @param out the byte buffer to write into, whose position is moved past the bytes written.
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough remaining bytes, in which case nothing
+     *                                          is written.
+     */
+    default int serialise(@NotNull ByteBuffer out) {
+        return serialise(JSONUtils.CONFIG, out);
+    }
+
+    /**
+     * Serialises the object into a byte buffer as in {@link JSONSerialisable#serialise(ByteBuffer)}, using the given
+     * configuration.
+     *
+     * @param config the configuration to serialise with.
+     * @param out    the byte buffer to write into, whose position is moved past the bytes written.
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough remaining bytes, in which case nothing
+     *                                          is written.
+     */
+    default int serialise(@NotNull WriterConfig config, @NotNull ByteBuffer out) {
+        return new JSONWriter(config).write(this, ignoredFields(), out);
+    }
+
     /**
      * Helper method for {@link JSONSerialisable#serialise()} used in the recursive calls.
      *
@@ -252,15 +215,7 @@ public interface JSONSerialisable {
      * @param omitted  an omitted set of field names.
      */
     default String serialise(int currSize, String[] omitted) {
-        try {
-            HashSet<String> omittedFields = omitted == null ?
-                    new HashSet<>() :
-                    new HashSet<>(List.of(omitted));
-            return serialise(this, currSize, omittedFields);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-            throw new RuntimeException("An issue occurred on serialising an object to JSON.");
-        }
+        return new JSONWriter(JSONUtils.CONFIG).write(this, currSize, omitted);
     }
 
 }
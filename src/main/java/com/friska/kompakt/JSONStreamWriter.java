@@ -0,0 +1,211 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+
+/**
+ * Writes a sequence of {@link JSONSerialisable} objects to a {@link Writer} one at a time, such that the sequence never
+ * has to be held in memory as a whole, nor as one JSON string. Objects may be written individually, or drawn lazily
+ * from an {@link Iterator}, a {@link Stream} or a {@link Spliterator}, for instance from a database cursor:
+ * <pre>{@code
+ * try (JSONStreamWriter writer = new JSONStreamWriter(out, JSONStreamWriter.Format.NDJSON)) {
+ *     writer.writeAll(rows);
+ * }
+ * }</pre>
+ * The objects are written either as the elements of a single JSON array, or as newline-delimited JSON, where each
+ * object is written compactly on a line of its own. Every object is serialised by the same underlying writer into the
+ * same string builder, which is written out to the {@link Writer} and flushed whenever it holds at least
+ * {@link JSONStreamWriter#FLUSH_SIZE} characters, and when this writer is flushed or closed.<p>
+ * If an object fails to serialise, whatever was written of it is discarded and the exception is thrown, such that the
+ * output stays valid and later objects may still be written. A stream writer is not thread safe.
+ */
+public final class JSONStreamWriter implements Closeable, Flushable {
+
+    /**
+     * How a sequence of objects is laid out.
+     */
+    public enum Format {
+        /**
+         * A single JSON array holding every object, which is closed once the stream writer is closed.
+         */
+        ARRAY,
+        /**
+         * Newline-delimited JSON, with one compact JSON object per line.
+         */
+        NDJSON
+    }
+
+    /**
+     * The number of characters buffered before they are written out to the underlying writer.
+     */
+    public static final int FLUSH_SIZE = 1 << 13;
+
+    private final Writer out;
+
+    private final Format format;
+
+    private final WriterConfig config;
+
+    private final JSONWriter writer;
+
+    private final StringBuilder sb = new StringBuilder(FLUSH_SIZE + (FLUSH_SIZE >> 1));
+
+    private final char[] chars = new char[FLUSH_SIZE];
+
+    private long count;
+
+    private boolean closed;
+
+    /**
+     * Creates a stream writer using the configuration set through the static setters of {@link JSONSerialisable}.
+     *
+     * @param out    the writer to write to.
+     * @param format how the objects are laid out.
+     */
+    public JSONStreamWriter(@NotNull Writer out, @NotNull Format format) {
+        this(out, format, JSONUtils.CONFIG);
+    }
+
+    /**
+     * Creates a stream writer using a given configuration. If the format is {@link Format#NDJSON}, objects are always
+     * written compactly regardless of the configuration.
+     *
+     * @param out    the writer to write to.
+     * @param format how the objects are laid out.
+     * @param config the configuration to serialise with.
+     */
+    public JSONStreamWriter(@NotNull Writer out, @NotNull Format format, @NotNull WriterConfig config) {
+        this.out = out;
+        this.format = format;
+        this.config = format == Format.NDJSON ? config.withCompact(true) : config;
+        this.writer = new JSONWriter(this.config);
+        if (format == Format.ARRAY) sb.append('[');
+    }
+
+    /**
+     * Writes a single object, or null.
+     *
+     * @param obj the object to write.
+     * @return this stream writer.
+     * @throws IOException if the underlying writer fails.
+     */
+    public JSONStreamWriter write(JSONSerialisable obj) throws IOException {
+        if (closed) throw new IllegalStateException("Stream writer is already closed.");
+        int mark = sb.length();
+        int currSize = 0;
+        if (format == Format.ARRAY) {
+            if (count != 0) sb.append(',');
+            if (!config.isCompact()) sb.append('\n');
+            currSize = config.getIndentSize();
+        }
+        try {
+            if (obj == null) {
+                config.indent(sb, currSize);
+                sb.append("null");
+            } else {
+                writer.append(obj, currSize, sb);
+            }
+        } catch (RuntimeException e) {
+            sb.setLength(mark);
+            throw e;
+        }
+        if (format == Format.NDJSON) sb.append('\n');
+        count++;
+        if (sb.length() >= FLUSH_SIZE) drain();
+        return this;
+    }
+
+    /**
+     * Writes every remaining object of an iterator.
+     *
+     * @param iterator the objects to write.
+     * @return the number of objects written.
+     * @throws IOException if the underlying writer fails.
+     */
+    public long writeAll(@NotNull Iterator<? extends JSONSerialisable> iterator) throws IOException {
+        long start = count;
+        while (iterator.hasNext()) write(iterator.next());
+        return count - start;
+    }
+
+    /**
+     * Writes every object of a stream in its encounter order, consuming the stream.
+     *
+     * @param stream the objects to write.
+     * @return the number of objects written.
+     * @throws IOException if the underlying writer fails.
+     */
+    public long writeAll(@NotNull Stream<? extends JSONSerialisable> stream) throws IOException {
+        return writeAll(stream.iterator());
+    }
+
+    /**
+     * Writes every remaining object of a spliterator.
+     *
+     * @param spliterator the objects to write.
+     * @return the number of objects written.
+     * @throws IOException if the underlying writer fails.
+     */
+    public long writeAll(@NotNull Spliterator<? extends JSONSerialisable> spliterator) throws IOException {
+        return writeAll(Spliterators.iterator(spliterator));
+    }
+
+    /**
+     * @return the number of objects written so far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Writes out every buffered character, and flushes the underlying writer.
+     *
+     * @throws IOException if the underlying writer fails.
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * Closes the JSON array if the format is {@link Format#ARRAY}, writes out every buffered character, and closes the
+     * underlying writer. Closing a stream writer more than once has no effect.
+     *
+     * @throws IOException if the underlying writer fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (format == Format.ARRAY) {
+            if (count != 0 && !config.isCompact()) sb.append('\n');
+            sb.append(']');
+        }
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Copies the buffered characters to the underlying writer through a reused character array, and flushes it.
+     */
+    private void drain() throws IOException {
+        for (int from = 0; from < sb.length(); from += chars.length) {
+            int to = Math.min(from + chars.length, sb.length());
+            sb.getChars(from, to, chars, 0);
+            out.write(chars, 0, to - from);
+        }
+        sb.setLength(0);
+        out.flush();
+    }
+}
@@ -1,12 +1,8 @@
 package com.friska.kompakt;
 
-import com.friska.kompakt.annotations.Ignored;
-import com.friska.kompakt.annotations.SerialiseAsString;
-
-import java.lang.reflect.AccessFlag;
-import java.lang.reflect.Field;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.function.UnaryOperator;
 
 /**
  * This class holds a variety of settings and configurations for JSON serialisation, there are also utiliy methods
@@ -15,83 +11,172 @@ import java.util.List;
 public class JSONUtils {
 
     /**
-     * The size of indentation in the resulting JSON string.
+     * The configuration used when serialising without specifying one, swapped as a whole by the static setters of
+     * {@link JSONSerialisable}.
      */
-    protected static int INDENT_SIZE = 2;
+    protected static volatile WriterConfig CONFIG = WriterConfig.DEFAULT;
+
+    /**
+     * Replaces {@link JSONUtils#CONFIG} by a changed copy of it. Updates are serialised, such that concurrent updates of
+     * different settings are never lost, while serialisations keep reading the configuration without locking.
+     *
+     * @param update the change to make to the current configuration.
+     */
+    static synchronized void updateConfig(UnaryOperator<WriterConfig> update) {
+        CONFIG = update.apply(CONFIG);
+    }
+
+    /**
+     * Escape sequences of every ASCII character, indexed by the character. Characters that do not need escaping map
+     * to null.
+     */
+    private static final String[] ESCAPES = new String[128];
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    static {
+        for(int c = 0; c < 0x20; c++)
+            ESCAPES[c] = "\\u00" + HEX[c >> 4] + HEX[c & 0xF];
+        ESCAPES[0x7F] = "\\u007F";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\t'] = "\\t";
+    }
 
     /**
      * Sanitises a string by escaping control characters, quotation marks, or dealing with control characters, such that
      * the given string in Java can be represented appropriate in JSON.
      * @param string input string.
-     * @return a sanitised string compatible to be placed around string laterals and stored as a JSON string.
+     * @return a sanitised string compatible to be placed around string laterals and stored as a JSON string. If
+     * nothing needs to be escaped, the input string itself is returned.
      */
     public static String sanitiseString(String string){
         if(string == null) return null;
-        StringBuilder sb = new StringBuilder(string);
-        for(int i = 0; i < sb.length(); i++){
-            char c = sb.charAt(i);
-            switch (c){
-                case '\\' -> {
-                    sb.replace(i, i+1, "\\\\");
-                    i++;
-                }
-                case '"' -> {
-                    sb.replace(i, i+1, "\\\"");
-                    i++;
-                }
-                case '\b' -> {
-                    sb.replace(i, i+1, "\\b");
-                    i++; continue;
-                }
-                case '\f' -> {
-                    sb.replace(i, i+1, "\\f");
-                    i++; continue;
-                }
-                case '\n' -> {
-                    sb.replace(i, i+1, "\\n");
-                    i++; continue;
-                }
-                case '\r' -> {
-                    sb.replace(i, i+1, "\\r");
-                    i++; continue;
-                }
-                case '\t' -> {
-                    sb.replace(i, i+1, "\\t");
-                    i++; continue;
-                }
-            }
-            //If character is not of the above and is still a control character
-            if(Character.isISOControl(c)){
-                String unicode = "\\u" + String.format("%04X", (int) c);
-                sb.replace(i, i+1, unicode);
-                i = i + 5;
+        int first = firstEscape(string, false);
+        if(first < 0) return string;
+        StringBuilder sb = new StringBuilder(string.length() + 16);
+        appendEscaped(string, first, sb, false);
+        return sb.toString();
+    }
+
+    /**
+     * Sanitises a string as in {@link JSONUtils#sanitiseString(String)}, appending the result straight to a string
+     * builder, and optionally escaping every non-ASCII character as well.
+     * @param string a non-null input string.
+     * @param sb string builder to append to.
+     * @param asciiOnly whether non-ASCII characters are escaped.
+     */
+    static void appendSanitised(String string, StringBuilder sb, boolean asciiOnly){
+        int first = firstEscape(string, asciiOnly);
+        if(first < 0) sb.append(string);
+        else appendEscaped(string, first, sb, asciiOnly);
+    }
+
+    /**
+     * @return the index of the first character in the string that needs escaping, or -1 if there is none.
+     */
+    private static int firstEscape(String string, boolean asciiOnly){
+        for(int i = 0; i < string.length(); i++){
+            char c = string.charAt(i);
+            if(c < 128 ? ESCAPES[c] != null : asciiOnly || Character.isISOControl(c)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a string, escaping every character from a given index onwards, copying unescaped runs in bulk.
+     */
+    private static void appendEscaped(String string, int first, StringBuilder sb, boolean asciiOnly){
+        sb.append(string, 0, first);
+        int run = first;
+        for(int i = first; i < string.length(); i++){
+            char c = string.charAt(i);
+            if(c < 128){
+                String escape = ESCAPES[c];
+                if(escape == null) continue;
+                sb.append(string, run, i).append(escape);
+            }else if(asciiOnly || Character.isISOControl(c)){
+                sb.append(string, run, i).append("\\u").append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xF])
+                        .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+            }else{
+                continue;
             }
+            run = i + 1;
         }
-        return sb.toString();
+        sb.append(string, run, string.length());
     }
 
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
     /**
-     * Converts a set of fields to a set of attributes. Fields that are static or ignored will also be filtered.
-     * @param fields an array of fields.
-     * @param obj input object from which the fields are drawn.
-     * @return a list of attributes representing the array of fields.
+     * Appends a byte array as a JSON string holding its standard Base64 encoding (see {@link java.util.Base64}),
+     * encoding it straight into the string builder.
+     * @param bytes the bytes to encode.
+     * @param sb string builder to append to.
      */
-    protected static List<Attribute> fieldToAttributes(Field[] fields, Object obj) {
-        try {
-            ArrayList<Attribute> attributes = new ArrayList<>();
-            for (Field field : fields) {
-                if (!field.accessFlags().contains(AccessFlag.STATIC) && !field.isAnnotationPresent(Ignored.class)) {
-                    boolean canAccess = field.canAccess(obj);
-                    boolean asString = field.isAnnotationPresent(SerialiseAsString.class);
-                    field.setAccessible(true);
-                    attributes.add(new Attribute(field.getName(), field.get(obj), asString));
-                    field.setAccessible(canAccess);
-                }
+    protected static void appendBase64(byte[] bytes, StringBuilder sb){
+        sb.ensureCapacity(sb.length() + (bytes.length + 2) / 3 * 4 + 2);
+        sb.append('"');
+        int i = 0;
+        for(; i + 2 < bytes.length; i += 3){
+            int b = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            sb.append(BASE64[b >>> 18]).append(BASE64[(b >>> 12) & 0x3F])
+                    .append(BASE64[(b >>> 6) & 0x3F]).append(BASE64[b & 0x3F]);
+        }
+        int remaining = bytes.length - i;
+        if(remaining == 1){
+            int b = (bytes[i] & 0xFF) << 16;
+            sb.append(BASE64[b >>> 18]).append(BASE64[(b >>> 12) & 0x3F]).append("==");
+        }else if(remaining == 2){
+            int b = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8;
+            sb.append(BASE64[b >>> 18]).append(BASE64[(b >>> 12) & 0x3F]).append(BASE64[(b >>> 6) & 0x3F]).append('=');
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Encodes a sequence of characters in UTF-8 straight into a byte buffer, starting at its position, without
+     * allocating. Unpaired surrogates are encoded as '?', as {@link String#getBytes(java.nio.charset.Charset)} does.
+     * @param chars the characters to encode.
+     * @param out byte buffer to write into, whose position is moved past the bytes written.
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough remaining bytes, in which case nothing
+     * is written.
+     */
+    static int encodeUTF8(CharSequence chars, ByteBuffer out){
+        int length = chars.length();
+        int size = length;
+        for(int i = 0; i < length; i++){
+            char c = chars.charAt(i);
+            if(c < 0x80) continue;
+            if(c < 0x800) size++;
+            else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))){
+                size += 2;
+                i++;
+            }else if(!Character.isSurrogate(c)) size += 2;
+        }
+        if(size > out.remaining()) throw new BufferOverflowException();
+
+        for(int i = 0; i < length; i++){
+            char c = chars.charAt(i);
+            if(c < 0x80){
+                out.put((byte) c);
+            }else if(c < 0x800){
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | (c & 0x3F)));
+            }else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))){
+                int cp = Character.toCodePoint(c, chars.charAt(++i));
+                out.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | ((cp >> 12) & 0x3F)))
+                        .put((byte) (0x80 | ((cp >> 6) & 0x3F))).put((byte) (0x80 | (cp & 0x3F)));
+            }else if(Character.isSurrogate(c)){
+                out.put((byte) '?');
+            }else{
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | ((c >> 6) & 0x3F))).put((byte) (0x80 | (c & 0x3F)));
             }
-            return attributes;
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-            throw new RuntimeException("An error occurred.");
         }
+        return size;
     }
 }
@@ -0,0 +1,1005 @@
+package com.friska.kompakt;
+
+import com.friska.kompakt.exceptions.CircularReferenceException;
+
+import java.lang.reflect.Array;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes a single {@link JSONSerialisable} into a JSON string. A writer appends the whole tree of values into one
+ * string builder without recursion: every object, array, collection and map that is currently being written is held
+ * by a frame on an explicit stack, and frames are reused from one nesting level to another. The stack is bounded by
+ * the maximum depth set through {@link JSONSerialisable#setMaxDepth(int)}, hence deeply nested data never causes a
+ * {@link StackOverflowError}.<p>
+ * The stack also tells which containers are ancestors of the value being written, such that circular references are
+ * found as soon as they occur. What happens to a circular reference is decided by the {@link CyclePolicy} set through
+ * {@link JSONSerialisable#setCyclePolicy(CyclePolicy)}. Serialisable objects whose fields can never hold another
+ * container, such as classes with only primitive, string or enum fields, are never looked up as ancestors.<p>
+ * Arrays and collections holding at least as many elements as the threshold set through
+ * {@link JSONSerialisable#setParallelThreshold(int)} are split into chunks written in parallel on the common
+ * {@link ForkJoinPool}, each by its own writer holding a copy of the stack of ancestors, and the chunks are then joined
+ * in order. The resulting string is identical to the one written sequentially.<p>
+ * Below a {@link JSONObject} whose changes are tracked, every JSON object and array written keeps its JSON string as an
+ * {@link Encoding}, built from the JSON strings of its children as they are closed, and objects and arrays that still
+ * hold a fitting encoding when written again are copied from it instead.
+ */
+final class JSONWriter {
+
+    /**
+     * Depth of the stack above which ancestors are looked up through an identity hash map instead of a linear scan.
+     */
+    private static final int LINEAR_DEPTH = 16;
+
+    /**
+     * The least number of elements written by a single parallel chunk.
+     */
+    private static final int MIN_CHUNK = 1024;
+
+    private static final int FIELDS = 0, ATTRIBUTES = 1, ARRAY = 2, ITERABLE = 3, MAP = 4, OBJECT = 5;
+
+    /**
+     * The string builder written into, taken from the {@link BufferPool} by the root writer, and allocated by chunks.
+     */
+    private StringBuilder sb;
+
+    private final WriterConfig config;
+
+    private final CyclePolicy policy;
+
+    /**
+     * Whether the keys of each frame are kept, which is only needed to write JSON pointers.
+     */
+    private final boolean trackPath;
+
+    private final int parallelThreshold;
+
+    private final int maxDepth;
+
+    private final int indentSize;
+
+    private final boolean includeNulls;
+
+    private final boolean asciiOnly;
+
+    /**
+     * Line break and colon written between tokens, both without whitespace if compact.
+     */
+    private final String newline, colon;
+
+    private final int keyStyle;
+
+    private Frame[] frames = new Frame[LINEAR_DEPTH];
+
+    private int depth;
+
+    /**
+     * Number of frames at the bottom of the stack that are copied from the writer this writer is a chunk of.
+     */
+    private final int base;
+
+    private IdentityHashMap<Object, Integer> depths;
+
+    /**
+     * Whether cached JSON strings are copied, which is false for writers serialising a JSON string to cache.
+     */
+    private boolean splice = true;
+
+    /**
+     * The name or index of the value currently being written, only kept if {@link JSONWriter#trackPath}.
+     */
+    private Object key;
+
+    //The next value to write, as yielded by the frame on top of the stack
+    private Object item;
+    private int itemSize;
+    private boolean itemIndented;
+    private boolean itemAsString;
+
+    /**
+     * Whether this writer is a parallel chunk that is no longer needed, after which it stops writing.
+     */
+    private volatile boolean cancelled;
+
+    JSONWriter(WriterConfig config) {
+        this.config = config;
+        this.policy = config.getCyclePolicy();
+        this.trackPath = policy == CyclePolicy.REFERENCE;
+        this.parallelThreshold = config.getParallelThreshold();
+        this.maxDepth = config.getMaxDepth();
+        this.indentSize = config.getIndentSize();
+        this.includeNulls = config.isIncludeNulls();
+        this.asciiOnly = config.isAsciiOnly();
+        this.newline = config.isCompact() ? "" : "\n";
+        this.colon = config.isCompact() ? ":" : ": ";
+        this.keyStyle = config.keyStyle;
+        this.base = 0;
+    }
+
+    /**
+     * Creates a writer for a parallel chunk of the array on top of the stack of another writer, starting with the same
+     * ancestors.
+     */
+    private JSONWriter(JSONWriter parent, int from, int to) {
+        this.config = parent.config;
+        this.policy = parent.policy;
+        this.trackPath = parent.trackPath;
+        this.parallelThreshold = parent.parallelThreshold;
+        this.maxDepth = parent.maxDepth;
+        this.indentSize = parent.indentSize;
+        this.includeNulls = parent.includeNulls;
+        this.asciiOnly = parent.asciiOnly;
+        this.newline = parent.newline;
+        this.colon = parent.colon;
+        this.keyStyle = parent.keyStyle;
+        this.sb = new StringBuilder();
+        this.splice = parent.splice;
+        this.base = parent.depth - 1;
+        this.frames = new Frame[parent.frames.length];
+        for (int i = 0; i < base; i++) {
+            frames[i] = new Frame();
+            frames[i].container = parent.frames[i].container;
+            frames[i].key = parent.frames[i].key;
+        }
+        this.depth = base;
+        this.depths = parent.depths == null ? null : new IdentityHashMap<>(parent.depths);
+
+        Frame array = parent.frames[base];
+        this.key = array.key;
+        Frame chunk = push(ARRAY, array.container, array.currSize);
+        chunk.elements = array.elements;
+        chunk.index = from;
+        chunk.end = to;
+        chunk.chunk = true;
+    }
+
+    /**
+     * Serialises an object into a JSON string.
+     *
+     * @param obj      the object to serialise.
+     * @param currSize current size of the indentation.
+     * @param omitted  names of omitted field variables, or null.
+     * @return the JSON string.
+     */
+    String write(JSONSerialisable obj, int currSize, String[] omitted) {
+        FragmentCache.Fragment fragment = rootFragment(obj, currSize, omitted);
+        if (fragment != null) return fragment.json;
+        try {
+            return writeAll(obj, currSize, omitted).toString();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Serialises an object, writing the JSON string into a byte buffer encoded in UTF-8, starting at its position.
+     *
+     * @param obj     the object to serialise.
+     * @param omitted names of omitted field variables, or null.
+     * @param out     the byte buffer to write into.
+     * @return the number of bytes written.
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough remaining bytes, in which case nothing
+     *                                          is written.
+     */
+    int write(JSONSerialisable obj, String[] omitted, ByteBuffer out) {
+        FragmentCache.Fragment fragment = rootFragment(obj, 0, omitted);
+        if (fragment != null) {
+            byte[] bytes = fragment.utf8();
+            if (out.remaining() < bytes.length) throw new BufferOverflowException();
+            out.put(bytes);
+            return bytes.length;
+        }
+        try {
+            return JSONUtils.encodeUTF8(writeAll(obj, 0, omitted), out);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Serialises a JSON array on its own, rather than as the value of an object.
+     *
+     * @param array the array to serialise.
+     * @return the JSON string.
+     */
+    String write(JSONArray array) {
+        try {
+            sb = BufferPool.acquire(array.size() * 8);
+            writeValue(-indentSize, array, false, false);
+            run();
+            return sb.toString();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Writes a whole object into a pooled string builder, with its initial capacity fitting the typical length of
+     * JSON strings written with its class at their root.
+     */
+    private StringBuilder writeAll(JSONSerialisable obj, int currSize, String[] omitted) {
+        ClassPlan plan = ClassPlan.of(obj.getClass());
+        sb = BufferPool.acquire(plan.sizeHint());
+        indent(currSize);
+        if (!Arrays.equals(omitted, obj.ignoredFields()) || !spliceEncoding(obj, currSize))
+            openObject(obj, currSize, omitted);
+        run();
+        plan.recordSize(sb.length());
+        return sb;
+    }
+
+    /**
+     * Serialises an object, appending the JSON string to a string builder owned by the caller. Unlike the other write
+     * methods, this may be called any number of times on the same writer. If serialising fails, the writer is reset so
+     * that it may still be used, but whatever was appended before the failure is left in the string builder.
+     *
+     * @param obj      the object to serialise.
+     * @param currSize current size of the indentation.
+     * @param out      the string builder to append to.
+     */
+    void append(JSONSerialisable obj, int currSize, StringBuilder out) {
+        sb = out;
+        try {
+            indent(currSize);
+            if (!spliceEncoding(obj, currSize)) openObject(obj, currSize, obj.ignoredFields());
+            run();
+        } finally {
+            sb = null;
+            if (depth != 0) {
+                cancelForks();
+                while (depth > 0) frames[--depth].clear();
+                depths = null;
+            }
+        }
+    }
+
+    private void release() {
+        cancelForks();
+        if (sb != null) BufferPool.release(sb);
+        sb = null;
+    }
+
+    /**
+     * Cancels the chunks forked by the frames left open on the stack after a failure, which would otherwise keep being
+     * written for nothing.
+     */
+    private void cancelForks() {
+        for (int i = base; i < depth; i++) {
+            Frame frame = frames[i];
+            if (frame.tasks == null) continue;
+            for (JSONWriter chunk : frame.chunks) chunk.cancelled = true;
+            for (ForkJoinTask<StringBuilder> task : frame.tasks) task.cancel(true);
+            frame.tasks = null;
+            frame.chunks = null;
+        }
+    }
+
+    /**
+     * Writes a parallel chunk, cancelling the chunks it forked itself if it fails.
+     */
+    private StringBuilder runChunk() {
+        try {
+            return run();
+        } catch (RuntimeException | Error e) {
+            cancelForks();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes values until every frame above the base of the stack is closed.
+     */
+    private StringBuilder run() {
+        while (depth > base) {
+            if (cancelled) throw new CancellationException();
+            Frame frame = frames[depth - 1];
+            if (advance(frame)) writeValue(itemSize, item, itemIndented, itemAsString);
+            else pop(frame);
+        }
+        return sb;
+    }
+
+    /**
+     * Helper method to serialise a single value, which is either the value to field or another serialisable object.
+     * Values that are containers are opened as a new frame on the stack, and written by {@link JSONWriter#run()}.
+     *
+     * @param currSize current size of the indentation.
+     * @param item     the item to serialise.
+     */
+    private void writeValue(int currSize, Object item, boolean indentAlways, boolean asString) {
+        this.item = null;
+        if (depth > base) {
+            Frame holder = frames[depth - 1];
+            if (holder.owner != null && (asString || !Encoding.isTracked(item, holder.owner))) holder.encodable = false;
+        }
+
+        if (item instanceof JSONSerialisable s) {
+            if (indentAlways) indent(currSize + indentSize);
+            if (!spliceCached(s, currSize + indentSize) && !spliceEncoding(s, currSize + indentSize))
+                openObject(s, currSize + indentSize, s.ignoredFields());
+        }
+
+        else if (item == null)
+            handle(currSize, indentAlways, "null");
+        else if (asString)
+            handleString(currSize, indentAlways, item.toString());
+        else if (item instanceof RawJSON raw) {
+            if (indentAlways) indent(currSize + indentSize);
+            raw.appendTo(sb);
+        } else if (item instanceof Number || item instanceof Boolean)
+            handle(currSize, indentAlways, item.toString());
+        else if (item instanceof Object[] array)
+            openArray(currSize, array, indentAlways);
+        else if (item instanceof JSONArray array) {
+            if (fittingEncoding(array, currSize) == null) openJSONArray(currSize, array, indentAlways);
+            else {
+                if (indentAlways) indent(currSize + indentSize);
+                spliceEncoding(array, currSize);
+            }
+        }
+        else if (item.getClass().isArray())
+            handlePrimitiveArray(currSize, item, Array.getLength(item), indentAlways);
+        else if (item instanceof Iterable<?> iterable)
+            openIterable(currSize, iterable, indentAlways);
+        else if (item instanceof Map<?, ?> map)
+            openMap(currSize, map, indentAlways);
+        else
+            handleString(currSize, indentAlways, item.toString());
+    }
+
+    /**
+     * Copies the cached JSON string of an object that is frozen, or whose class is annotated with
+     * {@link com.friska.kompakt.annotations.CacheSerialised}, written at the current indentation. The indentation
+     * before its first line is left out, as it is written by the caller where needed.
+     *
+     * @return whether the object was written, or false if it is not cached.
+     */
+    private boolean spliceCached(JSONSerialisable obj, int currSize) {
+        FragmentCache.Fragment fragment = fragmentOf(obj, currSize);
+        if (fragment == null) return false;
+        sb.append(fragment.json, fragment.currSize, fragment.json.length());
+        return true;
+    }
+
+    /**
+     * Returns the cached JSON string of an object that is frozen, or whose class is annotated with
+     * {@link com.friska.kompakt.annotations.CacheSerialised}, serialising it by a writer of its own at an indentation
+     * and caching it first if it is not cached yet. Compact JSON strings are the same at every indentation, so they
+     * are cached once. Cached objects found while serialising a JSON string to cache are written as usual, such that
+     * an object holding one of its ancestors never causes the cache to be filled recursively.
+     *
+     * @return the cached JSON string, or null if the object is not cached.
+     */
+    private FragmentCache.Fragment fragmentOf(JSONSerialisable obj, int currSize) {
+        if (trackPath || !splice) return null;
+        JSONObject frozen = obj instanceof JSONObject object && object.isFrozen() ? object : null;
+        if (frozen == null && !ClassPlan.of(obj.getClass()).cacheSerialised) return null;
+        if (newline.isEmpty()) currSize = 0;
+        FragmentCache.Fragment fragment = frozen != null ? frozen.fragment(config, currSize)
+                : FragmentCache.get(obj, config, currSize);
+        if (fragment != null) return fragment;
+        JSONWriter writer = new JSONWriter(config);
+        writer.splice = false;
+        String json = writer.write(obj, currSize, obj.ignoredFields());
+        return frozen != null ? frozen.cache(config, currSize, json) : FragmentCache.put(obj, config, currSize, json);
+    }
+
+    /**
+     * Copies the encoding of an object or array whose changes are tracked, if it was written with the same
+     * configuration at the same indentation and has not changed since.
+     *
+     * @param currSize the size of the indentation the object or array would be opened with.
+     * @return whether the object or array was written, or false if it has no fitting encoding.
+     */
+    private boolean spliceEncoding(Object container, int currSize) {
+        Encoding encoding = fittingEncoding(container, currSize);
+        if (encoding == null) return false;
+        Frame holder = depth > base ? frames[depth - 1] : null;
+        if (holder != null && holder.owner != null) holder.parts.add(new Encoding.Part(sb.length(), encoding));
+        encoding.appendTo(sb);
+        return true;
+    }
+
+    private Encoding fittingEncoding(Object container, int currSize) {
+        Encoding encoding = Encoding.of(container);
+        return encoding == null || trackPath || !encoding.fits(config, currSize) ? null : encoding;
+    }
+
+    /**
+     * Keeps the encoding of an object or array whose frame is closed if every value it holds may be part of it, and
+     * adds it to the encoding of its holder, or otherwise tells the holder that it cannot be encoded either.
+     */
+    private void encode(Frame frame) {
+        Frame holder = depth - 1 > base ? frames[depth - 2] : null;
+        if (frame.encodable && frame.tasks == null) {
+            Encoding encoding = Encoding.of(config, frame.currSize, sb, frame.mark, frame.parts);
+            Encoding.set(frame.owner, encoding);
+            if (holder != null && holder.owner != null) holder.parts.add(new Encoding.Part(frame.mark, encoding));
+        } else if (holder != null) {
+            holder.encodable = false;
+        }
+    }
+
+    /**
+     * Prepares a frame writing an object or array to keep its encoding, if it is written below an object whose changes
+     * are tracked.
+     *
+     * @param mark the index of the opening brace or bracket.
+     */
+    private void own(Frame frame, Object owner, int mark) {
+        if (!frame.track) return;
+        frame.owner = owner;
+        frame.encodable = true;
+        frame.mark = mark;
+        if (frame.parts == null) frame.parts = new ArrayList<>();
+    }
+
+    /**
+     * @return the cached JSON string of a frozen object written at the root without any other omitted fields, or null
+     * if it is written as usual.
+     */
+    private FragmentCache.Fragment rootFragment(JSONSerialisable obj, int currSize, String[] omitted) {
+        if (currSize != 0 || !(obj instanceof JSONObject object) || !object.isFrozen()) return null;
+        return Arrays.equals(omitted, obj.ignoredFields()) ? fragmentOf(obj, 0) : null;
+    }
+
+    /**
+     * Opens a serialisable object, replacing it according to the cycle policy if it is one of its own ancestors. The
+     * opening brace is indented by the caller, unless it follows the name of a member.
+     */
+    private void openObject(JSONSerialisable obj, int currSize, String[] omitted) {
+        ClassPlan plan = ClassPlan.of(obj.getClass());
+        boolean deep = obj.deepSerialise();
+        boolean leaf = plan.isLeaf(deep);
+        if (!leaf && isCircular(obj, currSize, false)) return;
+
+        //Attributes of a JSON object are read straight from its arrays, unless a subclass may override them
+        int kind = obj.getClass() == JSONObject.class ? OBJECT : plan.customAttributes ? ATTRIBUTES : FIELDS;
+        int mark = sb.length();
+        Frame frame = push(kind, leaf ? null : obj, currSize);
+        if (kind == OBJECT) {
+            JSONObject object = (JSONObject) obj;
+            frame.omitted = plan.omitted(omitted);
+            frame.obj = obj;
+            frame.end = object.end();
+            if (object.isTrackingChanges()) frame.track = !trackPath;
+            if (Arrays.equals(omitted, obj.ignoredFields())) own(frame, obj, mark);
+        } else if (kind == ATTRIBUTES) {
+            frame.omitted = plan.omitted(omitted);
+            List<Attribute> attributes = obj.jsonAttributes();
+            if (deep) {
+                attributes = new ArrayList<>(attributes);
+                plan.addInheritedAttributes(obj, attributes);
+            }
+            frame.attributes = attributes;
+        } else {
+            frame.obj = obj;
+            frame.fields = plan.fields(deep, omitted);
+        }
+        sb.append("{").append(newline);
+    }
+
+    private void openArray(int currSize, Object[] array, boolean indentAlways) {
+        if (isCircular(array, currSize, indentAlways)) return;
+        if (indentAlways) indent(currSize + indentSize);
+        sb.append("[").append(newline);
+        Frame frame = push(ARRAY, array, currSize);
+        frame.elements = array;
+        frame.end = array.length;
+        fork(frame);
+    }
+
+    /**
+     * Opens a JSON array straight from the array holding its elements, or writes it at once if it is specialised for
+     * numbers.
+     */
+    private void openJSONArray(int currSize, JSONArray array, boolean indentAlways) {
+        Object[] elements = array.elements();
+        if (elements == null) {
+            handlePrimitiveArray(currSize, array.primitives(), array.size(), indentAlways);
+            return;
+        }
+        if (isCircular(array, currSize, indentAlways)) return;
+        if (indentAlways) indent(currSize + indentSize);
+        int mark = sb.length();
+        sb.append("[").append(newline);
+        Frame frame = push(ARRAY, array, currSize);
+        own(frame, array, mark);
+        frame.elements = elements;
+        frame.end = array.size();
+        fork(frame);
+    }
+
+    private void openIterable(int currSize, Iterable<?> iterable, boolean indentAlways) {
+        if (isCircular(iterable, currSize, indentAlways)) return;
+        if (indentAlways) indent(currSize + indentSize);
+        sb.append("[").append(newline);
+        if (iterable instanceof Collection<?> collection && collection.size() >= parallelThreshold) {
+            Frame frame = push(ARRAY, iterable, currSize);
+            frame.elements = collection.toArray();
+            frame.end = frame.elements.length;
+            fork(frame);
+        } else {
+            push(ITERABLE, iterable, currSize).iterator = iterable.iterator();
+        }
+    }
+
+    /**
+     * Opens a map as a JSON object, writing each entry straight from the entry set of the map. Keys that are not
+     * strings are serialised by their string representation.
+     */
+    private void openMap(int currSize, Map<?, ?> map, boolean indentAlways) {
+        if (isCircular(map, currSize, indentAlways)) return;
+        if (indentAlways) indent(currSize + indentSize);
+        sb.append("{").append(newline);
+        Frame frame = push(MAP, map, currSize);
+        if (!config.isSortMapKeys() || isSortedByKey(map)) {
+            frame.iterator = map.entrySet().iterator();
+        } else {
+            Map.Entry<?, ?>[] entries = map.entrySet().toArray(new Map.Entry<?, ?>[0]);
+            Arrays.sort(entries, Comparator.comparing(e -> keyOf(e.getKey())));
+            frame.elements = entries;
+            frame.end = entries.length;
+        }
+    }
+
+    /**
+     * Splits the elements of an array frame across parallel chunks if there are at least as many as the parallel
+     * threshold. Every chunk but the first is forked, and the first is left to be written by this writer while the
+     * others are being written.
+     */
+    private void fork(Frame frame) {
+        int length = frame.end;
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int chunks = Math.min(parallelism * 4, (length + MIN_CHUNK - 1) / MIN_CHUNK);
+        if (length < parallelThreshold || parallelism < 2 || chunks < 2) return;
+
+        int size = (length + chunks - 1) / chunks;
+        frame.tasks = new ArrayList<>(chunks);
+        frame.chunks = new ArrayList<>(chunks);
+        for (int from = size; from < length; from += size) {
+            JSONWriter chunk = new JSONWriter(this, from, Math.min(from + size, length));
+            frame.chunks.add(chunk);
+            frame.tasks.add(ForkJoinTask.adapt(chunk::runChunk).fork());
+        }
+        frame.end = size;
+    }
+
+    /**
+     * Writes everything up to the next value of a frame, and yields the value.
+     *
+     * @return whether a value was yielded, or false if the frame has no more values.
+     */
+    private boolean advance(Frame frame) {
+        switch (frame.kind) {
+            case FIELDS -> {
+                return nextField(frame);
+            }
+            case ATTRIBUTES -> {
+                while (frame.index < frame.attributes.size()) {
+                    Attribute attribute = frame.attributes.get(frame.index++);
+                    String name = attribute.name();
+                    if (frame.omitted.contains(name) || (attribute.val() == null && !includeNulls)) continue;
+                    nextMember(frame);
+                    wrap(name, sb).append(colon);
+                    if (trackPath) key = name;
+                    emit(frame.currSize, attribute.val(), false, attribute.serialiseAsString());
+                    return true;
+                }
+                return false;
+            }
+            case OBJECT -> {
+                JSONObject object = (JSONObject) frame.obj;
+                while (frame.index < frame.end) {
+                    int index = frame.index++;
+                    String name = object.nameAt(index);
+                    if (name == null || frame.omitted.contains(name)) continue;
+                    if (object.isPrimitive(index)) {
+                        nextMember(frame);
+                        object.appendPrimitive(index, wrap(name, sb).append(colon));
+                        continue;
+                    }
+                    Object val = object.valueAt(index);
+                    if (val == null && !includeNulls) continue;
+                    nextMember(frame);
+                    wrap(name, sb).append(colon);
+                    if (trackPath) key = name;
+                    emit(frame.currSize, val, false, false);
+                    return true;
+                }
+                return false;
+            }
+            case ARRAY -> {
+                if (frame.index >= frame.end) return false;
+                int index = frame.index++;
+                nextElement(frame, index, frame.elements[index]);
+                return true;
+            }
+            case ITERABLE -> {
+                if (!frame.iterator.hasNext()) return false;
+                nextElement(frame, frame.index++, frame.iterator.next());
+                return true;
+            }
+            default -> {
+                Map.Entry<?, ?> entry;
+                do {
+                    if (frame.elements != null) {
+                        if (frame.index >= frame.end) return false;
+                        entry = (Map.Entry<?, ?>) frame.elements[frame.index++];
+                    } else {
+                        if (!frame.iterator.hasNext()) return false;
+                        entry = (Map.Entry<?, ?>) frame.iterator.next();
+                    }
+                } while (entry.getValue() == null && !includeNulls);
+                if (frame.count++ != 0) sb.append(',').append(newline);
+                indent(frame.currSize + 2 * indentSize);
+                String name = keyOf(entry.getKey());
+                wrap(name, sb).append(colon);
+                if (trackPath) key = name;
+                emit(frame.currSize + indentSize, entry.getValue(), false, false);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reads the fields straight from the cached plans, walking up the class hierarchy if deep serialising. Primitive
+     * fields are written directly, and the first field holding any other value is yielded.
+     */
+    private boolean nextField(Frame frame) {
+        while (true) {
+            if (frame.index == frame.fields.length) return false;
+            ClassPlan.FieldPlan field = frame.fields[frame.index++];
+            if (field.primitive) {
+                nextMember(frame);
+                field.appendPrimitive(frame.obj, sb.append(field.key(keyStyle)));
+                continue;
+            }
+            Object val = field.get(frame.obj);
+            if (val == null && !includeNulls) continue;
+            nextMember(frame);
+            sb.append(field.key(keyStyle));
+            if (field.asBase64 && val instanceof byte[] bytes) {
+                JSONUtils.appendBase64(bytes, sb);
+                continue;
+            }
+            if (trackPath) key = field.name;
+            emit(frame.currSize, val, false, field.asString);
+            return true;
+        }
+    }
+
+    /**
+     * Separates a member of an object from the previous one, and indents it.
+     */
+    private void nextMember(Frame frame) {
+        if (frame.count++ != 0) sb.append(',').append(newline);
+        indent(frame.currSize + indentSize);
+    }
+
+    /**
+     * Separates the element at the given index of an array or collection from the previous one, and yields it.
+     */
+    private void nextElement(Frame frame, int index, Object element) {
+        if (index != 0) sb.append(',').append(newline);
+        frame.count++;
+        if (trackPath) key = index;
+        emit(frame.currSize + indentSize, element, true, false);
+    }
+
+    private void emit(int currSize, Object item, boolean indentAlways, boolean asString) {
+        this.item = item;
+        this.itemSize = currSize;
+        this.itemIndented = indentAlways;
+        this.itemAsString = asString;
+    }
+
+    /**
+     * Writes the end of a frame.
+     */
+    private void close(Frame frame) {
+        switch (frame.kind) {
+            case FIELDS, ATTRIBUTES, OBJECT -> {
+                if (frame.count != 0) sb.append(newline);
+                indent(frame.currSize);
+                sb.append("}");
+            }
+            case ARRAY, ITERABLE -> {
+                if (frame.tasks != null) {
+                    for (ForkJoinTask<StringBuilder> task : frame.tasks) sb.append(task.join());
+                }
+                if (frame.chunk) return;
+                if (frame.count != 0) sb.append(newline);
+                indent(frame.currSize + indentSize);
+                sb.append("]");
+            }
+            default -> {
+                if (frame.count != 0) sb.append(newline);
+                indent(frame.currSize + indentSize);
+                sb.append("}");
+            }
+        }
+    }
+
+    /**
+     * Serialises the first elements of an array of a primitive type, appending each element straight to the string
+     * builder without boxing.
+     *
+     * @param length the number of elements to write.
+     */
+    private void handlePrimitiveArray(int currSize, Object item, int length, boolean indentAlways) {
+        if (indentAlways) indent(currSize + indentSize);
+        sb.append("[").append(newline);
+        switch (item) {
+            case int[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case long[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case double[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case float[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case short[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case byte[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case boolean[] array -> {
+                for (int i = 0; i < length; i++) nextPrimitive(currSize, i).append(array[i]);
+            }
+            case char[] array -> {
+                for (int i = 0; i < length; i++) wrap(String.valueOf(array[i]), nextPrimitive(currSize, i));
+            }
+            default -> throw new IllegalArgumentException("Not a primitive array: " + item.getClass().getName());
+        }
+        if (length != 0) sb.append(newline);
+        indent(currSize + indentSize);
+        sb.append("]");
+    }
+
+    /**
+     * Separates the element of a primitive array at the given index from the previous one, and indents it.
+     */
+    private StringBuilder nextPrimitive(int currSize, int index) {
+        if (index != 0) sb.append(',').append(newline);
+        indent(currSize + 2 * indentSize);
+        return sb;
+    }
+
+    private static String keyOf(Object key) {
+        return key instanceof String s ? s : String.valueOf(key);
+    }
+
+    /**
+     * @return whether iterating a map already yields its entries in the order of their string keys.
+     */
+    private static boolean isSortedByKey(Map<?, ?> map) {
+        if (!(map instanceof SortedMap<?, ?> sorted) || sorted.comparator() != null) return false;
+        return sorted.isEmpty() || sorted.firstKey() instanceof String;
+    }
+
+    /**
+     * Checks whether a container is one of its own ancestors, in which case it is replaced according to the cycle
+     * policy.
+     *
+     * @return whether the container is circular, in which case it must not be written.
+     * @throws CircularReferenceException if the container is one of its own ancestors under {@link CyclePolicy#FAIL}.
+     */
+    private boolean isCircular(Object container, int currSize, boolean indentAlways) {
+        int found = depthOf(container);
+        if (found < 0) return false;
+        if (depth > base) frames[depth - 1].encodable = false;
+        switch (policy) {
+            case NULL -> handle(currSize, indentAlways, "null");
+            case REFERENCE -> {
+                StringBuilder pointer = new StringBuilder("#");
+                for (int i = 1; i <= found; i++) {
+                    pointer.append('/');
+                    String segment = String.valueOf(frames[i].key);
+                    for (int j = 0; j < segment.length(); j++) {
+                        char c = segment.charAt(j);
+                        if (c == '~') pointer.append("~0");
+                        else if (c == '/') pointer.append("~1");
+                        else pointer.append(c);
+                    }
+                }
+                if (indentAlways) indent(currSize + indentSize);
+                wrap(pointer.toString(), sb.append("{\"$ref\"").append(colon)).append("}");
+            }
+            default -> throw new CircularReferenceException("An instance of " + container.getClass().getName()
+                    + " contains itself, set a different CyclePolicy to serialise it regardless.");
+        }
+        return true;
+    }
+
+    private int depthOf(Object container) {
+        if (depths != null) {
+            Integer found = depths.get(container);
+            return found == null ? -1 : found;
+        }
+        for (int i = depth - 1; i >= 0; i--) {
+            if (frames[i].container == container) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Pushes a new frame onto the stack, reusing the frame previously held at the same depth.
+     *
+     * @param container the container written by the frame if it should be tracked as an ancestor, or null.
+     */
+    private Frame push(int kind, Object container, int currSize) {
+        if (depth == maxDepth)
+            throw new IllegalArgumentException("Unable to serialise objects nested deeper than " + maxDepth
+                    + " levels, see JSONSerialisable#setMaxDepth(int).");
+        if (depth == frames.length) frames = Arrays.copyOf(frames, depth * 2);
+        Frame frame = frames[depth];
+        if (frame == null) frame = frames[depth] = new Frame();
+        frame.kind = kind;
+        frame.container = container;
+        frame.key = trackPath ? key : null;
+        frame.currSize = currSize;
+        frame.index = 0;
+        frame.count = 0;
+        frame.track = depth > base && frames[depth - 1].track;
+
+        if (depths != null) {
+            if (container != null) depths.put(container, depth);
+        } else if (depth == LINEAR_DEPTH) {
+            depths = new IdentityHashMap<>();
+            for (int i = 0; i <= depth; i++) {
+                if (frames[i].container != null) depths.put(frames[i].container, i);
+            }
+        }
+        depth++;
+        return frame;
+    }
+
+    private void pop(Frame frame) {
+        close(frame);
+        if (frame.owner != null) encode(frame);
+        if (depths != null && frame.container != null) depths.remove(frame.container);
+        frame.clear();
+        depth--;
+    }
+
+    private void handle(int currSize, boolean indentAlways, String str) {
+        if (indentAlways) indent(currSize + indentSize);
+        sb.append(str);
+    }
+
+    private void indent(int size) {
+        config.indent(sb, size);
+    }
+
+    private void handleString(int currSize, boolean indentAlways, String str) {
+        if (indentAlways) indent(currSize + indentSize);
+        wrap(str, sb);
+    }
+
+    /**
+     * Appends a string sanitised and wrapped in string laterals.
+     */
+    private StringBuilder wrap(String str, StringBuilder sb) {
+        sb.append('"');
+        JSONUtils.appendSanitised(str, sb, asciiOnly);
+        return sb.append('"');
+    }
+
+    /**
+     * An object, array, collection or map being written, along with how far it has been written.
+     */
+    private static final class Frame {
+
+        int kind;
+
+        /**
+         * The container if it is tracked as an ancestor, otherwise null.
+         */
+        Object container;
+
+        /**
+         * The name or index at which the container is found in its parent, only kept if
+         * {@link JSONWriter#trackPath}.
+         */
+        Object key;
+
+        int currSize;
+
+        /**
+         * Index of the next field, attribute, element or entry.
+         */
+        int index;
+
+        /**
+         * Number of values written so far.
+         */
+        int count;
+
+        JSONSerialisable obj;
+
+        ClassPlan.FieldPlan[] fields;
+
+        Set<String> omitted;
+
+        List<Attribute> attributes;
+
+        Object[] elements;
+
+        int end;
+
+        Iterator<?> iterator;
+
+        /**
+         * Whether the frame is a parallel chunk of an array, which is not opened nor closed by itself.
+         */
+        boolean chunk;
+
+        List<ForkJoinTask<StringBuilder>> tasks;
+
+        /**
+         * Writers of the forked chunks, in the same order as their tasks.
+         */
+        List<JSONWriter> chunks;
+
+        /**
+         * Whether the objects and arrays written by this frame keep their encodings, which is the case below an object
+         * whose changes are tracked.
+         */
+        boolean track;
+
+        /**
+         * The object or array written by this frame whose encoding is kept, otherwise null.
+         */
+        Object owner;
+
+        /**
+         * Whether every value written so far may be part of the encoding of the owner.
+         */
+        boolean encodable;
+
+        /**
+         * Index of the opening brace or bracket of the owner.
+         */
+        int mark;
+
+        /**
+         * Encodings of the children of the owner copied into its JSON string so far.
+         */
+        List<Encoding.Part> parts;
+
+        void clear() {
+            container = key = null;
+            obj = null;
+            fields = null;
+            omitted = null;
+            attributes = null;
+            elements = null;
+            iterator = null;
+            chunk = false;
+            tasks = null;
+            chunks = null;
+            owner = null;
+            encodable = false;
+            if (parts != null) parts.clear();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A codec is a statically generated serialiser and deserialiser of a single class implementing
+ * {@link JSONSerialisable}. Codecs are generated at compile time by the {@code kompakt-processor} annotation processor
+ * and registered through {@link java.util.ServiceLoader}, under the service name of this interface. When a codec is
+ * registered for a class, Kompakt reads and writes the fields of the class through the codec instead of reflection,
+ * so that serialisation costs the same from the very first call. Classes without a codec are handled through
+ * reflection as usual.<p>
+ * A codec only covers the fields declared in its class, in declaration order, excluding static fields and fields
+ * annotated with {@link com.friska.kompakt.annotations.Ignored}.
+ *
+ * @param <T> the class handled by this codec.
+ */
+public interface KompaktCodec<T> {
+
+    /**
+     * @return the class handled by this codec.
+     */
+    @NotNull Class<T> type();
+
+    /**
+     * @return the names of every serialised field, in declaration order.
+     */
+    @NotNull String[] fieldNames();
+
+    /**
+     * @param index index of a field in {@link KompaktCodec#fieldNames()}.
+     * @return whether the field at the given index is annotated with
+     * {@link com.friska.kompakt.annotations.SerialiseAsString}.
+     */
+    boolean serialiseAsString(int index);
+
+    /**
+     * @param index index of a field in {@link KompaktCodec#fieldNames()}.
+     * @return whether the field at the given index is annotated with
+     * {@link com.friska.kompakt.annotations.SerialiseAsBase64}.
+     */
+    default boolean serialiseAsBase64(int index) {
+        return false;
+    }
+
+    /**
+     * Reads a field from an object.
+     *
+     * @param obj   the object to read from.
+     * @param index index of the field in {@link KompaktCodec#fieldNames()}.
+     * @return the value of the field.
+     */
+    Object read(@NotNull T obj, int index);
+
+    /**
+     * Creates an instance of the handled class from a JSON object.
+     *
+     * @param object a JSON object holding the attributes of the instance.
+     * @return a new instance.
+     */
+    @NotNull T deserialise(@NotNull JSONObject object);
+
+    /**
+     * Helper method for generated codecs, fetching an attribute from a JSON object and converting it to the type of a
+     * field. Absent attributes are converted the same way as null values.
+     *
+     * @param object the JSON object.
+     * @param name   name of the attribute.
+     * @param type   type of the field.
+     * @param <V>    type of the field.
+     * @return the converted value, or the default value of the type if the attribute is absent or null.
+     * @throws com.friska.kompakt.exceptions.IllegalTypeException if the value cannot be converted to the type.
+     */
+    static <V> V read(@NotNull JSONObject object, @NotNull String name, @NotNull Class<V> type) {
+        return JSONDeserialiser.convert(object.contains(name) ? object.getItem(name) : null, type);
+    }
+}
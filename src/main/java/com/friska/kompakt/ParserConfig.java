@@ -0,0 +1,204 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An immutable set of options for parsing a JSON string, passed to {@link JSONParser#parse(String, ParserConfig)}. As
+ * with {@link WriterConfig}, every option is changed through a method returning a new configuration, starting from
+ * {@link ParserConfig#DEFAULT}, for example:
+ * <pre>{@code
+ * ParserConfig config = ParserConfig.DEFAULT.withNumberType(NumberType.DOUBLE).withRawPaths("/body");
+ * JSONObject envelope = (JSONObject) JSONParser.parse(json, config);
+ * }</pre>
+ */
+public final class ParserConfig {
+
+    /**
+     * The default configuration: numbers parsed as {@link NumberType#FLOAT}, a maximum depth of
+     * {@link JSONParser#DEFAULT_MAX_DEPTH}, no raw paths, numbers stored boxed, and arrays parsed as
+     * {@code Object[]}.
+     */
+    public static final ParserConfig DEFAULT =
+            new ParserConfig(NumberType.FLOAT, JSONParser.DEFAULT_MAX_DEPTH, Set.of(), false, false);
+
+    private final NumberType numberType;
+
+    private final int maxDepth;
+
+    private final Set<String> rawPaths;
+
+    private final boolean unboxed;
+
+    private final boolean jsonArrays;
+
+    /**
+     * The raw paths as a tree of member names and array indices, or null if there are none.
+     */
+    final PathNode rawTree;
+
+    private ParserConfig(NumberType numberType, int maxDepth, Set<String> rawPaths, boolean unboxed,
+                         boolean jsonArrays) {
+        if (numberType == null) throw new IllegalArgumentException("Number type cannot be null.");
+        if (maxDepth < 1) throw new IllegalArgumentException("Maximum depth must be positive.");
+        this.numberType = numberType;
+        this.maxDepth = maxDepth;
+        this.rawPaths = rawPaths;
+        this.unboxed = unboxed;
+        this.jsonArrays = jsonArrays;
+        this.rawTree = rawPaths.isEmpty() ? null : PathNode.of(rawPaths);
+    }
+
+    /**
+     * @param numberType resulting type of any values that represent a number.
+     * @return a copy of this configuration with the given number type.
+     */
+    public @NotNull ParserConfig withNumberType(@NotNull NumberType numberType) {
+        return new ParserConfig(numberType, maxDepth, rawPaths, unboxed, jsonArrays);
+    }
+
+    /**
+     * @param maxDepth the maximum depth of nested objects and arrays, see
+     *                 {@link JSONParser#parse(String, NumberType, int)}.
+     * @return a copy of this configuration with the given maximum depth.
+     */
+    public @NotNull ParserConfig withMaxDepth(int maxDepth) {
+        return new ParserConfig(numberType, maxDepth, rawPaths, unboxed, jsonArrays);
+    }
+
+    /**
+     * Selects values that are kept as {@link RawJSON} instead of being parsed. Each value is selected by a JSON
+     * pointer (see <a href="https://www.rfc-editor.org/rfc/rfc6901">RFC 6901</a>), such as {@code "/body"} for the
+     * member named "body" of the root object, or {@code "/items/0"} for the first element of the array named "items".
+     * Values below a raw value are never parsed, and are only checked for balanced and correctly nested brackets, and
+     * for balanced string laterals.
+     *
+     * @param pointers JSON pointers to the values to keep as raw JSON, replacing any previously selected.
+     * @return a copy of this configuration with the given raw paths.
+     * @throws IllegalArgumentException if a pointer is neither empty nor starts with '/'.
+     */
+    public @NotNull ParserConfig withRawPaths(@NotNull String... pointers) {
+        Set<String> paths = new LinkedHashSet<>(List.of(pointers));
+        for (String pointer : paths) {
+            if (!pointer.isEmpty() && pointer.charAt(0) != '/')
+                throw new IllegalArgumentException("JSON pointer \"" + pointer + "\" must start with '/'.");
+        }
+        return new ParserConfig(numberType, maxDepth, Set.copyOf(paths), unboxed, jsonArrays);
+    }
+
+    /**
+     * Selects whether numbers are stored unboxed. If so, numbers that are members of objects are stored in primitive
+     * slots of the {@link JSONObject}, read without boxing through {@link JSONObject#getLong(String)} and
+     * {@link JSONObject#getDouble(String)}, and arrays whose elements are all numbers of the same type, or all
+     * booleans, are parsed as an {@code int[]}, {@code float[]}, {@code double[]} or {@code boolean[]} instead of an
+     * {@code Object[]}. Numbers parsed as {@link NumberType#BIGDECIMAL} are always boxed.
+     *
+     * @param unboxed whether numbers are stored unboxed.
+     * @return a copy of this configuration with the given storage of numbers.
+     */
+    public @NotNull ParserConfig withUnboxedPrimitives(boolean unboxed) {
+        return new ParserConfig(numberType, maxDepth, rawPaths, unboxed, jsonArrays);
+    }
+
+    /**
+     * Selects whether arrays are parsed as growable {@link JSONArray}s instead of {@code Object[]}. If numbers are also
+     * stored unboxed, arrays of numbers parsed as {@link NumberType#INT} or {@link NumberType#DOUBLE} are parsed as JSON
+     * arrays specialised for longs or doubles, whose elements are read as a {@link Long} or {@link Double}.
+     *
+     * @param jsonArrays whether arrays are parsed as {@link JSONArray}s.
+     * @return a copy of this configuration with the given type of arrays.
+     */
+    public @NotNull ParserConfig withJSONArrays(boolean jsonArrays) {
+        return new ParserConfig(numberType, maxDepth, rawPaths, unboxed, jsonArrays);
+    }
+
+    /**
+     * @return resulting type of any values that represent a number.
+     */
+    public @NotNull NumberType getNumberType() {
+        return numberType;
+    }
+
+    /**
+     * @return the maximum depth of nested objects and arrays.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return JSON pointers to the values kept as raw JSON.
+     */
+    public @NotNull Set<String> getRawPaths() {
+        return rawPaths;
+    }
+
+    /**
+     * @return whether numbers are stored unboxed.
+     */
+    public boolean isUnboxedPrimitives() {
+        return unboxed;
+    }
+
+    /**
+     * @return whether arrays are parsed as {@link JSONArray}s.
+     */
+    public boolean isJSONArrays() {
+        return jsonArrays;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ParserConfig c && numberType == c.numberType && maxDepth == c.maxDepth
+                && rawPaths.equals(c.rawPaths) && unboxed == c.unboxed
+                && jsonArrays == c.jsonArrays;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(numberType, maxDepth, rawPaths, unboxed, jsonArrays);
+    }
+
+    @Override
+    public String toString() {
+        return "ParserConfig[numberType=" + numberType + ", maxDepth=" + maxDepth + ", rawPaths=" + rawPaths
+                + ", unboxed=" + unboxed + ", jsonArrays=" + jsonArrays + "]";
+    }
+
+    /**
+     * A node in the tree of raw paths, reached through the member names and array indices leading to it.
+     */
+    static final class PathNode {
+
+        /**
+         * Nodes reached through a single member name or array index, written in decimal.
+         */
+        final Map<String, PathNode> children = new HashMap<>();
+
+        /**
+         * Whether the value at this node is kept raw.
+         */
+        boolean raw;
+
+        private static PathNode of(Set<String> pointers) {
+            PathNode root = new PathNode();
+            for (String pointer : pointers) {
+                PathNode node = root;
+                if (!pointer.isEmpty()) {
+                    for (String token : pointer.substring(1).split("/", -1)) {
+                        String name = token.replace("~1", "/").replace("~0", "~");
+                        node = node.children.computeIfAbsent(name, n -> new PathNode());
+                    }
+                }
+                node.raw = true;
+            }
+            return root;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * An immutable JSON array, updated by creating new versions of it that share every unchanged part with the old one, as
+ * {@link PersistentJSONObject} does for objects. Elements are held in the leaves of a trie branching 32 ways, indexed
+ * by 5 bits of the index at each level, except for the last 32 elements at most, which are held in a separate tail
+ * such that appending rarely touches the trie. Setting an element copies only the path from the root to its leaf, in
+ * O(log n) time.<p>
+ * Persistent arrays are serialised as JSON arrays, by iterating over their elements.
+ */
+public final class PersistentJSONArray implements Iterable<Object> {
+
+    private static final Object[] NO_ELEMENTS = new Object[0];
+
+    /**
+     * The array without any elements.
+     */
+    public static final PersistentJSONArray EMPTY = new PersistentJSONArray(0, 5, NO_ELEMENTS, NO_ELEMENTS);
+
+    private final int size;
+
+    /**
+     * Shift of the index at the root of the trie, which is 5 if the root holds leaves.
+     */
+    private final int shift;
+
+    private final Object[] root;
+
+    private final Object[] tail;
+
+    private int hash;
+
+    private PersistentJSONArray(int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * Converts an array of any type, or a {@link JSONArray}, into a persistent array. Every object and array inside it,
+     * at any depth, is converted as in {@link PersistentJSONObject#from(JSONObject)}.
+     *
+     * @param array an array of any type, or a {@link JSONArray}.
+     * @return a persistent array holding the same elements.
+     * @throws IllegalArgumentException if the given object is not an array.
+     */
+    public static @NotNull PersistentJSONArray from(@NotNull Object array) {
+        PersistentJSONArray res = EMPTY;
+        if (array instanceof JSONArray a) {
+            for (int i = 0; i < a.size(); i++) res = res.append(PersistentJSONObject.persistent(a.get(i)));
+        } else if (array.getClass().isArray()) {
+            int length = Array.getLength(array);
+            for (int i = 0; i < length; i++) res = res.append(PersistentJSONObject.persistent(Array.get(array, i)));
+        } else {
+            throw new IllegalArgumentException(array.getClass().getName() + " is not an array.");
+        }
+        return res;
+    }
+
+    /**
+     * Converts this array into an array of objects, as returned by {@link JSONParser}. Every persistent object and
+     * array inside it, at any depth, is converted as in {@link PersistentJSONObject#toJSONObject()}.
+     *
+     * @return a new array holding the same elements.
+     */
+    public @NotNull Object[] toArray() {
+        Object[] res = new Object[size];
+        for (int i = 0; i < size; i++) res[i] = PersistentJSONObject.mutable(get(i));
+        return res;
+    }
+
+    /**
+     * @return the number of elements.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the element at an index.
+     *
+     * @param index the index of the element.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public @Nullable Object get(int index) {
+        Objects.checkIndex(index, size);
+        return leafOf(index)[index & 31];
+    }
+
+    /**
+     * Returns a version of this array with an element appended.
+     *
+     * @param value an arbitrary value, which should be immutable.
+     * @return the new version.
+     */
+    public @NotNull PersistentJSONArray append(Object value) {
+        if (size - tailOffset() < 32) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = value;
+            return new PersistentJSONArray(size + 1, shift, root, newTail);
+        }
+
+        //The full tail is pushed into the trie, which grows a level if it is full
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> 5) > (1 << shift)) {
+            newRoot = new Object[]{root, path(shift, tail)};
+            newShift += 5;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentJSONArray(size + 1, newShift, newRoot, new Object[]{value});
+    }
+
+    /**
+     * Returns a version of this array with the element at an index replaced.
+     *
+     * @param index the index of the element.
+     * @param value an arbitrary value, which should be immutable.
+     * @return the new version.
+     * @throws IndexOutOfBoundsException if the index is out of bounds.
+     */
+    public @NotNull PersistentJSONArray with(int index, Object value) {
+        Objects.checkIndex(index, size);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & 31] = value;
+            return new PersistentJSONArray(size, shift, root, newTail);
+        }
+        return new PersistentJSONArray(size, shift, assoc(shift, root, index, value), tail);
+    }
+
+    /**
+     * Returns a version of this array without its last element.
+     *
+     * @return the new version.
+     * @throws IllegalStateException if this array is empty.
+     */
+    public @NotNull PersistentJSONArray withoutLast() {
+        if (size == 0) throw new IllegalStateException("Cannot remove an element of an empty array.");
+        if (size == 1) return EMPTY;
+        if (size - tailOffset() > 1)
+            return new PersistentJSONArray(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+
+        //The last leaf of the trie becomes the tail, and the trie loses a level if its root is left with one branch
+        Object[] newTail = leafOf(size - 2);
+        Object[] newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null) newRoot = NO_ELEMENTS;
+        if (shift > 5 && newRoot.length == 1) {
+            newRoot = (Object[]) newRoot[0];
+            newShift -= 5;
+        }
+        return new PersistentJSONArray(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * @return the index of the first element of the tail.
+     */
+    private int tailOffset() {
+        return size < 32 ? 0 : ((size - 1) >>> 5) << 5;
+    }
+
+    private Object[] leafOf(int index) {
+        if (index >= tailOffset()) return tail;
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= 5) node = (Object[]) node[(index >>> level) & 31];
+        return node;
+    }
+
+    /**
+     * @return a path of nodes from a given level down to a leaf.
+     */
+    private static Object[] path(int level, Object[] leaf) {
+        return level == 0 ? leaf : new Object[]{path(level - 5, leaf)};
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+        int index = ((size - 1) >>> level) & 31;
+        Object[] res = Arrays.copyOf(parent, Math.max(parent.length, index + 1));
+        if (level == 5) res[index] = leaf;
+        else res[index] = index < parent.length ? pushTail(level - 5, (Object[]) parent[index], leaf)
+                : path(level - 5, leaf);
+        return res;
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object value) {
+        Object[] res = node.clone();
+        if (level == 0) res[index & 31] = value;
+        else {
+            int i = (index >>> level) & 31;
+            res[i] = assoc(level - 5, (Object[]) node[i], index, value);
+        }
+        return res;
+    }
+
+    /**
+     * @return a copy of a node without its last leaf, or null if it would be empty.
+     */
+    private Object[] popTail(int level, Object[] node) {
+        int index = ((size - 2) >>> level) & 31;
+        if (level > 5) {
+            Object[] child = popTail(level - 5, (Object[]) node[index]);
+            if (child == null && index == 0) return null;
+            Object[] res = Arrays.copyOf(node, child == null ? index : index + 1);
+            if (child != null) res[index] = child;
+            return res;
+        }
+        return index == 0 ? null : Arrays.copyOf(node, index);
+    }
+
+    @Override
+    public @NotNull Iterator<Object> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            private Object[] leaf;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public Object next() {
+                if (index >= size) throw new NoSuchElementException();
+                if ((index & 31) == 0 || leaf == null) leaf = leafOf(index);
+                return leaf[index++ & 31];
+            }
+        };
+    }
+
+    /**
+     * String representation defined as its JSON-string representation.
+     */
+    @Override
+    public String toString() {
+        return JSONArray.wrap(toArray()).serialise();
+    }
+
+    /**
+     * Two persistent arrays are equal if they hold the same number of elements, and the elements at each index are
+     * equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof PersistentJSONArray array) || size != array.size) return false;
+        Iterator<Object> it = array.iterator();
+        for (Object element : this) {
+            if (!JSONArray.elementEquals(element, it.next())) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the elements as in {@link java.util.List#hashCode()}, which is only computed once.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h != 0) return h;
+        h = 1;
+        for (Object element : this) h = 31 * h + JSONArray.elementHash(element);
+        hash = h;
+        return h;
+    }
+}
@@ -0,0 +1,345 @@
+package com.friska.kompakt;
+
+import com.friska.kompakt.exceptions.AttributeNotFoundException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable JSON object, updated by creating new versions of it that share every unchanged part with the old one.
+ * {@link PersistentJSONObject#with(String, Object)} and {@link PersistentJSONObject#without(String)} return a new
+ * version in O(log n) time, copying only the path from the root to the changed attribute, hence many versions of a
+ * large object differing in a few attributes take little more memory than a single one.<p>
+ * Attributes are held in a hash array mapped trie: every node branches 32 ways on the next 5 bits of the hash code of
+ * the names below it, and holds a bitmap telling which branches are present, such that its array of branches holds no
+ * empty ones. Each attribute keeps a sequence number telling when its name was first added, by which attributes are
+ * sorted when iterated, hence attributes keep their insertion order as in {@link JSONObject}.<p>
+ * Values should themselves be immutable, such as strings, numbers, frozen objects and arrays, or other persistent
+ * values. {@link PersistentJSONObject#from(JSONObject)} converts a mutable object, turning every object and array
+ * inside it into a persistent one, and {@link PersistentJSONObject#toJSONObject()} converts it back.
+ *
+ * @see PersistentJSONArray
+ */
+public final class PersistentJSONObject implements JSONSerialisable {
+
+    /**
+     * The object without any attributes.
+     */
+    public static final PersistentJSONObject EMPTY = new PersistentJSONObject(Node.EMPTY, 0, 0);
+
+    private final Node root;
+
+    private final int size;
+
+    /**
+     * The sequence number of the next name added.
+     */
+    private final long next;
+
+    private int hash;
+
+    private PersistentJSONObject(Node root, int size, long next) {
+        this.root = root;
+        this.size = size;
+        this.next = next;
+    }
+
+    /**
+     * Converts a mutable object into a persistent one. Every object, {@link JSONArray} and array inside the object, at
+     * any depth, is converted into a {@link PersistentJSONObject} or {@link PersistentJSONArray}.
+     *
+     * @param object the object to convert.
+     * @return a persistent object holding the same attributes in the same order.
+     */
+    public static @NotNull PersistentJSONObject from(@NotNull JSONObject object) {
+        PersistentJSONObject res = EMPTY;
+        for (Attribute attribute : object.jsonAttributes())
+            res = res.with(attribute.name(), persistent(attribute.val()));
+        return res;
+    }
+
+    /**
+     * @return a persistent equivalent of a value held by a mutable object or array.
+     */
+    static Object persistent(Object value) {
+        if (value instanceof JSONObject object) return from(object);
+        if (value instanceof JSONArray || (value != null && value.getClass().isArray()))
+            return PersistentJSONArray.from(value);
+        return value;
+    }
+
+    /**
+     * @return a mutable equivalent of a value held by a persistent object or array.
+     */
+    static Object mutable(Object value) {
+        if (value instanceof PersistentJSONObject object) return object.toJSONObject();
+        if (value instanceof PersistentJSONArray array) return array.toArray();
+        return value;
+    }
+
+    /**
+     * Converts this object into a mutable one. Every persistent object and array inside it, at any depth, is converted
+     * into a {@link JSONObject} or an array of objects, as returned by {@link JSONParser}.
+     *
+     * @return a new mutable object holding the same attributes in the same order.
+     */
+    public @NotNull JSONObject toJSONObject() {
+        JSONObject object = new JSONObject();
+        for (Entry entry : entries()) object.addAttribute(entry.name, mutable(entry.value));
+        return object;
+    }
+
+    /**
+     * @return the number of attributes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param name name of an attribute.
+     * @return whether this object has an attribute with the given name.
+     */
+    public boolean has(@NotNull String name) {
+        return root.find(name, spread(name), 0) != null;
+    }
+
+    /**
+     * Returns the value associated with a name.
+     *
+     * @param name name of the attribute.
+     * @throws AttributeNotFoundException if no value associated with the given name is found.
+     */
+    public @Nullable Object get(@NotNull String name) {
+        Entry entry = root.find(name, spread(name), 0);
+        if (entry == null) throw new AttributeNotFoundException(name);
+        return entry.value;
+    }
+
+    /**
+     * Returns a version of this object with an attribute set to a value. If the attribute already exists, it keeps its
+     * position, otherwise it is added after every other attribute.
+     *
+     * @param name  name of the attribute.
+     * @param value an arbitrary value, which should be immutable.
+     * @return the new version, or this object if the attribute already holds the very same value.
+     */
+    public @NotNull PersistentJSONObject with(@NotNull String name, Object value) {
+        int h = spread(name);
+        Entry old = root.find(name, h, 0);
+        if (old != null && old.value == value) return this;
+        Entry entry = new Entry(name, value, h, old == null ? next : old.seq);
+        return new PersistentJSONObject(root.put(entry, 0), old == null ? size + 1 : size,
+                old == null ? next + 1 : next);
+    }
+
+    /**
+     * Returns a version of this object without an attribute.
+     *
+     * @param name name of the attribute.
+     * @return the new version, or this object if there is no such attribute.
+     */
+    public @NotNull PersistentJSONObject without(@NotNull String name) {
+        int h = spread(name);
+        if (root.find(name, h, 0) == null) return this;
+        Node res = root.remove(name, h, 0);
+        return size == 1 ? EMPTY : new PersistentJSONObject(res, size - 1, next);
+    }
+
+    /**
+     * @return every attribute in insertion order.
+     */
+    private Entry[] entries() {
+        Entry[] entries = new Entry[size];
+        root.collect(entries, 0);
+        Arrays.sort(entries, Comparator.comparingLong(e -> e.seq));
+        return entries;
+    }
+
+    /**
+     * @return the attributes in insertion order, which are serialised as the attributes of a JSON object.
+     */
+    @Override
+    public List<Attribute> jsonAttributes() {
+        Entry[] entries = entries();
+        List<Attribute> attributes = new ArrayList<>(entries.length);
+        for (Entry entry : entries) attributes.add(new Attribute(entry.name, entry.value));
+        return attributes;
+    }
+
+    /**
+     * String representation defined as its JSON-string representation.
+     */
+    @Override
+    public String toString() {
+        return serialise();
+    }
+
+    /**
+     * Two persistent objects are equal if they have the same names, and equal values associated with each name,
+     * regardless of their order, as in {@link JSONObject#equals(Object)}.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof PersistentJSONObject object) || size != object.size) return false;
+        if (root == object.root) return true;
+        Entry[] entries = new Entry[size];
+        root.collect(entries, 0);
+        for (Entry entry : entries) {
+            Entry other = object.root.find(entry.name, entry.hash, 0);
+            if (other == null || !JSONArray.elementEquals(entry.value, other.value)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the attributes regardless of their order, which is only computed once.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h != 0) return h;
+        Entry[] entries = new Entry[size];
+        root.collect(entries, 0);
+        for (Entry entry : entries) h += entry.name.hashCode() ^ JSONArray.elementHash(entry.value);
+        hash = h;
+        return h;
+    }
+
+    private static int spread(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * An attribute, along with the hash code of its name and its sequence number.
+     */
+    private record Entry(String name, Object value, int hash, long seq) {
+    }
+
+    /**
+     * A node of the trie. Each slot holds either an {@link Entry}, or a node one level deeper. Once all 32 bits of
+     * the hash code are used up, names with the same hash code are held by a single node as a flat list of entries,
+     * whose bitmap is unused.
+     */
+    private static final class Node {
+
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        /**
+         * The deepest shift at which hash codes are split, beyond which entries collide.
+         */
+        private static final int MAX_SHIFT = 30;
+
+        final int bitmap;
+
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Entry find(String name, int hash, int shift) {
+            Node node = this;
+            while (true) {
+                if (shift > MAX_SHIFT) {
+                    for (Object slot : node.slots) {
+                        if (((Entry) slot).name.equals(name)) return (Entry) slot;
+                    }
+                    return null;
+                }
+                int bit = 1 << ((hash >>> shift) & 31);
+                if ((node.bitmap & bit) == 0) return null;
+                Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+                if (slot instanceof Entry entry) return entry.name.equals(name) ? entry : null;
+                node = (Node) slot;
+                shift += 5;
+            }
+        }
+
+        /**
+         * @return a copy of this node with an entry added, or replacing the entry with the same name.
+         */
+        Node put(Entry entry, int shift) {
+            if (shift > MAX_SHIFT) {
+                for (int i = 0; i < slots.length; i++) {
+                    if (((Entry) slots[i]).name.equals(entry.name)) return new Node(0, replaced(i, entry));
+                }
+                Object[] res = Arrays.copyOf(slots, slots.length + 1);
+                res[slots.length] = entry;
+                return new Node(0, res);
+            }
+            int bit = 1 << ((entry.hash >>> shift) & 31);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] res = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, res, 0, index);
+                res[index] = entry;
+                System.arraycopy(slots, index, res, index + 1, slots.length - index);
+                return new Node(bitmap | bit, res);
+            }
+            Object slot = slots[index];
+            if (slot instanceof Node node) return new Node(bitmap, replaced(index, node.put(entry, shift + 5)));
+            Entry existing = (Entry) slot;
+            if (existing.name.equals(entry.name)) return new Node(bitmap, replaced(index, entry));
+            Node branch = EMPTY.put(existing, shift + 5).put(entry, shift + 5);
+            return new Node(bitmap, replaced(index, branch));
+        }
+
+        /**
+         * @return a copy of this node without the entry of a name, which must be present, or null if the node would be
+         * empty. Nodes left holding a single entry are replaced by the entry itself in their parent.
+         */
+        Node remove(String name, int hash, int shift) {
+            if (shift > MAX_SHIFT) {
+                if (slots.length == 1) return null;
+                Object[] res = new Object[slots.length - 1];
+                int j = 0;
+                for (Object slot : slots) {
+                    if (!((Entry) slot).name.equals(name)) res[j++] = slot;
+                }
+                return new Node(0, res);
+            }
+            int bit = 1 << ((hash >>> shift) & 31);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object slot = slots[index];
+            if (slot instanceof Node node) {
+                Node child = node.remove(name, hash, shift + 5);
+                if (child != null) {
+                    Object replacement = child.slots.length == 1 && child.slots[0] instanceof Entry e ? e : child;
+                    return new Node(bitmap, replaced(index, replacement));
+                }
+            }
+            if (slots.length == 1) return null;
+            Object[] res = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, res, 0, index);
+            System.arraycopy(slots, index + 1, res, index, slots.length - index - 1);
+            return new Node(bitmap & ~bit, res);
+        }
+
+        private Object[] replaced(int index, Object slot) {
+            Object[] res = slots.clone();
+            res[index] = slot;
+            return res;
+        }
+
+        /**
+         * Copies every entry below this node into an array.
+         *
+         * @return the index after the last entry copied.
+         */
+        int collect(Entry[] entries, int from) {
+            for (Object slot : slots) {
+                if (slot instanceof Entry entry) entries[from++] = entry;
+                else from = ((Node) slot).collect(entries, from);
+            }
+            return from;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A JSON value held as its JSON string, without being parsed. When serialised as the value of a field, an attribute,
+ * or an element of an array, collection or map, the JSON string is written verbatim, such that an already serialised
+ * payload may be nested into another JSON string without parsing and serialising it again, for example:
+ * <pre>{@code
+ * new JSONObject().addAttribute("status", 200).addAttribute("body", RawJSON.of(upstreamBody)).serialise();
+ * }</pre>
+ * Raw JSON values may also be kept by {@link JSONParser#parse(String, ParserConfig)} for the subtrees selected through
+ * {@link ParserConfig#withRawPaths(String...)}, in which case they are slices of the parsed JSON string, cut out of it
+ * only when {@link RawJSON#getJSON()} is called. Note that a slice keeps the whole parsed JSON string in memory.<p>
+ * The JSON string is trusted to be valid, and is neither checked nor re-indented when written.
+ */
+public final class RawJSON {
+
+    private final String source;
+
+    private final int start, end;
+
+    private String json;
+
+    RawJSON(String source, int start, int end) {
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        if (start == 0 && end == source.length()) json = source;
+    }
+
+    /**
+     * @param json a valid JSON string representing a single value.
+     * @return a raw JSON value written as the given JSON string.
+     * @throws IllegalArgumentException if the JSON string is blank.
+     */
+    public static @NotNull RawJSON of(@NotNull String json) {
+        if (json.isBlank()) throw new IllegalArgumentException("Raw JSON cannot be blank.");
+        return new RawJSON(json, 0, json.length());
+    }
+
+    /**
+     * @return the JSON string of this value.
+     */
+    public @NotNull String getJSON() {
+        if (json == null) json = source.substring(start, end);
+        return json;
+    }
+
+    /**
+     * @return the number of characters of the JSON string.
+     */
+    public int length() {
+        return end - start;
+    }
+
+    /**
+     * Parses this value as in {@link JSONParser#parse(String, NumberType)}.
+     *
+     * @param type resulting type of any sub-values that represent a number.
+     * @return a Java object representing this value.
+     */
+    public Object parse(@NotNull NumberType type) {
+        return JSONParser.parse(getJSON(), type);
+    }
+
+    /**
+     * Appends the JSON string without cutting it out of the string it is a slice of.
+     */
+    void appendTo(StringBuilder sb) {
+        sb.append(source, start, end);
+    }
+
+    /**
+     * Two raw JSON values are equal if their JSON strings are equal, character by character.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof RawJSON raw && getJSON().equals(raw.getJSON());
+    }
+
+    @Override
+    public int hashCode() {
+        return getJSON().hashCode();
+    }
+
+    /**
+     * @return the JSON string of this value.
+     */
+    @Override
+    public String toString() {
+        return getJSON();
+    }
+}
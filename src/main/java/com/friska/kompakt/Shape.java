@@ -0,0 +1,269 @@
+package com.friska.kompakt;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The names of the attributes of a {@link JSONObject}, in insertion order, along with an open-addressing hash table
+ * mapping each name to its index, such that the object itself only needs to hold its values at the same indices.<p>
+ * Shapes are shared between objects in the manner of hidden classes: every object starts with the empty shape, and
+ * adding an attribute moves it to the shape reached through a transition by the name of the attribute, which is created
+ * once and reused by every object adding the same names in the same order. Rows of a parsed JSON array therefore all
+ * end up sharing a single shape. Shared shapes are immutable.<p>
+ * Objects whose names are unlikely to be shared take a private copy of their shape, which is mutated in place: this is
+ * the case once an attribute is removed, once an object holds more than {@link Shape#MAX_SHARED_SIZE} attributes, once
+ * a shape has {@link Shape#MAX_TRANSITIONS} transitions, or while {@link Shape#MAX_SHAPES} shared shapes are alive
+ * altogether, which bounds the memory held by shared shapes even if names are arbitrary. Transitions only hold the
+ * shapes they lead to weakly, while shapes hold the shape they were reached from, hence a shape, along with the names
+ * keying its transition, is freed once no object nor any shape reached from it is left, and sharing resumes once
+ * enough shapes are freed. Removing an attribute from a private shape leaves a gap, which {@link JSONObject} compacts
+ * along with its values.
+ */
+final class Shape {
+
+    private static final int MAX_SHARED_SIZE = 64;
+
+    private static final int MAX_TRANSITIONS = 16;
+
+    private static final int MAX_SHAPES = 1 << 16;
+
+    /**
+     * Transitions to every shared shape alive, not counting {@link Shape#EMPTY}, held such that each is enqueued once
+     * its shape is freed, even if the shape it starts from is freed as well.
+     */
+    private static final Set<Transition> LIVE = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Transitions whose shapes have been freed, to be removed from the shapes they start from.
+     */
+    private static final ReferenceQueue<Shape> FREED = new ReferenceQueue<>();
+
+    static final Shape EMPTY = new Shape(new String[0], 0, true, null);
+
+    /**
+     * Names in insertion order, where null marks a removed attribute. Shared shapes hold exactly {@link Shape#end}
+     * names, while private shapes may hold spare room.
+     */
+    private String[] names;
+
+    /**
+     * Hash table with linear probing, holding one plus the index of each name, or 0 for an empty slot. Its length is a
+     * power of two, at least twice the length of {@link Shape#names}.
+     */
+    private int[] table;
+
+    /**
+     * Number of names, not counting removed ones.
+     */
+    private int size;
+
+    /**
+     * Number of indices in use, including removed names.
+     */
+    private int end;
+
+    final boolean shared;
+
+    /**
+     * The shared shape this shape was reached from, kept alive for as long as this one, or null if there is none.
+     */
+    private final Shape parent;
+
+    /**
+     * Shared shapes reached by adding a name to this shape, or null if there are none yet or this shape is private.
+     */
+    private volatile ConcurrentHashMap<String, Transition> transitions;
+
+    private Shape(String[] names, int end, boolean shared, Shape parent) {
+        this.names = names;
+        this.end = end;
+        this.shared = shared;
+        this.parent = parent;
+        rehash();
+    }
+
+    int size() {
+        return size;
+    }
+
+    int end() {
+        return end;
+    }
+
+    /**
+     * @return the name at an index, or null if it is removed or out of bounds.
+     */
+    String nameAt(int index) {
+        return index < end ? names[index] : null;
+    }
+
+    /**
+     * @return the number of names this shape has room for, after which a private shape has to grow.
+     */
+    int capacity() {
+        return names.length;
+    }
+
+    /**
+     * @return the index of a name, or -1 if there is no such name.
+     */
+    int indexOf(String name) {
+        int slot = slotOf(name);
+        return slot < 0 ? -1 : table[slot] - 1;
+    }
+
+    private int slotOf(String name) {
+        int mask = table.length - 1;
+        for (int slot = hash(name) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (names[table[slot] - 1].equals(name)) return slot;
+        }
+        return -1;
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Adds a name at index {@link Shape#end()}, which must not be in this shape yet.
+     *
+     * @return the shape holding the new name, which is this shape itself if it is private.
+     */
+    Shape add(String name) {
+        if (!shared) {
+            if (end == names.length) {
+                names = Arrays.copyOf(names, Math.max(4, names.length * 2));
+                rehash();
+            }
+            names[end] = name;
+            insert(end++);
+            return this;
+        }
+
+        ConcurrentHashMap<String, Transition> map = transitions;
+        Transition transition = map == null ? null : map.get(name);
+        Shape next = transition == null ? null : transition.get();
+        if (next != null) return next;
+
+        expunge();
+        if (end < MAX_SHARED_SIZE && LIVE.size() < MAX_SHAPES) {
+            synchronized (this) {
+                map = transitions;
+                if (map == null) transitions = map = new ConcurrentHashMap<>(4);
+                transition = map.get(name);
+                next = transition == null ? null : transition.get();
+                if (next != null) return next;
+                if (map.size() >= MAX_TRANSITIONS) map.values().removeIf(t -> t.refersTo(null));
+                if (transition != null || map.size() < MAX_TRANSITIONS) {
+                    String[] added = Arrays.copyOf(names, end + 1);
+                    added[end] = name;
+                    Shape created = new Shape(added, end + 1, true, this);
+                    transition = new Transition(created, map, name);
+                    map.put(name, transition);
+                    LIVE.add(transition);
+                    return created;
+                }
+            }
+        }
+        return copy().add(name);
+    }
+
+    /**
+     * Removes the transitions whose shapes have been freed.
+     */
+    private static void expunge() {
+        for (Reference<? extends Shape> ref; (ref = FREED.poll()) != null; ) {
+            Transition transition = (Transition) ref;
+            transition.from.remove(transition.name, transition);
+            LIVE.remove(transition);
+        }
+    }
+
+    /**
+     * Removes a name, leaving a gap at its index.
+     *
+     * @return the index of the removed name, or -1 if there is no such name.
+     */
+    int remove(String name) {
+        if (shared) throw new IllegalStateException("Shared shapes cannot be modified.");
+        int slot = slotOf(name);
+        if (slot < 0) return -1;
+        int index = table[slot] - 1;
+        names[index] = null;
+        size--;
+
+        //Shifts back every following slot of the same probe sequence, such that no lookup stops at the emptied slot
+        int mask = table.length - 1;
+        int next = (slot + 1) & mask;
+        while (table[next] != 0) {
+            int home = hash(names[table[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[slot] = 0;
+        return index;
+    }
+
+    /**
+     * Moves every name of a private shape to the front, closing the gaps left by removed names. Values at the same
+     * indices must be moved in the same way, keeping their order.
+     */
+    void compact() {
+        if (shared) throw new IllegalStateException("Shared shapes cannot be modified.");
+        int j = 0;
+        for (int i = 0; i < end; i++) {
+            if (names[i] != null) names[j++] = names[i];
+        }
+        Arrays.fill(names, j, end, null);
+        end = j;
+        rehash();
+    }
+
+    /**
+     * @return a private copy of this shape, with room for at least one more name.
+     */
+    Shape copy() {
+        return new Shape(Arrays.copyOf(names, Math.max(4, end * 2)), end, false, null);
+    }
+
+    private void rehash() {
+        table = new int[Math.max(2, Integer.highestOneBit(Math.max(1, names.length) * 2 - 1) << 1)];
+        size = 0;
+        for (int i = 0; i < end; i++) {
+            if (names[i] != null) insert(i);
+        }
+    }
+
+    private void insert(int index) {
+        int mask = table.length - 1;
+        int slot = hash(names[index]) & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = index + 1;
+        size++;
+    }
+
+    /**
+     * A transition from a shared shape to the shape reached by adding a name, held weakly. It holds the transitions of
+     * the shape it starts from rather than the shape itself, such that both shapes may be freed at once.
+     */
+    private static final class Transition extends WeakReference<Shape> {
+
+        final ConcurrentHashMap<String, Transition> from;
+
+        final String name;
+
+        Transition(Shape to, ConcurrentHashMap<String, Transition> from, String name) {
+            super(to, FREED);
+            this.from = from;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.friska.kompakt;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of options for serialising a {@link JSONSerialisable}, passed to
+ * {@link JSONSerialisable#serialise(WriterConfig)}. Configurations never change once created, hence they may be shared
+ * freely between threads, and different parts of a programme may serialise with different configurations at the same
+ * time. Every option is changed through a method returning a new configuration, starting from
+ * {@link WriterConfig#DEFAULT}, for example:
+ * <pre>{@code
+ * WriterConfig config = WriterConfig.DEFAULT.withCompact(true).withIncludeNulls(false);
+ * String json = obj.serialise(config);
+ * }</pre>
+ * Each configuration precomputes its indentation once when created, and the keys of every serialised field are cached
+ * once per class for each combination of options affecting them, such that choosing a configuration costs nothing at
+ * serialisation time.
+ */
+public final class WriterConfig {
+
+    /**
+     * The default configuration: an indent size of 2, unsorted map keys, nulls included, non-ASCII characters written
+     * as is, {@link CyclePolicy#FAIL}, a maximum depth of 1000, and a parallel threshold of 65536 elements.
+     */
+    public static final WriterConfig DEFAULT =
+            new WriterConfig(2, false, false, true, false, CyclePolicy.FAIL, 1000, 1 << 16);
+
+    /**
+     * Number of spaces precomputed for indentation.
+     */
+    private static final int SPACES = 256;
+
+    private final int indentSize;
+
+    private final boolean compact;
+
+    private final boolean sortMapKeys;
+
+    private final boolean includeNulls;
+
+    private final boolean asciiOnly;
+
+    private final CyclePolicy cyclePolicy;
+
+    private final int maxDepth;
+
+    private final int parallelThreshold;
+
+    /**
+     * Spaces appended in bulk for indentation, empty if compact.
+     */
+    final char[] spaces;
+
+    /**
+     * Index of the variant of field keys used by this configuration, see {@link ClassPlan.FieldPlan#key(int)}.
+     */
+    final int keyStyle;
+
+    private WriterConfig(int indentSize, boolean compact, boolean sortMapKeys, boolean includeNulls, boolean asciiOnly,
+                         CyclePolicy cyclePolicy, int maxDepth, int parallelThreshold) {
+        if (indentSize < 0) throw new IllegalArgumentException("Indent size cannot be negative.");
+        if (maxDepth < 1) throw new IllegalArgumentException("Maximum depth must be positive.");
+        if (cyclePolicy == null) throw new IllegalArgumentException("Cycle policy cannot be null.");
+        this.indentSize = indentSize;
+        this.compact = compact;
+        this.sortMapKeys = sortMapKeys;
+        this.includeNulls = includeNulls;
+        this.asciiOnly = asciiOnly;
+        this.cyclePolicy = cyclePolicy;
+        this.maxDepth = maxDepth;
+        this.parallelThreshold = parallelThreshold;
+        this.spaces = new char[compact || indentSize == 0 ? 0 : SPACES];
+        Arrays.fill(spaces, ' ');
+        this.keyStyle = ClassPlan.FieldPlan.keyStyle(compact, asciiOnly);
+    }
+
+    /**
+     * @param indentSize the number of spaces for each indentation.
+     * @return a copy of this configuration with the given indent size.
+     */
+    public @NotNull WriterConfig withIndentSize(int indentSize) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param compact whether JSON strings are written without any whitespace between tokens.
+     * @return a copy of this configuration, compact or not.
+     */
+    public @NotNull WriterConfig withCompact(boolean compact) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param sortMapKeys whether the entries of maps are written in the order of their keys, see
+     *                    {@link JSONSerialisable#setSortMapKeys(boolean)}.
+     * @return a copy of this configuration, sorting map keys or not.
+     */
+    public @NotNull WriterConfig withSortMapKeys(boolean sortMapKeys) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param includeNulls whether fields, attributes and map entries holding null are written. Null elements of arrays
+     *                     and collections are always written.
+     * @return a copy of this configuration, including nulls or not.
+     */
+    public @NotNull WriterConfig withIncludeNulls(boolean includeNulls) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param asciiOnly whether every non-ASCII character in strings and keys is escaped as a unicode escape sequence.
+     * @return a copy of this configuration, escaping non-ASCII characters or not.
+     */
+    public @NotNull WriterConfig withAsciiOnly(boolean asciiOnly) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param cyclePolicy what is done upon a circular reference, see {@link CyclePolicy}.
+     * @return a copy of this configuration with the given cycle policy.
+     */
+    public @NotNull WriterConfig withCyclePolicy(@NotNull CyclePolicy cyclePolicy) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param maxDepth the maximum number of nested objects, arrays, collections and maps, see
+     *                 {@link JSONSerialisable#setMaxDepth(int)}.
+     * @return a copy of this configuration with the given maximum depth.
+     */
+    public @NotNull WriterConfig withMaxDepth(int maxDepth) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @param parallelThreshold the least number of elements in an array or collection for it to be serialised in
+     *                          parallel, see {@link JSONSerialisable#setParallelThreshold(int)}.
+     * @return a copy of this configuration with the given parallel threshold.
+     */
+    public @NotNull WriterConfig withParallelThreshold(int parallelThreshold) {
+        return new WriterConfig(indentSize, compact, sortMapKeys, includeNulls, asciiOnly, cyclePolicy, maxDepth,
+                parallelThreshold);
+    }
+
+    /**
+     * @return the number of spaces for each indentation, which is unused if compact.
+     */
+    public int getIndentSize() {
+        return indentSize;
+    }
+
+    /**
+     * @return whether JSON strings are written without any whitespace between tokens.
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * @return whether the entries of maps are written in the order of their keys.
+     */
+    public boolean isSortMapKeys() {
+        return sortMapKeys;
+    }
+
+    /**
+     * @return whether fields, attributes and map entries holding null are written.
+     */
+    public boolean isIncludeNulls() {
+        return includeNulls;
+    }
+
+    /**
+     * @return whether every non-ASCII character is escaped.
+     */
+    public boolean isAsciiOnly() {
+        return asciiOnly;
+    }
+
+    /**
+     * @return what is done upon a circular reference.
+     */
+    public @NotNull CyclePolicy getCyclePolicy() {
+        return cyclePolicy;
+    }
+
+    /**
+     * @return the maximum number of nested objects, arrays, collections and maps.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the least number of elements in an array or collection for it to be serialised in parallel.
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Appends the indentation of a given number of spaces, or nothing if compact.
+     */
+    void indent(StringBuilder sb, int size) {
+        if (spaces.length == 0) return;
+        while (size > spaces.length) {
+            sb.append(spaces);
+            size -= spaces.length;
+        }
+        if (size > 0) sb.append(spaces, 0, size);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof WriterConfig c && indentSize == c.indentSize && compact == c.compact
+                && sortMapKeys == c.sortMapKeys && includeNulls == c.includeNulls && asciiOnly == c.asciiOnly
+                && cyclePolicy == c.cyclePolicy && maxDepth == c.maxDepth && parallelThreshold == c.parallelThreshold;
+    }
+
+    @Override
+    public int hashCode() {
+        int res = indentSize;
+        res = 31 * res + (compact ? 1 : 0);
+        res = 31 * res + (sortMapKeys ? 1 : 0);
+        res = 31 * res + (includeNulls ? 1 : 0);
+        res = 31 * res + (asciiOnly ? 1 : 0);
+        res = 31 * res + cyclePolicy.hashCode();
+        res = 31 * res + maxDepth;
+        return 31 * res + parallelThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return "WriterConfig[indentSize=" + indentSize + ", compact=" + compact + ", sortMapKeys=" + sortMapKeys
+                + ", includeNulls=" + includeNulls + ", asciiOnly=" + asciiOnly + ", cyclePolicy=" + cyclePolicy
+                + ", maxDepth=" + maxDepth + ", parallelThreshold=" + parallelThreshold + "]";
+    }
+}
@@ -0,0 +1,22 @@
+package com.friska.kompakt.annotations;
+
+import com.friska.kompakt.JSONSerialisable;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Classes which implements {@link JSONSerialisable} labeled with this annotation are treated as immutable values, whose
+ * JSON representation never changes. The first time an instance is serialised inside another object, array,
+ * collection or map, its JSON string is cached for as long as the instance is reachable, and later serialisations
+ * with the same configuration copy the cached string instead of serialising the instance again. This is meant for
+ * reference data embedded many times over, such as currencies or catalogue entries.<p>
+ * Modifying an instance after it has been serialised, including modifying the objects its fields hold, leaves the
+ * cached JSON string out of date. Caching is skipped if circular references are serialised as JSON pointers.
+ * @see JSONSerialisable
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CacheSerialised {}
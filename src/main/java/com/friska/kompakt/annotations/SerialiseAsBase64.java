@@ -0,0 +1,18 @@
+package com.friska.kompakt.annotations;
+
+import com.friska.kompakt.JSONSerialisable;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation is used to label a {@code byte[]} field variable of a class implementing {@link JSONSerialisable}
+ * as one that should be serialised as a Base64 string (see {@link java.util.Base64}), rather than a JSON array of
+ * numbers. The annotation has no effect on fields of any other type.
+ * @see JSONSerialisable
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SerialiseAsBase64 {}
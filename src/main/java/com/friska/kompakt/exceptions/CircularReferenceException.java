@@ -0,0 +1,11 @@
+package com.friska.kompakt.exceptions;
+
+/**
+ * Thrown when an object being serialised contains itself, under {@link com.friska.kompakt.CyclePolicy#FAIL}.
+ */
+public class CircularReferenceException extends RuntimeException {
+    public CircularReferenceException(String msg) {
+        super("A circular reference was found in the JSON serialisation process. " + msg);
+    }
+
+}
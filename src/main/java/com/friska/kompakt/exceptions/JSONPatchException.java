@@ -0,0 +1,12 @@
+package com.friska.kompakt.exceptions;
+
+/**
+ * Thrown when an operation of a JSON patch cannot be applied, such as when its path leads nowhere or a test fails, in
+ * which case none of the operations of the patch are left applied.
+ */
+public class JSONPatchException extends RuntimeException {
+    public JSONPatchException(String msg) {
+        super("Unable to apply JSON patch. " + msg);
+    }
+
+}
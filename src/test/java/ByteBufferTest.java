@@ -0,0 +1,100 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.WriterConfig;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation into byte buffers, and reuse of pooled string builders.
+ */
+public class ByteBufferTest {
+
+    static class Message implements JSONSerialisable {
+        String text;
+        int id;
+
+        Message(String text, int id) {
+            this.text = text;
+            this.id = id;
+        }
+    }
+
+    static class Nested implements JSONSerialisable {
+        Object inner = new Object() {
+            @Override
+            public String toString() {
+                return new Message("inner", 2).serialise(WriterConfig.DEFAULT.withCompact(true));
+            }
+        };
+    }
+
+    private static String decode(ByteBuffer buffer, int from) {
+        byte[] bytes = new byte[buffer.position() - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEncoding() {
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+            String[] texts = {"plain", "é and ß", "€ 中文", "😀 emoji", "broken \uD800 surrogate", ""};
+            for (String text : texts) {
+                Message message = new Message(text, 1);
+                buffer.clear().position(3);
+                int written = message.serialise(buffer);
+                byte[] expected = message.serialise().getBytes(StandardCharsets.UTF_8);
+                assertEquals(expected.length, written);
+                assertEquals(3 + written, buffer.position());
+                assertEquals(new String(expected, StandardCharsets.UTF_8), decode(buffer, 3));
+            }
+        }
+    }
+
+    @Test
+    public void testOverflow() {
+        Message message = new Message("é".repeat(20), 1);
+        ByteBuffer buffer = ByteBuffer.allocate(message.serialise().getBytes(StandardCharsets.UTF_8).length + 1);
+        buffer.position(2);
+        assertThrows(BufferOverflowException.class, () -> message.serialise(buffer));
+        assertEquals(2, buffer.position());
+        assertEquals(0, buffer.get(2));
+
+        int written = message.serialise(WriterConfig.DEFAULT.withCompact(true), buffer.position(0));
+        assertEquals("{\"text\":\"" + "é".repeat(20) + "\",\"id\":1}", decode(buffer, 0));
+        assertEquals(buffer.position(), written);
+    }
+
+    @Test
+    public void testReuse() {
+        //Output of earlier, larger serialisations never leaks into later ones
+        assertEquals("{\"text\":\"" + "x".repeat(10000) + "\",\"id\":1}",
+                new Message("x".repeat(10000), 1).serialise(WriterConfig.DEFAULT.withCompact(true)));
+        assertEquals("{\"text\":\"y\",\"id\":2}", new Message("y", 2).serialise(WriterConfig.DEFAULT.withCompact(true)));
+        assertEquals(Utils.strip("{\"inner\": \"{\\\"text\\\":\\\"inner\\\",\\\"id\\\":2}\"}"),
+                Utils.strip(new Nested().serialise()));
+        assertEquals("{}", new JSONObject().serialise(WriterConfig.DEFAULT.withCompact(true)));
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                int id = i;
+                futures.add(executor.submit(() -> new Message("m".repeat(id % 50), id).serialise()));
+            }
+            for (int i = 0; i < futures.size(); i++)
+                assertEquals(new Message("m".repeat(i % 50), i).serialise(), futures.get(i).get());
+        }
+    }
+}
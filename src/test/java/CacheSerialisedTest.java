@@ -0,0 +1,81 @@
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.annotations.CacheSerialised;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests caching of the JSON strings of classes annotated with {@link CacheSerialised}.
+ */
+public class CacheSerialisedTest {
+
+    @CacheSerialised
+    static class Currency implements JSONSerialisable {
+        String code;
+        int digits;
+        List<String> countries;
+
+        Currency(String code, int digits, String... countries) {
+            this.code = code;
+            this.digits = digits;
+            this.countries = List.of(countries);
+        }
+    }
+
+    static class Uncached implements JSONSerialisable {
+        String code;
+        int digits;
+        List<String> countries;
+
+        Uncached(Currency currency) {
+            this.code = currency.code;
+            this.digits = currency.digits;
+            this.countries = currency.countries;
+        }
+    }
+
+    static class Price implements JSONSerialisable {
+        double amount;
+        Object currency;
+        Object[] alternatives;
+        Map<String, Object> byName;
+
+        Price(double amount, Object currency) {
+            this.amount = amount;
+            this.currency = currency;
+            this.alternatives = new Object[]{currency, List.of(currency)};
+            this.byName = Map.of("main", currency);
+        }
+    }
+
+    @Test
+    public void testSameOutput() {
+        Currency euro = new Currency("EUR", 2, "DE", "FR");
+        WriterConfig[] configs = {WriterConfig.DEFAULT, WriterConfig.DEFAULT.withCompact(true),
+                WriterConfig.DEFAULT.withIndentSize(4), WriterConfig.DEFAULT.withIndentSize(0)};
+        for (WriterConfig config : configs) {
+            String expected = new Price(1.5, new Uncached(euro)).serialise(config);
+            //Once to fill the cache, once to copy from it
+            assertEquals(expected, new Price(1.5, euro).serialise(config));
+            assertEquals(expected, new Price(1.5, euro).serialise(config));
+        }
+        assertEquals(new Price(2, new Uncached(euro)).serialise(), new Price(2, euro).serialise());
+    }
+
+    @Test
+    public void testCached() {
+        Currency yen = new Currency("JPY", 0, "JP");
+        String before = new Price(3, yen).serialise();
+        //Modifications after the first serialisation are not seen, as the currency is assumed to be immutable
+        yen.digits = 5;
+        assertEquals(before, new Price(3, yen).serialise());
+        assertTrue(new Price(3, yen).serialise(WriterConfig.DEFAULT.withCompact(true)).contains("\"digits\":5"));
+
+        //Another instance is cached separately
+        assertTrue(new Price(3, new Currency("JPY", 5, "JP")).serialise().contains("\"digits\": 5"));
+    }
+}
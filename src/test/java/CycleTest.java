@@ -0,0 +1,133 @@
+import com.friska.kompakt.CyclePolicy;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.exceptions.CircularReferenceException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation of objects that contain themselves.
+ */
+public class CycleTest {
+
+    static class Node implements JSONSerialisable {
+        String name;
+        Node next;
+        List<Object> children = new ArrayList<>();
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void testFail() {
+        Node a = new Node("a");
+        Node b = new Node("b");
+        a.next = b;
+        b.next = a;
+        assertThrows(CircularReferenceException.class, a::serialise);
+
+        List<Object> list = new ArrayList<>();
+        list.add(list);
+        a.next = null;
+        a.children = list;
+        assertThrows(CircularReferenceException.class, a::serialise);
+
+        JSONObject object = new JSONObject();
+        object.addAttribute("self", object);
+        assertThrows(CircularReferenceException.class, object::serialise);
+    }
+
+    @Test
+    public void testNull() {
+        try {
+            JSONSerialisable.setCyclePolicy(CyclePolicy.NULL);
+            Node a = new Node("a");
+            Node b = new Node("b");
+            a.next = b;
+            b.next = a;
+            b.children.add(b);
+            testClean("{\"name\":\"a\",\"next\":{\"name\":\"b\",\"next\":null,\"children\":[null]},\"children\":[]}", a);
+        } finally {
+            JSONSerialisable.setCyclePolicy(CyclePolicy.FAIL);
+        }
+    }
+
+    @Test
+    public void testReference() {
+        try {
+            JSONSerialisable.setCyclePolicy(CyclePolicy.REFERENCE);
+            Node a = new Node("a");
+            Node b = new Node("b");
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("a/b", a);
+            map.put("b", b);
+            a.next = b;
+            a.children.add(map);
+            b.next = a;
+
+            String json = a.serialise();
+            testClean("{\"name\":\"a\",\"next\":{\"name\":\"b\",\"next\":{\"$ref\":\"#\"},\"children\":[]},"
+                    + "\"children\":[{\"a/b\":{\"$ref\":\"#\"},\"b\":{\"name\":\"b\",\"next\":{\"$ref\":\"#\"},"
+                    + "\"children\":[]}}]}", a);
+            assertEquals("#", JSONParser.parseAsObject(json).getJSONObject("next").getJSONObject("next")
+                    .getString("$ref"));
+
+            List<Object> list = new ArrayList<>();
+            list.add(map);
+            map.clear();
+            map.put("a/b", list);
+            a.next = null;
+            a.children = list;
+            testClean("{\"name\":\"a\",\"next\":null,\"children\":[{\"a/b\":{\"$ref\":\"#/children\"}}]}", a);
+
+            b.next = null;
+            b.children.add(b);
+            map.put("a/b", b);
+            testClean("{\"name\":\"a\",\"next\":null,\"children\":[{\"a/b\":{\"name\":\"b\",\"next\":null,"
+                    + "\"children\":[{\"$ref\":\"#/children/0/a~1b\"}]}}]}", a);
+        } finally {
+            JSONSerialisable.setCyclePolicy(CyclePolicy.FAIL);
+        }
+    }
+
+    @Test
+    public void testShared() {
+        Node shared = new Node("shared");
+        Node a = new Node("a");
+        a.next = shared;
+        a.children.add(shared);
+        a.children.add(new Object[]{shared, shared});
+        testClean("{\"name\":\"a\",\"next\":{\"name\":\"shared\",\"next\":null,\"children\":[]},\"children\":["
+                + "{\"name\":\"shared\",\"next\":null,\"children\":[]},"
+                + "[{\"name\":\"shared\",\"next\":null,\"children\":[]},"
+                + "{\"name\":\"shared\",\"next\":null,\"children\":[]}]]}", a);
+    }
+
+    @Test
+    public void testDeep() {
+        Node root = new Node("0");
+        Node curr = root;
+        for (int i = 1; i < 100; i++) {
+            curr.next = new Node(String.valueOf(i));
+            curr = curr.next;
+        }
+        String json = root.serialise();
+        curr.next = root;
+        assertThrows(CircularReferenceException.class, root::serialise);
+        curr.next = null;
+        assertEquals(json, root.serialise());
+    }
+
+    public <T extends JSONSerialisable> void testClean(String expected, T obj) {
+        assertEquals(Utils.strip(expected), Utils.strip(obj.serialise()));
+    }
+}
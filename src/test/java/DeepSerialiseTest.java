@@ -1,8 +1,10 @@
+import com.friska.kompakt.Attribute;
 import com.friska.kompakt.JSONSerialisable;
 import com.friska.kompakt.annotations.DeepSerialise;
 import org.junit.Test;
 
 import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 
@@ -186,6 +188,52 @@ public class DeepSerialiseTest {
 
     }
 
+    /**
+     * Tests that the flattened fields of a class are shared by its instances, and are only used by those that are deep
+     * serialised, with ignored and custom attributes applied as before.
+     */
+    @Test
+    public void testInstances(){
+
+        class Toggle extends Fish {
+            final boolean deep;
+
+            Toggle(boolean deep) {
+                super("Toggle", 1, "Fish", 0F, 2F);
+                this.deep = deep;
+            }
+
+            @Override
+            public boolean deepSerialise() {
+                return deep;
+            }
+
+            @Override
+            public String[] ignoredFields() {
+                return new String[]{"swimmingSpeed", "age"};
+            }
+        }
+
+        class Custom extends Fish {
+            Custom() {
+                super("Custom", 3, "Fish", 1F, 2F);
+            }
+
+            @Override
+            public List<Attribute> jsonAttributes() {
+                return List.of(new Attribute("custom", true));
+            }
+        }
+
+        for (int i = 0; i < 2; i++) {
+            testClean("{\"deep\":true,\"habitatDepth\":0.0,\"name\":\"Toggle\",\"species\":\"Fish\"}",
+                    new Toggle(true));
+            testClean("{\"deep\":false}", new Toggle(false));
+            testClean("{\"custom\":true,\"habitatDepth\":1.0,\"swimmingSpeed\":2.0,\"name\":\"Custom\",\"age\":3,"
+                    + "\"species\":\"Fish\"}", new Custom());
+        }
+    }
+
     public <T extends JSONSerialisable> void testClean(String expected, T obj){
         assertEquals(Utils.strip(expected), Utils.strip(obj.serialise()));
     }
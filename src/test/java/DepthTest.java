@@ -0,0 +1,74 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.NumberType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation and parsing of deeply nested JSON strings.
+ */
+public class DepthTest {
+
+    static class Node implements JSONSerialisable {
+        int depth;
+        Node next;
+        List<Object> list = new ArrayList<>();
+
+        Node(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    @Test
+    public void testParseDeep() {
+        int depth = 100000;
+        String json = "[".repeat(depth) + "1" + "]".repeat(depth);
+        Object parsed = JSONParser.parse(json, NumberType.INT, depth);
+        for (int i = 0; i < depth; i++) parsed = ((Object[]) parsed)[0];
+        assertEquals(1, parsed);
+
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse(json));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse(json, NumberType.INT, depth - 1));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("[".repeat(depth), NumberType.INT, depth));
+
+        String objects = "{\"a\": ".repeat(depth) + "{}" + "}".repeat(depth);
+        JSONObject object = (JSONObject) JSONParser.parse(objects, NumberType.INT, depth + 1);
+        for (int i = 0; i < depth; i++) object = object.getJSONObject("a");
+        assertTrue(object.isEmpty());
+    }
+
+    @Test
+    public void testSerialiseDeep() {
+        int depth = 10000;
+        Node root = new Node(0);
+        Node curr = root;
+        for (int i = 1; i < depth; i++) {
+            curr.next = new Node(i);
+            curr.list.add(List.of(i));
+            curr = curr.next;
+        }
+
+        assertThrows(IllegalArgumentException.class, root::serialise);
+        try {
+            //Indenting every level would make the JSON string quadratic in size
+            JSONSerialisable.setIndentSize(0);
+            JSONSerialisable.setMaxDepth(depth + 1);
+            String json = root.serialise();
+            JSONObject parsed = (JSONObject) JSONParser.parse(json, NumberType.INT, depth + 1);
+            for (int i = 0; i < depth - 1; i++) {
+                assertEquals(i, parsed.getNumber("depth"));
+                assertEquals(i + 1, ((Object[]) parsed.getArray("list")[0])[0]);
+                parsed = parsed.getJSONObject("next");
+            }
+            assertNull(parsed.getItem("next"));
+        } finally {
+            JSONSerialisable.setMaxDepth(1000);
+            JSONSerialisable.setIndentSize(2);
+        }
+    }
+}
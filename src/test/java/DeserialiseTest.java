@@ -0,0 +1,114 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.annotations.Ignored;
+import com.friska.kompakt.exceptions.IllegalTypeException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JSONParser#parseAs(String, Class)} and {@link JSONObject#deserialise(Class)}, for classes without a
+ * generated codec.
+ */
+public class DeserialiseTest {
+
+    @Test
+    public void testRecords() {
+        Book book = JSONParser.parseAs("""
+                {
+                  "title": "Dune",
+                  "year": 1965,
+                  "author": "Frank Herbert"
+                }
+                """, Book.class);
+        assertEquals(new Book("Dune", 1965, "Frank Herbert"), book);
+
+        //Absent attributes become default values.
+        assertEquals(new Book(null, 0, "Anonymous"), JSONParser.parseAs("{\"author\": \"Anonymous\"}", Book.class));
+
+        BookShelf shelf = JSONParser.parseAs("""
+                {
+                  "category": "Sci-fi",
+                  "books": [
+                    {"title": "Dune", "year": 1965, "author": "Frank Herbert"},
+                    {"title": "Hyperion", "year": 1989, "author": "Dan Simmons"}
+                  ]
+                }
+                """, BookShelf.class);
+        assertEquals("Sci-fi", shelf.category());
+        assertArrayEquals(new Book[]{
+                new Book("Dune", 1965, "Frank Herbert"),
+                new Book("Hyperion", 1989, "Dan Simmons")
+        }, shelf.books());
+    }
+
+    @Test
+    public void testClasses() {
+        Person person = JSONParser.parseAs("""
+                {
+                  "name": "John Doe",
+                  "age": 23,
+                  "height": 1.85,
+                  "id": 9007199254740993,
+                  "secret": "exposed",
+                  "nicknames": ["Johnny", "JD"],
+                  "status": "ACTIVE"
+                }
+                """, Person.class);
+        assertEquals("John Doe", person.name);
+        assertEquals(23, person.age);
+        assertEquals(1.85, person.height, 0);
+        assertEquals(9007199254740993L, person.id);
+        assertEquals("hidden", person.secret);
+        assertEquals(List.of("Johnny", "JD"), person.nicknames);
+        assertEquals(Status.ACTIVE, person.status);
+
+        //Round trip.
+        assertEquals(Utils.strip(person.serialise()),
+                Utils.strip(JSONParser.parseAs(person.serialise(), Person.class).serialise()));
+    }
+
+    @Test
+    public void testErrors() {
+        assertThrows(IllegalTypeException.class, () -> JSONParser.parseAs("[1, 2]", Book.class));
+        assertThrows(IllegalTypeException.class, () -> JSONParser.parseAs("{\"year\": \"soon\"}", Book.class));
+        assertThrows(IllegalTypeException.class, () -> JSONParser.parseAs("{\"status\": \"GONE\"}", Person.class));
+        assertThrows(IllegalTypeException.class, () -> JSONParser.parseAs("{}", NoConstructor.class));
+    }
+
+    record Book(String title, int year, String author) implements JSONSerialisable {}
+
+    record BookShelf(String category, Book[] books) implements JSONSerialisable {}
+
+    enum Status {ACTIVE, RETIRED}
+
+    static class Person implements JSONSerialisable {
+
+        String name;
+
+        int age;
+
+        double height;
+
+        long id;
+
+        @Ignored
+        String secret = "hidden";
+
+        List<String> nicknames;
+
+        Status status;
+    }
+
+    static class NoConstructor implements JSONSerialisable {
+
+        final int x;
+
+        NoConstructor(int x) {
+            this.x = x;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import com.friska.kompakt.JSONArray;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.WriterConfig;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests freezing {@link JSONObject}s and {@link JSONArray}s, along with their hash codes and cached JSON strings.
+ */
+public class FreezeTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    private static final String JSON = "{\"id\":7,\"name\":\"é\",\"tags\":[\"a\",[1,2]],\"inner\":{\"x\":null}}";
+
+    static class Holder implements JSONSerialisable {
+        JSONObject config;
+
+        Holder(JSONObject config) {
+            this.config = config;
+        }
+    }
+
+    @Test
+    public void testFreeze() {
+        JSONObject object = JSONParser.parseAsObject(JSON, NumberType.INT);
+        JSONObject inner = object.getJSONObject("inner");
+        assertSame(object, object.freeze());
+        assertTrue(object.isFrozen());
+        assertTrue(inner.isFrozen());
+        assertThrows(UnsupportedOperationException.class, () -> object.addAttribute("new", 1));
+        assertThrows(UnsupportedOperationException.class, () -> object.removeAttribute("id"));
+        assertThrows(UnsupportedOperationException.class, () -> inner.addLong("y", 1));
+
+        //Arrays are replaced by frozen JSON arrays
+        JSONArray tags = object.getJSONArray("tags");
+        assertTrue(tags.isFrozen());
+        assertTrue(tags.getJSONArray(1).isFrozen());
+        assertThrows(UnsupportedOperationException.class, () -> tags.add("b"));
+        assertThrows(UnsupportedOperationException.class, () -> tags.getJSONArray(1).asList().set(0, 3));
+        assertArrayEquals(new Object[]{"a", tags.get(1)}, object.getArray("tags"));
+
+        //Frozen objects contain themselves without looping forever
+        JSONObject cycle = new JSONObject();
+        cycle.addAttribute("self", cycle).freeze();
+        assertTrue(cycle.isFrozen());
+    }
+
+    @Test
+    public void testHashCode() {
+        JSONObject parsed = JSONParser.parseAsObject(JSON, NumberType.INT);
+        JSONObject frozen = JSONParser.parseAsObject(JSON, NumberType.INT).freeze();
+        JSONObject reordered = new JSONObject()
+                .addAttribute("inner", new JSONObject().addAttribute("x", null))
+                .addAttribute("tags", new Object[]{"a", new Object[]{1, 2}})
+                .addAttribute("name", "é")
+                .addAttribute("id", 7);
+        assertEquals(parsed, frozen);
+        assertEquals(frozen, reordered);
+        assertEquals(parsed.hashCode(), frozen.hashCode());
+        assertEquals(frozen.hashCode(), reordered.hashCode());
+        assertEquals(frozen.hashCode(), frozen.hashCode());
+
+        Map<JSONObject, String> map = new HashMap<>();
+        map.put(frozen, "value");
+        assertEquals("value", map.get(reordered));
+        assertNotEquals(frozen, reordered.addAttribute("extra", 1));
+
+        //Integral members are equal and hashed alike, however they are stored
+        JSONObject longs = new JSONObject().addLong("n", 1).addAttribute("d", 1.5).freeze();
+        JSONObject ints = new JSONObject().addAttribute("n", 1).addAttribute("d", 1.5f);
+        assertEquals(longs, ints);
+        assertEquals(ints, longs);
+        assertEquals(longs.hashCode(), ints.hashCode());
+        map.put(longs, "number");
+        assertEquals("number", map.get(ints.freeze()));
+    }
+
+    @Test
+    public void testCachedSerialise() {
+        JSONObject object = JSONParser.parseAsObject(JSON, NumberType.INT);
+        String compact = object.serialise(COMPACT);
+        String pretty = object.serialise();
+        object.freeze();
+        assertEquals(compact, object.serialise(COMPACT));
+        assertSame(object.serialise(COMPACT), object.serialise(COMPACT));
+        assertEquals(pretty, object.serialise());
+        assertEquals(pretty, object.toString());
+
+        //Nested inside other values, the JSON string is cached at the indentation it is written at
+        assertEquals(Utils.strip("{\"config\":" + JSON + "}"), Utils.strip(new Holder(object).serialise()));
+        assertEquals("{\"config\":" + compact + "}", new Holder(object).serialise(COMPACT));
+        assertEquals(new Holder(JSONParser.parseAsObject(JSON, NumberType.INT)).serialise(),
+                new Holder(object).serialise());
+        assertEquals("[" + compact + "]", JSONArray.of(object).serialise(COMPACT));
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int written = object.serialise(COMPACT, buffer);
+        assertEquals(compact, new String(buffer.array(), 0, written, StandardCharsets.UTF_8));
+        assertEquals(compact.getBytes(StandardCharsets.UTF_8).length, written);
+    }
+}
@@ -0,0 +1,140 @@
+import com.friska.kompakt.JSONArray;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.ParserConfig;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.exceptions.IllegalTypeException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link JSONArray}, along with its specialisations for longs and doubles.
+ */
+public class JSONArrayTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    static class Series implements JSONSerialisable {
+        String name = "cpu";
+        JSONArray points = JSONArray.ofDoubles(0.5, 1.5);
+        JSONArray tags = JSONArray.of("a", null, List.of(1));
+    }
+
+    @Test
+    public void testModify() {
+        JSONArray array = new JSONArray().add("a").add(1).add(null);
+        array.insert(0, true);
+        array.insert(4, "end");
+        assertEquals(5, array.size());
+        assertEquals(Boolean.TRUE, array.getBool(0));
+        assertEquals("a", array.remove(1));
+        assertEquals(1, array.set(1, 2.5));
+        assertEquals(2.5, array.getDouble(1), 0);
+        assertEquals(List.of(true, 2.5), array.asList().subList(0, 2));
+        assertArrayEquals(new Object[]{true, 2.5, null, "end"}, array.toArray());
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.insert(5, 0));
+        assertThrows(IllegalTypeException.class, () -> array.getString(0));
+        array.asList().add("list");
+        assertEquals("list", array.getString(4));
+        array.clear();
+        assertTrue(array.isEmpty());
+    }
+
+    @Test
+    public void testSpecialised() {
+        JSONArray longs = new JSONArray().addLong(1).addLong(2);
+        longs.add(3L);
+        longs.insert(0, 0L);
+        assertArrayEquals(new long[]{0, 1, 2, 3}, longs.toLongArray());
+        assertEquals(Long.valueOf(2), longs.getNumber(2));
+        assertEquals(JSONArray.of(0L, 1L, 2L, 3L), longs);
+        assertEquals(JSONArray.of(0L, 1L, 2L, 3L).hashCode(), longs.hashCode());
+
+        //Adding an element of another type boxes every element
+        longs.addDouble(4.5);
+        assertEquals(JSONArray.of(0L, 1L, 2L, 3L, 4.5), longs);
+        assertEquals(3.0, longs.getDouble(3), 0);
+
+        JSONArray doubles = JSONArray.ofDoubles(1, 2.5);
+        assertEquals(2, doubles.getLong(1));
+        assertArrayEquals(new double[]{1, 2.5}, doubles.toDoubleArray(), 0);
+        assertEquals(Double.valueOf(1), doubles.remove(0));
+        assertEquals("[2.5]", doubles.serialise(COMPACT));
+    }
+
+    @Test
+    public void testSerialise() {
+        assertEquals("{\"name\":\"cpu\",\"points\":[0.5,1.5],\"tags\":[\"a\",null,[1]]}",
+                new Series().serialise(COMPACT));
+        assertEquals(Utils.strip("{\"name\":\"cpu\",\"points\":[0.5,1.5],\"tags\":[\"a\",null,[1]]}"),
+                Utils.strip(new Series().serialise()));
+        JSONArray array = new JSONArray(8).add(new JSONObject().addAttribute("a", 1)).add(JSONArray.ofLongs());
+        assertEquals("[\n  {\n    \"a\": 1\n  },\n  7\n]",
+                JSONArray.of(new JSONObject().addAttribute("a", 1), 7).serialise(WriterConfig.DEFAULT.withIndentSize(2)));
+        assertEquals("[{\"a\":1},[]]", array.serialise(COMPACT));
+        assertEquals("[]", new JSONArray().serialise(COMPACT));
+    }
+
+    @Test
+    public void testObjectAccess() {
+        JSONObject object = JSONParser.parseAsObject("{\"a\":[1,[2,3]],\"n\":[1.5,2]}", NumberType.DOUBLE);
+        JSONArray a = object.getJSONArray("a");
+        a.add("x");
+        assertSame(a, object.getItem("a"));
+        assertEquals("[1.0,[2.0,3.0],\"x\"]", a.serialise(COMPACT));
+        a.getJSONArray(1).addDouble(4);
+        assertArrayEquals(new Object[]{2.0, 3.0, 4.0}, a.getJSONArray(1).toArray());
+        assertArrayEquals(new Object[]{1.0, a.get(1), "x"}, object.getArray("a"));
+        assertArrayEquals(new double[]{1.5, 2}, object.getDoubleArray("n"), 0);
+        assertThrows(IllegalTypeException.class, () -> new JSONObject().addAttribute("s", "").getJSONArray("s"));
+    }
+
+    @Test
+    public void testParse() {
+        JSONArray array = JSONParser.parseAsJSONArray("[1, [], [\"a\", {\"b\": [true]}]]");
+        assertEquals(1.0f, array.get(0));
+        assertTrue(array.getJSONArray(1).isEmpty());
+        assertTrue(array.getJSONArray(2).getJSONObject(1).getItem("b") instanceof JSONArray);
+        assertThrows(IllegalTypeException.class, () -> JSONParser.parseAsJSONArray("{}"));
+
+        ParserConfig config = ParserConfig.DEFAULT.withJSONArrays(true).withUnboxedPrimitives(true);
+        JSONArray ints = (JSONArray) JSONParser.parse("[1,2,3]", config.withNumberType(NumberType.INT));
+        assertEquals(Long.valueOf(2), ints.get(1));
+        JSONArray doubles = (JSONArray) JSONParser.parse("[1,2.5]", config.withNumberType(NumberType.DOUBLE));
+        assertArrayEquals(new double[]{1, 2.5}, doubles.toDoubleArray(), 0);
+        JSONArray floats = (JSONArray) JSONParser.parse("[0.1,true]", config);
+        assertEquals("[0.1,true]", floats.serialise(COMPACT));
+    }
+
+    @Test
+    public void testNumberEquality() {
+        //The same document parsed with and without unboxed primitives
+        for (NumberType type : new NumberType[]{NumberType.INT, NumberType.FLOAT}) {
+            ParserConfig config = ParserConfig.DEFAULT.withNumberType(type);
+            JSONObject boxed = (JSONObject) JSONParser.parse("{\"a\":[1,2,3]}", config);
+            JSONObject unboxed = (JSONObject) JSONParser.parse("{\"a\":[1,2,3]}", config.withUnboxedPrimitives(true));
+            assertEquals(boxed, unboxed);
+            assertEquals(boxed.hashCode(), unboxed.hashCode());
+        }
+        assertEquals(JSONArray.of(new int[]{1, 2}), JSONArray.of((Object) new Integer[]{1, 2}));
+        assertEquals(JSONArray.of(new float[]{1.5f}), JSONArray.of((Object) new Float[]{1.5f}));
+        assertEquals(JSONArray.of(new float[]{1.5f}).hashCode(), JSONArray.of((Object) new Float[]{1.5f}).hashCode());
+        assertEquals(JSONArray.of(1, (short) 2), JSONArray.ofLongs(1, 2));
+        assertEquals(JSONArray.of(1, 2).hashCode(), JSONArray.ofLongs(1, 2).hashCode());
+        assertEquals(JSONArray.of(1.5f), JSONArray.ofDoubles(1.5));
+        assertNotEquals(JSONArray.of(1), JSONArray.of(1.0));
+
+        //Arrays other than JSON arrays held by objects are compared where they are
+        JSONObject ints = new JSONObject().addAttribute("a", new Object[]{new int[]{1, 2}, new float[]{0.5f}});
+        JSONObject boxed = new JSONObject().addAttribute("a", new Object[]{new Long[]{1L, 2L}, new double[]{0.5}});
+        assertEquals(ints, boxed);
+        assertEquals(ints.hashCode(), boxed.hashCode());
+        assertNotEquals(ints, new JSONObject().addAttribute("a", new Object[]{new int[]{1, 3}, new float[]{0.5f}}));
+    }
+}
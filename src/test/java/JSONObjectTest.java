@@ -1,9 +1,15 @@
 import com.friska.kompakt.exceptions.AttributeNotFoundException;
 import com.friska.kompakt.exceptions.IllegalTypeException;
+import com.friska.kompakt.Attribute;
 import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.NumberType;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -366,6 +372,78 @@ public class JSONObjectTest {
         );
     }
 
+    /**
+     * This method tests that order and lookups are kept through many removals, which leave gaps that are compacted.
+     */
+    @Test
+    public void testRemovals(){
+        JSONObject o = new JSONObject();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            o.addAttribute("k" + i, i);
+            expected.add("k" + i);
+            if (i % 3 == 0) {
+                String removed = "k" + (i / 2);
+                if (o.contains(removed)) {
+                    assertEquals(i / 2, o.removeAttribute(removed));
+                    expected.remove(removed);
+                }
+            }
+        }
+        assertEquals(expected, o.jsonAttributes().stream().map(Attribute::name).toList());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(expected.contains("k" + i), o.contains("k" + i));
+
+        //Removing everything, then adding again
+        for (String name : expected) o.removeAttribute(name);
+        assertTrue(o.isEmpty());
+        assertThrows(AttributeNotFoundException.class, () -> o.removeAttribute("k1"));
+        o.addAttribute("k1", "again").addAttribute("a", null);
+        assertEquals("{\"k1\":\"again\",\"a\":null}", Utils.strip(o.serialise()));
+        assertEquals(new JSONObject().addAttribute("a", null).addAttribute("k1", "again"), o);
+        assertNotEquals(new JSONObject().addAttribute("a", null).addAttribute("k2", "again"), o);
+    }
+
+    /**
+     * This method tests objects sharing the same names, which are changed independently of one another.
+     */
+    @Test
+    public void testSharedNames(){
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++)
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"n").append(i).append("\"}");
+        Object[] rows = JSONParser.parseAsArray(json.append("]").toString(), NumberType.INT);
+        for (int i = 0; i < rows.length; i++) {
+            JSONObject row = (JSONObject) rows[i];
+            assertEquals(i, row.getNumber("id"));
+            assertEquals("n" + i, row.getString("name"));
+        }
+
+        JSONObject first = (JSONObject) rows[0], second = (JSONObject) rows[1], third = (JSONObject) rows[2];
+        first.removeAttribute("id");
+        second.addAttribute("extra", true);
+        third.addAttribute("extra", false).removeAttribute("name");
+        assertFalse(first.contains("id"));
+        assertEquals("n0", first.getString("name"));
+        assertEquals(1, second.getNumber("id"));
+        assertEquals(true, second.getBool("extra"));
+        assertEquals(false, third.getBool("extra"));
+        assertFalse(third.contains("name"));
+        assertEquals(3, ((JSONObject) rows[3]).getNumber("id"));
+        assertFalse(((JSONObject) rows[3]).contains("extra"));
+        assertEquals(Utils.strip("{\"id\":1,\"name\":\"n1\",\"extra\":true}"), Utils.strip(second.serialise()));
+        assertEquals(rows[4], new JSONObject().addAttribute("name", "n4").addAttribute("id", 4));
+
+        //Objects with many names, or names that are unlikely to be shared
+        JSONObject wide = new JSONObject();
+        for (int i = 0; i < 200; i++) wide.addAttribute("w" + i, i);
+        for (int i = 0; i < 200; i += 2) wide.removeAttribute("w" + i);
+        for (int i = 200; i < 300; i++) wide.addAttribute("w" + i, i);
+        for (int i = 0; i < 300; i++) assertEquals(i % 2 == 1 || i >= 200, wide.contains("w" + i));
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, new JSONObject().addAttribute("unique" + i, i).getNumber("unique" + i));
+    }
+
     public void assertEqualsArray(Object[] expected, Object[] actual){
         if(expected == null && actual == null) return;
         if(expected == null || actual == null) fail();
@@ -0,0 +1,128 @@
+import com.friska.kompakt.JSONArray;
+import com.friska.kompakt.JSONDiff;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONPatch;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.ParserConfig;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.exceptions.JSONPatchException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests computing JSON patches with {@link JSONDiff} and applying them with {@link JSONPatch}, which must turn the
+ * source document into the target one.
+ */
+public class JSONPatchTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    private static Object parse(String json, boolean jsonArrays) {
+        return JSONParser.parse(json, ParserConfig.DEFAULT.withJSONArrays(jsonArrays).withNumberType(NumberType.INT));
+    }
+
+    /**
+     * Asserts that the patch computed between two documents turns a fresh copy of the first into the second.
+     */
+    private static JSONArray assertRoundTrip(String source, String target) {
+        JSONArray patch = null;
+        for (boolean jsonArrays : new boolean[]{false, true}) {
+            patch = JSONDiff.diff(parse(source, jsonArrays), parse(target, jsonArrays));
+            Object patched = JSONPatch.apply(parse(source, jsonArrays),
+                    JSONParser.parse(patch.serialise(COMPACT), NumberType.INT));
+            assertEquals("[" + target + "]", new JSONArray().add(patched).serialise(COMPACT));
+        }
+        return patch;
+    }
+
+    @Test
+    public void testDiffObjects() {
+        JSONArray patch = assertRoundTrip("{\"a\":1,\"b\":{\"c\":2,\"d\":[1,2]},\"e\":\"x\"}",
+                "{\"a\":1,\"b\":{\"c\":3,\"d\":[1,2]},\"f\":null}");
+        assertEquals("[{\"op\":\"remove\",\"path\":\"/e\"},{\"op\":\"add\",\"path\":\"/f\",\"value\":null},"
+                + "{\"op\":\"replace\",\"path\":\"/b/c\",\"value\":3}]", patch.serialise(COMPACT));
+        assertEquals(0, JSONDiff.diff(parse("{\"a\":[1,{\"b\":2}]}", false), parse("{\"a\":[1,{\"b\":2}]}", true)).size());
+        assertRoundTrip("{\"a/b\":{\"~\":1}}", "{\"a/b\":{\"~\":2}}");
+        assertRoundTrip("{\"a\":{\"b\":1}}", "{\"a\":[1]}");
+        assertRoundTrip("{\"a\":1}", "[1]");
+    }
+
+    @Test
+    public void testDiffArrays() {
+        JSONArray patch = assertRoundTrip("[1,2,3,4,5,6]", "[1,2,9,3,4,6]");
+        assertEquals("[{\"op\":\"add\",\"path\":\"/2\",\"value\":9},{\"op\":\"remove\",\"path\":\"/5\"}]",
+                patch.serialise(COMPACT));
+        assertRoundTrip("[]", "[1,2]");
+        assertRoundTrip("[1,2]", "[]");
+        assertRoundTrip("[{\"id\":1},{\"id\":2},{\"id\":3}]", "[{\"id\":2},{\"id\":3,\"x\":true},{\"id\":4}]");
+        assertRoundTrip("[[1,2],[3],[4,5]]", "[[1],[3,3],[5,4],[6]]");
+        assertRoundTrip("[1,\"a\",null,true]", "[true,null,\"a\",1]");
+        assertRoundTrip("{\"a\":[1,2,3]}", "{\"a\":[3,2,1,0]}");
+    }
+
+    @Test
+    public void testOperations() {
+        JSONObject doc = JSONParser.parseAsObject("{\"a\":{\"b\":[1,2]},\"c\":\"x\"}", NumberType.INT);
+        Object res = JSONPatch.apply(doc, JSONParser.parse("["
+                + "{\"op\":\"add\",\"path\":\"/a/b/-\",\"value\":3},"
+                + "{\"op\":\"move\",\"from\":\"/c\",\"path\":\"/a/c\"},"
+                + "{\"op\":\"copy\",\"from\":\"/a\",\"path\":\"/d\"},"
+                + "{\"op\":\"replace\",\"path\":\"/d/b/0\",\"value\":0},"
+                + "{\"op\":\"test\",\"path\":\"/a/b\",\"value\":[1,2,3]},"
+                + "{\"op\":\"remove\",\"path\":\"/a/b/1\"}]", NumberType.INT));
+        assertSame(doc, res);
+        assertEquals("{\"a\":{\"b\":[1,3],\"c\":\"x\"},\"d\":{\"b\":[0,2,3],\"c\":\"x\"}}", doc.serialise(COMPACT));
+
+        //A plain array held as the root is replaced if its length changes
+        int[] array = {1, 2};
+        Object grown = JSONPatch.apply(array, new Object[]{new JSONObject().addAttribute("op", "add")
+                .addAttribute("path", "/0").addAttribute("value", 0)});
+        assertTrue(grown instanceof JSONArray);
+        assertEquals("[0,1,2]", ((JSONArray) grown).serialise(COMPACT));
+        assertArrayEquals(new int[]{1, 2}, array);
+        assertEquals("y", JSONPatch.apply(doc, new Object[]{new JSONObject().addAttribute("op", "replace")
+                .addAttribute("path", "").addAttribute("value", "y")}));
+    }
+
+    @Test
+    public void testRollback() {
+        String json = "{\"a\":{\"b\":[1,2]},\"c\":\"x\",\"n\":[1,2]}";
+        JSONObject doc = JSONParser.parseAsObject(json, NumberType.INT);
+        String[] failing = {
+                "{\"op\":\"test\",\"path\":\"/c\",\"value\":\"y\"}",
+                "{\"op\":\"remove\",\"path\":\"/missing\"}",
+                "{\"op\":\"add\",\"path\":\"/a/b/5\",\"value\":1}",
+                "{\"op\":\"move\",\"from\":\"/a\",\"path\":\"/a/b/0\"}",
+                "{\"op\":\"jump\",\"path\":\"/a\"}",
+                "{\"path\":\"/a\"}"};
+        for (String op : failing) {
+            String patch = "[{\"op\":\"add\",\"path\":\"/a/b/0\",\"value\":0},{\"op\":\"remove\",\"path\":\"/c\"},"
+                    + "{\"op\":\"add\",\"path\":\"/n/-\",\"value\":3},{\"op\":\"replace\",\"path\":\"/a\",\"value\":1},"
+                    + op + "]";
+            assertThrows(JSONPatchException.class, () -> JSONPatch.apply(doc, JSONParser.parse(patch)));
+            assertEquals(JSONParser.parseAsObject(json, NumberType.INT), doc);
+            assertTrue(doc.getItem("n") instanceof Object[]);
+        }
+        assertThrows(IllegalArgumentException.class, () -> JSONPatch.apply(doc, new JSONObject()));
+    }
+
+    @Test
+    public void testNumbers() {
+        JSONObject doc = JSONParser.parseAsObject("{\"a\":1,\"b\":1.5}", NumberType.DOUBLE);
+        JSONPatch.apply(doc, JSONParser.parse("[{\"op\":\"test\",\"path\":\"/a\",\"value\":1},"
+                + "{\"op\":\"test\",\"path\":\"/b\",\"value\":1.50}]", NumberType.FLOAT));
+        assertEquals(0, JSONDiff.diff(doc, doc).size());
+        assertEquals(0, JSONDiff.diff(new JSONObject().addAttribute("n", 1), new JSONObject().addLong("n", 1)).size());
+
+        //Numbers are compared by value inside objects and arrays as well
+        JSONObject nested = JSONParser.parseAsObject("{\"o\":{\"b\":1},\"a\":[1,[2]]}", NumberType.INT);
+        JSONPatch.apply(nested, JSONParser.parse("[{\"op\":\"test\",\"path\":\"/o\",\"value\":{\"b\":1.0}},"
+                + "{\"op\":\"test\",\"path\":\"/a\",\"value\":[1,[2.0]]}]", NumberType.DOUBLE));
+        assertThrows(JSONPatchException.class, () -> JSONPatch.apply(nested, JSONParser.parse(
+                "[{\"op\":\"test\",\"path\":\"/o\",\"value\":{\"b\":1,\"c\":2}}]", NumberType.DOUBLE)));
+        assertThrows(JSONPatchException.class, () -> JSONPatch.apply(nested, JSONParser.parse(
+                "[{\"op\":\"test\",\"path\":\"/a\",\"value\":[1,[3]]}]", NumberType.DOUBLE)));
+    }
+}
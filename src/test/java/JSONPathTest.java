@@ -0,0 +1,98 @@
+import com.friska.kompakt.JSONArray;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONPath;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.ParserConfig;
+import com.friska.kompakt.PersistentJSONObject;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests compiling and evaluating {@link JSONPath}s, both JSON pointers and JSONPath expressions.
+ */
+public class JSONPathTest {
+
+    private static final String JSON = "{\"store\":{\"books\":[" +
+            "{\"title\":\"A\",\"price\":8.95,\"tags\":[\"x\"]}," +
+            "{\"title\":\"B\",\"price\":12.99}," +
+            "{\"title\":\"C\",\"price\":8,\"isbn\":\"0-1\"}]," +
+            "\"bike\":{\"color\":\"red\",\"price\":19.95}}," +
+            "\"a/b\":{\"m~n\":1},\"empty\":null}";
+
+    @Test
+    public void testPointer() {
+        JSONObject root = JSONParser.parseAsObject(JSON, NumberType.DOUBLE);
+        assertSame(root, JSONPath.compile("").find(root));
+        assertEquals("B", JSONPath.compile("/store/books/1/title").find(root));
+        assertEquals("red", JSONPath.compile("/store/bike/color").find(root));
+        assertEquals(1.0, JSONPath.compile("/a~1b/m~0n").find(root));
+        assertTrue(JSONPath.compile("/store/books/0/tags/0").isDefinite());
+        assertEquals("x", JSONPath.compile("/store/books/0/tags/0").find(root));
+
+        //Missing values are told from null values
+        assertNull(JSONPath.compile("/store/books/3").find(root));
+        assertFalse(JSONPath.compile("/store/books/3").exists(root));
+        assertFalse(JSONPath.compile("/store/books/-").exists(root));
+        assertFalse(JSONPath.compile("/store/books/01").exists(root));
+        assertTrue(JSONPath.compile("/empty").exists(root));
+        assertNull(JSONPath.compile("/empty/x").find(root));
+        assertEquals(List.of(), JSONPath.compile("/nothing").findAll(root));
+
+        assertThrows(IllegalArgumentException.class, () -> JSONPath.compile("store"));
+        assertThrows(IllegalArgumentException.class, () -> JSONPath.compile("/a~2"));
+    }
+
+    @Test
+    public void testTrees() {
+        JSONPath path = JSONPath.compile("/store/books/2/price");
+        Object parsed = JSONParser.parse(JSON, ParserConfig.DEFAULT.withJSONArrays(true)
+                .withUnboxedPrimitives(true).withNumberType(NumberType.DOUBLE));
+        assertTrue(((JSONObject) parsed).getJSONObject("store").getItem("books") instanceof JSONArray);
+        assertEquals(8.0, path.find(parsed));
+        JSONObject root = JSONParser.parseAsObject(JSON, NumberType.DOUBLE);
+        assertEquals(8.0, path.find(PersistentJSONObject.from(root)));
+        assertEquals(2, JSONPath.compile("/1/0").find(new Object[]{null, new int[]{2}}));
+        assertEquals("b", JSONPath.compile("/0/1").find(List.of(List.of("a", "b"))));
+    }
+
+    @Test
+    public void testJSONPath() {
+        JSONObject root = JSONParser.parseAsObject(JSON, NumberType.DOUBLE);
+        assertTrue(JSONPath.compile("$.store.books[1]['title']").isDefinite());
+        assertEquals("B", JSONPath.compile("$.store.books[1]['title']").find(root));
+        assertEquals("C", JSONPath.compile("$.store.books[-1].title").find(root));
+        assertEquals(List.of("A", "B", "C"), JSONPath.compile("$.store.books[*].title").findAll(root));
+        assertEquals(List.of(8.95, 12.99, 8.0, 19.95), JSONPath.compile("$..price").findAll(root));
+        assertEquals(List.of(8.95, 12.99, 8.0, 19.95), JSONPath.compile("$.store..['price']").findAll(root));
+        assertEquals(2, JSONPath.compile("$.store.*").findAll(root).size());
+        assertFalse(JSONPath.compile("$..price").isDefinite());
+        assertEquals(8.95, JSONPath.compile("$..price").find(root));
+    }
+
+    @Test
+    public void testFilters() {
+        JSONObject root = JSONParser.parseAsObject(JSON, NumberType.FLOAT);
+        assertEquals(List.of("A", "C"), titles("$.store.books[?(@.price < 10)]", root));
+        assertEquals(List.of("A"), titles("$.store.books[?(@.price == 8.95)]", root));
+        assertEquals(List.of("C"), titles("$.store.books[?(@.isbn)]", root));
+        assertEquals(List.of("A", "C"), titles("$.store.books[?(@.tags || @.isbn)]", root));
+        assertEquals(List.of("B"), titles("$.store.books[?(@.price >= 10 && @.title != 'A')]", root));
+        assertEquals(List.of("A"), titles("$.store.books[?(@.tags[0] == \"x\")]", root));
+        assertEquals(List.of("A", "B", "C"), titles("$.store.books[?(@.title >= 'A')]", root));
+        assertEquals(List.of(), titles("$.store.books[?(@.title < 5)]", root));
+        assertEquals(List.of("red"), JSONPath.compile("$..[?(@.color)].color").findAll(root));
+
+        assertThrows(IllegalArgumentException.class, () -> JSONPath.compile("$.store[?(@..price)]"));
+        assertThrows(IllegalArgumentException.class, () -> JSONPath.compile("$.store[?(@.price < )]"));
+        assertThrows(IllegalArgumentException.class, () -> JSONPath.compile("$.store.books[1"));
+        assertThrows(IllegalArgumentException.class, () -> JSONPath.compile("$store"));
+    }
+
+    private static List<Object> titles(String path, JSONObject root) {
+        return JSONPath.compile(path).findAll(root).stream().map(b -> ((JSONObject) b).getItem("title")).toList();
+    }
+}
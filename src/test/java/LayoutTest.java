@@ -0,0 +1,111 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.annotations.CacheSerialised;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the exact layout of pretty JSON strings, including their whitespace, which must be the same whether values are
+ * written as usual, copied from a cache, or copied from the encodings of tracked objects.
+ */
+public class LayoutTest {
+
+    private static final WriterConfig PRETTY = WriterConfig.DEFAULT.withIndentSize(2);
+
+    private static final String EXPECTED = String.join("\n",
+            "{",
+            "  \"id\": 7,",
+            "  \"inner\": {",
+            "    \"x\": 1,",
+            "    \"s\": \"a\"",
+            "  },",
+            "  \"grid\": [",
+            "    [",
+            "      1,",
+            "      2",
+            "    ],",
+            "    [",
+            "      3",
+            "    ]",
+            "  ],",
+            "  \"mixed\": [",
+            "    1,",
+            "    {",
+            "      \"x\": 1,",
+            "      \"s\": \"a\"",
+            "    },",
+            "    [",
+            "      \"x\"",
+            "    ],",
+            "    [",
+            "      5",
+            "    ]",
+            "  ],",
+            "  \"json\": {",
+            "    \"k\": {",
+            "      \"v\": [",
+            "        1",
+            "      ]",
+            "    },",
+            "    \"arr\": [",
+            "      {",
+            "        \"z\": 0",
+            "      },",
+            "      [",
+            "        1",
+            "      ]",
+            "    ]",
+            "  }",
+            "}");
+
+    static class Inner implements JSONSerialisable {
+        int x = 1;
+        String s = "a";
+    }
+
+    @CacheSerialised
+    static class CachedInner implements JSONSerialisable {
+        int x = 1;
+        String s = "a";
+    }
+
+    static class Document implements JSONSerialisable {
+        int id = 7;
+        JSONSerialisable inner;
+        int[][] grid = {{1, 2}, {3}};
+        Object[] mixed;
+        JSONObject json;
+
+        Document(JSONSerialisable inner, JSONObject json) {
+            this.inner = inner;
+            this.mixed = new Object[]{1, inner, new Object[]{"x"}, List.of(5)};
+            this.json = json;
+        }
+    }
+
+    private static JSONObject json() {
+        return new JSONObject()
+                .addAttribute("k", new JSONObject().addAttribute("v", new int[]{1}))
+                .addAttribute("arr", new Object[]{new JSONObject().addAttribute("z", 0), new Object[]{1}});
+    }
+
+    @Test
+    public void testPretty() {
+        assertEquals(EXPECTED, new Document(new Inner(), json()).serialise(PRETTY));
+    }
+
+    @Test
+    public void testCachedAndTracked() {
+        Document cached = new Document(new CachedInner(), json().freeze());
+        assertEquals(EXPECTED, cached.serialise(PRETTY));
+        assertEquals(EXPECTED, cached.serialise(PRETTY));
+
+        Document tracked = new Document(new Inner(), json().trackChanges());
+        assertEquals(EXPECTED, tracked.serialise(PRETTY));
+        assertEquals(EXPECTED, tracked.serialise(PRETTY));
+    }
+}
@@ -0,0 +1,85 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation of fields holding a {@link Map}.
+ */
+public class MapSerialiseTest {
+
+    @Test
+    public void testMaps() {
+
+        class Tables implements JSONSerialisable {
+            Map<String, Integer> scores = new LinkedHashMap<>();
+            Map<Integer, String> names = new LinkedHashMap<>();
+            Map<String, Object> nested = new LinkedHashMap<>();
+            Map<String, String> empty = new HashMap<>();
+        }
+
+        Tables tables = new Tables();
+        tables.scores.put("bob", 3);
+        tables.scores.put("alice", 10);
+        tables.scores.put("quote\"d", null);
+        tables.names.put(2, "two");
+        tables.names.put(1, "one");
+        tables.nested.put("list", List.of(1, 2));
+        tables.nested.put("map", Map.of("x", true));
+        tables.nested.put("object", new JSONObject().addAttribute("y", "z"));
+
+        String expected = """
+                {
+                  "scores": {"bob": 3, "alice": 10, "quote\\"d": null},
+                  "names": {"2": "two", "1": "one"},
+                  "nested": {"list": [1, 2], "map": {"x": true}, "object": {"y": "z"}},
+                  "empty": {}
+                }
+                """;
+        testClean(expected, tables);
+
+        //Serialised maps are parsed back as JSON objects.
+        JSONObject parsed = JSONParser.parseAsObject(tables.serialise());
+        assertEquals(10F, parsed.getJSONObject("scores").getNumber("alice"));
+        assertEquals("one", parsed.getJSONObject("names").getString("1"));
+    }
+
+    @Test
+    public void testSortedKeys() {
+
+        class Table implements JSONSerialisable {
+            final Map<Object, Integer> map;
+
+            Table(Map<Object, Integer> map) {
+                this.map = map;
+            }
+        }
+
+        Map<Object, Integer> map = new LinkedHashMap<>();
+        map.put("b", 2);
+        map.put("c", 3);
+        map.put("a", 1);
+        map.put(10, 4);
+
+        try {
+            JSONSerialisable.setSortMapKeys(true);
+            testClean("{\"map\": {\"10\": 4, \"a\": 1, \"b\": 2, \"c\": 3}}", new Table(map));
+            testClean("{\"map\": {\"a\": 1, \"b\": 2}}", new Table(new TreeMap<>(Map.of("b", 2, "a", 1))));
+
+            TreeMap<Object, Integer> reversed = new TreeMap<>(Comparator.comparing(Object::toString).reversed());
+            reversed.putAll(Map.of("b", 2, "a", 1));
+            testClean("{\"map\": {\"a\": 1, \"b\": 2}}", new Table(reversed));
+        } finally {
+            JSONSerialisable.setSortMapKeys(false);
+        }
+        testClean("{\"map\": {\"b\": 2, \"c\": 3, \"a\": 1, \"10\": 4}}", new Table(map));
+    }
+
+    public <T extends JSONSerialisable> void testClean(String expected, T obj) {
+        assertEquals(Utils.strip(expected), Utils.strip(obj.serialise()));
+    }
+}
@@ -0,0 +1,86 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.WriterConfig;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests applying JSON merge patches through {@link JSONObject#merge(JSONObject)} and
+ * {@link JSONObject#merged(JSONObject)}, which must yield the same object.
+ */
+public class MergePatchTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    private static JSONObject parse(String json) {
+        return JSONParser.parseAsObject(json, NumberType.INT);
+    }
+
+    /**
+     * Asserts that merging a patch into an object yields the expected object, in place or not.
+     */
+    private static void assertMerge(String target, String patch, String expected) {
+        JSONObject original = parse(target);
+        JSONObject merged = original.merged(parse(patch));
+        assertEquals(expected, merged.serialise(COMPACT));
+        assertEquals(parse(target), original);
+        assertEquals(expected, parse(target).merge(parse(patch)).serialise(COMPACT));
+    }
+
+    @Test
+    public void testRFCExamples() {
+        assertMerge("{\"a\":\"b\"}", "{\"a\":\"c\"}", "{\"a\":\"c\"}");
+        assertMerge("{\"a\":\"b\"}", "{\"b\":\"c\"}", "{\"a\":\"b\",\"b\":\"c\"}");
+        assertMerge("{\"a\":\"b\"}", "{\"a\":null}", "{}");
+        assertMerge("{\"a\":\"b\",\"b\":\"c\"}", "{\"a\":null}", "{\"b\":\"c\"}");
+        assertMerge("{\"a\":[\"b\"]}", "{\"a\":\"c\"}", "{\"a\":\"c\"}");
+        assertMerge("{\"a\":\"c\"}", "{\"a\":[\"b\"]}", "{\"a\":[\"b\"]}");
+        assertMerge("{\"a\":{\"b\":\"c\"}}", "{\"a\":{\"b\":\"d\",\"c\":null}}", "{\"a\":{\"b\":\"d\"}}");
+        assertMerge("{\"a\":[{\"b\":\"c\"}]}", "{\"a\":[1]}", "{\"a\":[1]}");
+        assertMerge("{\"e\":null}", "{\"a\":1}", "{\"e\":null,\"a\":1}");
+        assertMerge("{}", "{\"a\":{\"bb\":{\"ccc\":null}}}", "{\"a\":{\"bb\":{}}}");
+        assertMerge("{\"title\":\"Goodbye!\",\"author\":{\"givenName\":\"John\",\"familyName\":\"Doe\"},"
+                        + "\"tags\":[\"example\",\"sample\"],\"content\":\"This will be unchanged\"}",
+                "{\"title\":\"Hello!\",\"phoneNumber\":\"+01-123-456-7890\",\"author\":{\"familyName\":null},"
+                        + "\"tags\":[\"example\"]}",
+                "{\"title\":\"Hello!\",\"author\":{\"givenName\":\"John\"},\"tags\":[\"example\"],"
+                        + "\"content\":\"This will be unchanged\",\"phoneNumber\":\"+01-123-456-7890\"}");
+    }
+
+    @Test
+    public void testSharing() {
+        JSONObject base = parse("{\"db\":{\"host\":\"a\",\"pool\":{\"size\":4}},\"cache\":{\"ttl\":60},\"tags\":[1]}");
+        JSONObject layered = base;
+        for (int i = 0; i < 5; i++) layered = layered.merged(parse("{\"db\":{\"pool\":{\"size\":" + i + "}}}"));
+        assertEquals(4, base.getJSONObject("db").getJSONObject("pool").getItem("size"));
+        assertEquals(4, layered.getJSONObject("db").getJSONObject("pool").getItem("size"));
+
+        //Untouched values are shared, while the objects holding changed ones are copied
+        assertSame(base.getJSONObject("cache"), layered.getJSONObject("cache"));
+        assertSame(base.getItem("tags"), layered.getItem("tags"));
+        assertNotSame(base.getJSONObject("db"), layered.getJSONObject("db"));
+
+        //Objects of the patch are copied rather than shared
+        JSONObject patch = parse("{\"extra\":{\"x\":1}}");
+        JSONObject merged = base.merge(patch);
+        assertSame(base, merged);
+        assertNotSame(patch.getJSONObject("extra"), base.getJSONObject("extra"));
+        base.getJSONObject("extra").addAttribute("y", 2);
+        assertFalse(patch.getJSONObject("extra").contains("y"));
+    }
+
+    @Test
+    public void testTrackedAndFrozen() {
+        JSONObject tracked = parse("{\"a\":{\"b\":1},\"c\":{\"d\":2}}").trackChanges();
+        String before = tracked.serialise(COMPACT);
+        tracked.merge(parse("{\"a\":{\"b\":1},\"c\":{\"d\":3}}"));
+        assertEquals("{\"a\":{\"b\":1},\"c\":{\"d\":3}}", tracked.serialise(COMPACT));
+        assertNotEquals(before, tracked.serialise(COMPACT));
+
+        JSONObject frozen = parse("{\"a\":{\"b\":1}}").freeze();
+        assertEquals("{\"a\":{\"b\":2}}", frozen.merged(parse("{\"a\":{\"b\":2}}")).serialise(COMPACT));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.merge(parse("{\"a\":{\"b\":2}}")));
+    }
+}
@@ -0,0 +1,126 @@
+import com.friska.kompakt.CyclePolicy;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.exceptions.CircularReferenceException;
+import org.junit.Test;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation of large arrays and collections, which are serialised in parallel.
+ */
+public class ParallelTest {
+
+    static class Row implements JSONSerialisable {
+        int id;
+        String name;
+        double[] values;
+        Object parent;
+
+        Row(int id) {
+            this.id = id;
+            this.name = "row\n" + id;
+            this.values = new double[]{id, id / 2.0};
+        }
+    }
+
+    static class Report implements JSONSerialisable {
+        List<Row> list = new ArrayList<>();
+        Set<Object> set = new LinkedHashSet<>();
+        Object[] array;
+        Iterable<Integer> iterable;
+    }
+
+    /**
+     * A map counting how many times it has been written.
+     */
+    static class Counted extends AbstractMap<String, Integer> {
+        static final AtomicInteger WRITTEN = new AtomicInteger();
+
+        @Override
+        public Set<Entry<String, Integer>> entrySet() {
+            WRITTEN.incrementAndGet();
+            return Map.of("a", 1).entrySet();
+        }
+    }
+
+    static class Holder implements JSONSerialisable {
+        List<Object> list = new ArrayList<>();
+    }
+
+    private static Report report(int size) {
+        Report report = new Report();
+        for (int i = 0; i < size; i++) {
+            report.list.add(new Row(i));
+            report.set.add(i % 3 == 0 ? new Row(i) : List.of(i, "x" + i));
+        }
+        report.array = report.list.toArray();
+        report.iterable = () -> report.list.stream().map(r -> r.id).iterator();
+        return report;
+    }
+
+    @Test
+    public void testSameAsSequential() {
+        for (int size : new int[]{0, 1, 1023, 5000, 40000}) {
+            Report report = report(size);
+            String sequential = report.serialise();
+            try {
+                JSONSerialisable.setParallelThreshold(1);
+                assertEquals(sequential, report.serialise());
+            } finally {
+                JSONSerialisable.setParallelThreshold(1 << 16);
+            }
+        }
+    }
+
+    @Test
+    public void testCycles() {
+        Report report = report(20000);
+        report.list.get(15000).parent = report;
+        try {
+            JSONSerialisable.setParallelThreshold(1);
+            assertThrows(CircularReferenceException.class, report::serialise);
+
+            JSONSerialisable.setCyclePolicy(CyclePolicy.REFERENCE);
+            String json = report.serialise();
+            assertTrue(json.contains("\"parent\": {\"$ref\": \"#\"}"));
+
+            report.list.get(15000).parent = report.list;
+            json = report.serialise();
+            assertTrue(json.contains("\"parent\": {\"$ref\": \"#/list\"}"));
+            assertTrue(json.contains("{\"$ref\": \"#/array/15000\"}"));
+        } finally {
+            JSONSerialisable.setParallelThreshold(1 << 16);
+            JSONSerialisable.setCyclePolicy(CyclePolicy.FAIL);
+        }
+    }
+
+    @Test
+    public void testFailureCancelsChunks() throws InterruptedException {
+        //The first element fails at once, after which the other chunks are no longer needed
+        Holder holder = new Holder();
+        Row first = new Row(0);
+        first.parent = holder;
+        holder.list.add(first);
+        int size = 400000;
+        for (int i = 1; i < size; i++) holder.list.add(new Counted());
+        try {
+            JSONSerialisable.setParallelThreshold(1);
+            assertThrows(CircularReferenceException.class, holder::serialise);
+        } finally {
+            JSONSerialisable.setParallelThreshold(1 << 16);
+        }
+        Thread.sleep(200);
+        int written = Counted.WRITTEN.get();
+        Thread.sleep(200);
+        assertEquals(written, Counted.WRITTEN.get());
+        assertTrue(written < size / 2);
+    }
+}
@@ -0,0 +1,107 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.PersistentJSONArray;
+import com.friska.kompakt.PersistentJSONObject;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.exceptions.AttributeNotFoundException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link PersistentJSONObject} and {@link PersistentJSONArray}, along with their conversions.
+ */
+public class PersistentTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    @Test
+    public void testVersions() {
+        PersistentJSONObject v1 = PersistentJSONObject.EMPTY.with("a", 1).with("b", "x");
+        PersistentJSONObject v2 = v1.with("a", 2).with("c", true);
+        PersistentJSONObject v3 = v2.without("b");
+        assertEquals(1, v1.get("a"));
+        assertEquals(2, v1.size());
+        assertEquals(2, v2.get("a"));
+        assertFalse(v3.has("b"));
+        assertTrue(v2.has("b"));
+        assertSame(v3, v3.without("b"));
+        assertSame(v1, v1.with("b", v1.get("b")));
+        assertThrows(AttributeNotFoundException.class, () -> v3.get("b"));
+
+        //Replaced attributes keep their position
+        assertEquals("{\"a\":2,\"b\":\"x\",\"c\":true}", v2.serialise(COMPACT));
+        assertEquals("{\"a\":2,\"c\":true}", v3.serialise(COMPACT));
+        assertEquals(PersistentJSONObject.EMPTY, v3.without("a").without("c"));
+    }
+
+    @Test
+    public void testManyNames() {
+        PersistentJSONObject object = PersistentJSONObject.EMPTY;
+        for (int i = 0; i < 5000; i++) object = object.with("n" + i, i);
+        //"Aa" and "BB" share a hash code
+        object = object.with("Aa", "aa").with("BB", "bb");
+        assertEquals(5002, object.size());
+        assertEquals("aa", object.get("Aa"));
+        assertEquals("bb", object.get("BB"));
+        PersistentJSONObject removed = object.without("Aa");
+        assertEquals("bb", removed.get("BB"));
+        assertFalse(removed.has("Aa"));
+        for (int i = 0; i < 5000; i += 2) removed = removed.without("n" + i);
+        assertEquals(2501, removed.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i % 2 == 1, removed.has("n" + i));
+            assertEquals(i, object.get("n" + i));
+        }
+        assertEquals(object, object.without("n0").with("n0", 0));
+        assertEquals(object.hashCode(), object.without("n0").with("n0", 0).hashCode());
+    }
+
+    @Test
+    public void testArray() {
+        PersistentJSONArray array = PersistentJSONArray.EMPTY;
+        PersistentJSONArray[] versions = new PersistentJSONArray[2000];
+        for (int i = 0; i < 2000; i++) versions[i] = array = array.append(i);
+        assertEquals(2000, array.size());
+        for (int i = 0; i < 2000; i++) assertEquals(i, array.get(i));
+        assertEquals(1, versions[0].size());
+        assertThrows(IndexOutOfBoundsException.class, () -> versions[0].get(1));
+
+        PersistentJSONArray changed = array.with(5, "five").with(1999, "last");
+        assertEquals("five", changed.get(5));
+        assertEquals("last", changed.get(1999));
+        assertEquals(5, array.get(5));
+
+        int i = 0;
+        for (Object element : changed) {
+            assertEquals(i == 5 ? "five" : i == 1999 ? "last" : i, element);
+            i++;
+        }
+        assertEquals(2000, i);
+        for (PersistentJSONArray a = array; a.size() > 0; a = a.withoutLast()) {
+            assertEquals(a.size() - 1, a.get(a.size() - 1));
+            assertEquals(versions[a.size() - 1], a);
+        }
+        assertThrows(IllegalStateException.class, () -> PersistentJSONArray.EMPTY.withoutLast());
+    }
+
+    @Test
+    public void testConversion() {
+        String json = "{\"id\":1,\"items\":[{\"x\":[1,2]},null],\"meta\":{\"tags\":[\"a\"]}}";
+        JSONObject object = JSONParser.parseAsObject(json, NumberType.INT);
+        PersistentJSONObject persistent = PersistentJSONObject.from(object);
+        assertTrue(persistent.get("items") instanceof PersistentJSONArray);
+        assertTrue(((PersistentJSONArray) persistent.get("items")).get(0) instanceof PersistentJSONObject);
+        assertEquals(json, persistent.serialise(COMPACT));
+        assertEquals(object, persistent.toJSONObject());
+        assertEquals(json, persistent.toJSONObject().serialise(COMPACT));
+
+        //Versions share every unchanged subtree
+        PersistentJSONObject meta = (PersistentJSONObject) persistent.get("meta");
+        PersistentJSONObject updated = persistent.with("meta", meta.with("v", 2));
+        assertSame(persistent.get("items"), updated.get("items"));
+        assertEquals("{\"tags\":[\"a\"],\"v\":2}", ((PersistentJSONObject) updated.get("meta")).serialise(COMPACT));
+        assertEquals("[\"a\"]", meta.get("tags").toString().replaceAll("\\s", ""));
+    }
+}
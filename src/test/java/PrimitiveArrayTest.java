@@ -0,0 +1,84 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.annotations.SerialiseAsBase64;
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation of arrays of primitive types.
+ */
+public class PrimitiveArrayTest {
+
+    @Test
+    public void testPrimitiveArrays() {
+
+        class Arrays implements JSONSerialisable {
+            int[] ints = {1, -2, Integer.MAX_VALUE};
+            long[] longs = {Long.MIN_VALUE};
+            double[] doubles = {0.5, -1.25};
+            float[] floats = {3.5F};
+            short[] shorts = {};
+            byte[] bytes = {-128, 127};
+            boolean[] booleans = {true, false};
+            char[] chars = {'a', '"'};
+            int[][] matrix = {{1, 2}, {}, {3}};
+            int[] empty = null;
+        }
+
+        testClean("""
+                {
+                  "ints": [1, -2, 2147483647],
+                  "longs": [-9223372036854775808],
+                  "doubles": [0.5, -1.25],
+                  "floats": [3.5],
+                  "shorts": [],
+                  "bytes": [-128, 127],
+                  "booleans": [true, false],
+                  "chars": ["a", "\\""],
+                  "matrix": [[1, 2], [], [3]],
+                  "empty": null
+                }
+                """, new Arrays());
+    }
+
+    @Test
+    public void testBase64() {
+
+        class Blob implements JSONSerialisable {
+            @SerialiseAsBase64
+            byte[] data;
+
+            @SerialiseAsBase64
+            int[] ignoredAnnotation = {1};
+
+            byte[] raw = {1, 2};
+
+            Blob(byte[] data) {
+                this.data = data;
+            }
+        }
+
+        byte[][] inputs = {{}, {1}, {1, 2}, {1, 2, 3}, {-1, -2, -3, -4}, "Hello, Kompakt!".getBytes()};
+        for (byte[] input : inputs) {
+            testClean("{\"data\":\"" + Base64.getEncoder().encodeToString(input)
+                    + "\",\"ignoredAnnotation\":[1],\"raw\":[1,2]}", new Blob(input));
+        }
+    }
+
+    @Test
+    public void testJSONObject() {
+        JSONObject object = new JSONObject().addAttribute("values", new double[]{1.5, 2.5});
+        assertArrayEquals(new Object[]{1.5, 2.5}, object.getArray("values"));
+        assertEquals(object, new JSONObject().addAttribute("values", new double[]{1.5, 2.5}));
+        assertNotEquals(object, new JSONObject().addAttribute("values", new double[]{1.5}));
+        assertArrayEquals(new Object[]{1.5F, 2.5F}, JSONParser.parseAsObject(object.serialise()).getArray("values"));
+    }
+
+    public <T extends JSONSerialisable> void testClean(String expected, T obj) {
+        assertEquals(Utils.strip(expected), Utils.strip(obj.serialise()));
+    }
+}
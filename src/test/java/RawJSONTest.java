@@ -0,0 +1,90 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.ParserConfig;
+import com.friska.kompakt.RawJSON;
+import com.friska.kompakt.WriterConfig;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing {@link RawJSON} values verbatim, and keeping subtrees raw while parsing.
+ */
+public class RawJSONTest {
+
+    static class Envelope implements JSONSerialisable {
+        int status = 200;
+        RawJSON body;
+        Object[] parts;
+
+        Envelope(String body) {
+            this.body = RawJSON.of(body);
+            this.parts = new Object[]{this.body, List.of(RawJSON.of("true"))};
+        }
+    }
+
+    @Test
+    public void testSerialise() {
+        String body = "{\"a\" : [1,2,  {\"b\":null}], \"s\":\"x\\\"y\"}";
+        assertEquals("{\"status\":200,\"body\":" + body + ",\"parts\":[" + body + ",[true]]}",
+                new Envelope(body).serialise(WriterConfig.DEFAULT.withCompact(true)));
+        assertEquals(Utils.strip("{\"status\":200,\"body\":" + body + ",\"parts\":[" + body + ",[true]]}"),
+                Utils.strip(new Envelope(body).serialise()));
+        assertEquals("{\"raw\":[1]}",
+                new JSONObject().addAttribute("raw", RawJSON.of("[1]")).serialise(WriterConfig.DEFAULT.withCompact(true)));
+        assertThrows(IllegalArgumentException.class, () -> RawJSON.of("  "));
+    }
+
+    @Test
+    public void testParse() {
+        String json = """
+                {
+                  "status": 200,
+                  "body": {"deep": [1, 2, {"x": "]}\\""}], "n": 1.5},
+                  "items": [{"id": 1}, "two", 3],
+                  "other": {"body": [1]}
+                }""";
+        ParserConfig config = ParserConfig.DEFAULT.withRawPaths("/body", "/items/1", "/items/2", "/other/missing");
+        JSONObject parsed = (JSONObject) JSONParser.parse(json, config);
+
+        RawJSON body = parsed.getRawJSON("body");
+        assertEquals("{\"deep\": [1, 2, {\"x\": \"]}\\\"\"}], \"n\": 1.5}", body.getJSON());
+        assertEquals(1.5, ((JSONObject) body.parse(NumberType.DOUBLE)).getNumber("n"));
+
+        Object[] items = parsed.getArray("items");
+        assertTrue(items[0] instanceof JSONObject);
+        assertEquals(RawJSON.of("\"two\""), items[1]);
+        assertEquals(RawJSON.of("3"), items[2]);
+        assertTrue(parsed.getJSONObject("other").getItem("body") instanceof Object[]);
+        assertEquals(200F, parsed.getNumber("status"));
+
+        //Raw values are written back as they were
+        String reserialised = parsed.serialise(WriterConfig.DEFAULT.withCompact(true));
+        assertTrue(reserialised.contains("\"body\":{\"deep\": [1, 2, {\"x\": \"]}\\\"\"}], \"n\": 1.5}"));
+        assertEquals(JSONParser.parse(json), JSONParser.parse(reserialised));
+
+        //The whole JSON string may be kept raw
+        assertEquals(RawJSON.of(" [1] ".trim()), JSONParser.parse(" [1] ", ParserConfig.DEFAULT.withRawPaths("")));
+        assertEquals(RawJSON.of("{\"a\":1}"), JSONParser.parse("{\"a\":1}", ParserConfig.DEFAULT.withRawPaths("")));
+    }
+
+    @Test
+    public void testErrors() {
+        ParserConfig config = ParserConfig.DEFAULT.withRawPaths("/a");
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("{\"a\": [1, 2}", config));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("{\"a\": \"x}", config));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("{\"a\": [1] x}", config));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("{\"a\": tru}", config));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("{\"a\": {]}", config));
+        assertThrows(IllegalArgumentException.class, () -> JSONParser.parse("{\"a\": [{\"b\":[}]]}", config));
+        assertEquals(RawJSON.of("[{\"]\":[{}]}]"), ((JSONObject) JSONParser.parse("{\"a\":[{\"]\":[{}]}]}", config))
+                .getItem("a"));
+        assertThrows(IllegalArgumentException.class, () -> ParserConfig.DEFAULT.withRawPaths("a"));
+        assertEquals(RawJSON.of("{\"/\":1}"), ((JSONObject) JSONParser.parse("{\"a~/b\": {\"/\":1}}",
+                ParserConfig.DEFAULT.withRawPaths("/a~0~1b"))).getItem("a~/b"));
+    }
+}
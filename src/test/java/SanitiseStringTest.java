@@ -92,6 +92,35 @@ public class SanitiseStringTest {
         test(a1, t1);
     }
 
+    /**
+     * Strings that need no escaping should be returned as they are, without being copied.
+     */
+    @Test
+    public void testNoCopy(){
+        String str = "Nothing to escape here, not even \u00E9 or \u4E2D.";
+        assertSame(str, sanitiseString(str));
+    }
+
+    /**
+     * Tests control characters outside of the ASCII range below 32, and non-control characters above it.
+     */
+    @Test
+    public void testExtendedControlChars(){
+        test("\\u007F", "\u007F");
+        test("\\u0080a\\u009F", "\u0080a\u009F");
+        assertIdentity("\u00A0\u00FF\uFFFF");
+    }
+
+    /**
+     * Tests long strings consisting of many escaped characters.
+     */
+    @Test
+    public void testLong(){
+        String line = "log line with a \"quote\"\n";
+        String escaped = "log line with a \\\"quote\\\"\\n";
+        assertEquals(escaped.repeat(100_000), sanitiseString(line.repeat(100_000)));
+    }
+
     private void test(String expected, String toSanitise){
         assertEquals(expected, sanitiseString(toSanitise));
     }
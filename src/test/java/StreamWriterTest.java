@@ -0,0 +1,128 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.JSONStreamWriter;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.exceptions.CircularReferenceException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests writing sequences of objects with a {@link JSONStreamWriter}.
+ */
+public class StreamWriterTest {
+
+    static class Row implements JSONSerialisable {
+        int id;
+        String name;
+
+        Row(int id) {
+            this.id = id;
+            this.name = "row " + id;
+        }
+    }
+
+    static class Loop implements JSONSerialisable {
+        Object self = this;
+    }
+
+    @Test
+    public void testArray() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JSONStreamWriter writer = new JSONStreamWriter(out, JSONStreamWriter.Format.ARRAY)) {
+            writer.write(new Row(1)).write(null);
+            assertEquals(1, writer.writeAll(List.of(new Row(2)).iterator()));
+        }
+        assertEquals("""
+                [
+                  {
+                    "id": 1,
+                    "name": "row 1"
+                  },
+                  null,
+                  {
+                    "id": 2,
+                    "name": "row 2"
+                  }
+                ]""", out.toString());
+
+        Object[] parsed = JSONParser.parseAsArray(out.toString());
+        assertEquals(3, parsed.length);
+        assertEquals("row 2", ((JSONObject) parsed[2]).getString("name"));
+
+        StringWriter empty = new StringWriter();
+        new JSONStreamWriter(empty, JSONStreamWriter.Format.ARRAY).close();
+        assertEquals("[]", empty.toString());
+
+        StringWriter compact = new StringWriter();
+        try (JSONStreamWriter writer = new JSONStreamWriter(compact, JSONStreamWriter.Format.ARRAY,
+                WriterConfig.DEFAULT.withCompact(true))) {
+            writer.writeAll(IntStream.range(0, 2).mapToObj(Row::new));
+        }
+        assertEquals("[{\"id\":0,\"name\":\"row 0\"},{\"id\":1,\"name\":\"row 1\"}]", compact.toString());
+    }
+
+    @Test
+    public void testNDJSON() throws IOException {
+        StringWriter out = new StringWriter();
+        JSONStreamWriter writer = new JSONStreamWriter(out, JSONStreamWriter.Format.NDJSON);
+        assertEquals(20000, writer.writeAll(IntStream.range(0, 20000).mapToObj(Row::new).spliterator()));
+        //Output is written out once enough has been buffered
+        assertTrue(out.getBuffer().length() >= JSONStreamWriter.FLUSH_SIZE);
+        writer.close();
+        writer.close();
+        assertThrows(IllegalStateException.class, () -> writer.write(new Row(0)));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(20000, lines.length);
+        assertTrue(out.toString().endsWith("\n"));
+        for (int i = 0; i < lines.length; i++)
+            assertEquals("{\"id\":" + i + ",\"name\":\"row " + i + "\"}", lines[i]);
+    }
+
+    @Test
+    public void testLazy() throws IOException {
+        List<Integer> produced = new ArrayList<>();
+        Iterator<Row> cursor = new Iterator<>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < 3;
+            }
+
+            @Override
+            public Row next() {
+                produced.add(next);
+                return new Row(next++);
+            }
+        };
+        StringWriter out = new StringWriter();
+        try (JSONStreamWriter writer = new JSONStreamWriter(out, JSONStreamWriter.Format.NDJSON)) {
+            assertTrue(produced.isEmpty());
+            writer.writeAll(cursor);
+            assertEquals(3, writer.getCount());
+        }
+        assertEquals(3, out.toString().split("\n").length);
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        StringWriter out = new StringWriter();
+        try (JSONStreamWriter writer = new JSONStreamWriter(out, JSONStreamWriter.Format.ARRAY,
+                WriterConfig.DEFAULT.withCompact(true))) {
+            writer.write(new Row(1));
+            assertThrows(CircularReferenceException.class, () -> writer.write(new Loop()));
+            writer.write(new Row(2));
+        }
+        assertEquals("[{\"id\":1,\"name\":\"row 1\"},{\"id\":2,\"name\":\"row 2\"}]", out.toString());
+    }
+}
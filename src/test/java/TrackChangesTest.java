@@ -0,0 +1,191 @@
+import com.friska.kompakt.CyclePolicy;
+import com.friska.kompakt.JSONArray;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.ParserConfig;
+import com.friska.kompakt.PersistentJSONObject;
+import com.friska.kompakt.WriterConfig;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialising {@link JSONObject}s whose changes are tracked, which must always yield the same JSON string as an
+ * untracked copy, however they are changed between serialisations.
+ */
+public class TrackChangesTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    private static final String JSON = "{\"id\":1,\"stats\":{\"hits\":0,\"tags\":[\"a\",\"b\"]},"
+            + "\"rows\":[{\"x\":1},{\"x\":2,\"y\":[1,2]}],\"raw\":[3,4]}";
+
+    static class Holder implements JSONSerialisable {
+        JSONObject document;
+
+        Holder(JSONObject document) {
+            this.document = document;
+        }
+    }
+
+    private static JSONObject parse() {
+        JSONObject object = (JSONObject) JSONParser.parse(JSON, ParserConfig.DEFAULT.withJSONArrays(true)
+                .withNumberType(NumberType.INT));
+        return object.trackChanges();
+    }
+
+    /**
+     * Asserts that a tracked object is serialised as an untracked copy of it, with several configurations.
+     */
+    private static void assertFresh(JSONObject object) {
+        JSONObject copy = PersistentJSONObject.from(object).toJSONObject();
+        assertEquals(copy.serialise(COMPACT), object.serialise(COMPACT));
+        assertEquals(copy.serialise(COMPACT), object.serialise(COMPACT));
+        assertEquals(copy.serialise(), object.serialise());
+        assertEquals(copy.toString(), object.toString());
+        assertEquals(new Holder(copy).serialise(), new Holder(object).serialise());
+        assertEquals(copy.serialise(COMPACT), object.serialise(COMPACT));
+    }
+
+    @Test
+    public void testNestedChanges() {
+        JSONObject object = parse();
+        assertTrue(object.isTrackingChanges());
+        assertFresh(object);
+
+        //A counter deep inside the object is replaced
+        JSONObject stats = object.getJSONObject("stats");
+        for (int i = 1; i <= 3; i++) {
+            stats.removeAttribute("hits");
+            stats.addLong("hits", i);
+            assertFresh(object);
+        }
+        assertTrue(object.serialise(COMPACT).contains("\"hits\":3"));
+
+        object.getJSONArray("rows").getJSONObject(1).getJSONArray("y").addLong(3);
+        assertFresh(object);
+        object.getJSONArray("rows").getJSONObject(0).addAttribute("z", new JSONObject().addAttribute("w", true));
+        assertFresh(object);
+        object.getJSONArray("rows").getJSONObject(0).getJSONObject("z").addAttribute("v", "new");
+        assertFresh(object);
+        stats.getJSONArray("tags").set(0, "c");
+        assertFresh(object);
+        object.getJSONArray("rows").remove(0);
+        assertFresh(object);
+        object.getJSONArray("rows").clear();
+        assertFresh(object);
+        object.removeAttribute("id");
+        assertFresh(object);
+    }
+
+    @Test
+    public void testMovedAndShared() {
+        JSONObject object = parse();
+        assertFresh(object);
+
+        //An object moved elsewhere is still tracked by its new holder
+        JSONObject stats = (JSONObject) object.removeAttribute("stats");
+        JSONObject moved = new JSONObject().addAttribute("stats", stats);
+        object.addAttribute("moved", moved);
+        assertFresh(object);
+        stats.addAttribute("more", 1);
+        assertFresh(object);
+
+        //An object held twice is changed through either holder
+        JSONObject shared = new JSONObject().addAttribute("n", 0);
+        object.addAttribute("first", shared);
+        object.getJSONArray("rows").add(shared);
+        assertFresh(object);
+        shared.addAttribute("m", 1);
+        assertFresh(object);
+        assertTrue(object.serialise(COMPACT).contains("{\"x\":2,\"y\":[1,2]},{\"n\":0,\"m\":1}]"));
+    }
+
+    @Test
+    public void testSharedAfterSerialising() {
+        //An object encoded inside its holder is later held elsewhere as well, then changed
+        JSONObject child = new JSONObject().addAttribute("v", 1);
+        JSONObject holder = new JSONObject().addAttribute("c", child).trackChanges();
+        assertEquals("{\"c\":{\"v\":1}}", holder.serialise(COMPACT));
+        new JSONObject().addAttribute("c", child);
+        child.addAttribute("v2", 2);
+        assertEquals("{\"c\":{\"v\":1,\"v2\":2}}", holder.serialise(COMPACT));
+
+        //The same goes for an object shared by a merged copy of its holder
+        JSONObject object = parse();
+        assertFresh(object);
+        JSONObject merged = object.merged(new JSONObject().addAttribute("id", 2));
+        object.getJSONObject("stats").addAttribute("more", 1);
+        assertFresh(object);
+        assertTrue(merged.serialise(COMPACT).contains("\"more\":1"));
+    }
+
+    @Test
+    public void testMerged() throws ReflectiveOperationException {
+        JSONObject object = parse();
+        String before = object.serialise(COMPACT);
+        JSONObject stats = object.getJSONObject("stats");
+        Object encoding = encodingOf(stats);
+        assertNotNull(encoding);
+
+        //Values shared with a merged copy still tell this object when they change, and keep their JSON strings
+        JSONObject merged = object.merged(JSONParser.parseAsObject("{\"stats\":{\"hits\":5}}", NumberType.INT));
+        assertTrue(merged.serialise(COMPACT).contains("\"hits\":5"));
+        object.removeAttribute("id");
+        assertEquals(before.replace("\"id\":1,", ""), object.serialise(COMPACT));
+        assertSame(encoding, encodingOf(stats));
+        assertNotNull(encodingOf(object));
+        stats.getJSONArray("tags").add("c");
+        assertNotSame(encoding, encodingOf(stats));
+        assertFresh(object);
+    }
+
+    private static Object encodingOf(JSONObject object) throws ReflectiveOperationException {
+        Field field = JSONObject.class.getDeclaredField("encoding");
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+    @Test
+    public void testUntrackedValues() {
+        JSONObject object = new JSONObject().trackChanges();
+        int[] counts = {1, 2};
+        JSONObject inner = new JSONObject().addAttribute("counts", counts);
+        object.addAttribute("inner", inner).addAttribute("plain", new JSONObject().addAttribute("a", 1));
+        assertFresh(object);
+
+        //Arrays other than JSON arrays may change without telling their holder
+        counts[0] = 5;
+        assertEquals("{\"inner\":{\"counts\":[5,2]},\"plain\":{\"a\":1}}", object.serialise(COMPACT));
+        object.getJSONObject("plain").addAttribute("b", 2);
+        assertFresh(object);
+    }
+
+    @Test
+    public void testCycle() {
+        WriterConfig config = COMPACT.withCyclePolicy(CyclePolicy.NULL);
+        JSONObject object = new JSONObject().trackChanges();
+        JSONObject child = new JSONObject();
+        object.addAttribute("child", child);
+        assertEquals("{\"child\":{}}", object.serialise(config));
+        child.addAttribute("parent", object);
+        assertEquals("{\"child\":{\"parent\":null}}", object.serialise(config));
+        assertEquals("{\"child\":{\"parent\":null}}", object.serialise(config));
+        child.removeAttribute("parent");
+        assertEquals("{\"child\":{}}", object.serialise(config));
+    }
+
+    @Test
+    public void testFrozenChild() {
+        JSONObject object = parse();
+        JSONObject frozen = new JSONObject().addAttribute("f", JSONArray.of(1, 2)).freeze();
+        object.addAttribute("frozen", frozen);
+        assertFresh(object);
+        object.getJSONObject("stats").addAttribute("after", frozen);
+        assertFresh(object);
+    }
+}
@@ -0,0 +1,94 @@
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.NumberType;
+import com.friska.kompakt.ParserConfig;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.exceptions.IllegalTypeException;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests numbers stored unboxed in {@link JSONObject}, and parsed unboxed through {@link ParserConfig}.
+ */
+public class UnboxedTest {
+
+    private static final WriterConfig COMPACT = WriterConfig.DEFAULT.withCompact(true);
+
+    @Test
+    public void testAccessors() {
+        JSONObject object = new JSONObject()
+                .addLong("long", 1L << 40)
+                .addDouble("double", 2.5)
+                .addAttribute("boxed", 3)
+                .addAttribute("string", "4");
+        assertEquals(1L << 40, object.getLong("long"));
+        assertEquals(2.5, object.getDouble("double"), 0);
+        assertEquals(2L, object.getLong("double"));
+        assertEquals(3.0, object.getDouble("boxed"), 0);
+        assertEquals(Long.valueOf(1L << 40), object.getNumber("long"));
+        assertEquals(Double.valueOf(2.5), object.getNumber("double"));
+        assertEquals(Integer.valueOf(3), object.getNumber("boxed"));
+        assertThrows(IllegalTypeException.class, () -> object.getLong("string"));
+
+        assertEquals(new JSONObject().addAttribute("long", 1L << 40).addAttribute("double", 2.5)
+                .addAttribute("boxed", 3).addAttribute("string", "4"), object);
+        assertEquals("{\"long\":1099511627776,\"double\":2.5,\"boxed\":3,\"string\":\"4\"}", object.serialise(COMPACT));
+    }
+
+    @Test
+    public void testArrays() {
+        JSONObject object = new JSONObject()
+                .addAttribute("ints", new int[]{1, 2})
+                .addAttribute("doubles", new double[]{0.5})
+                .addAttribute("boxed", new Object[]{1, 2.5f})
+                .addAttribute("mixed", new Object[]{1, "2"});
+        assertArrayEquals(new double[]{1, 2}, object.getDoubleArray("ints"), 0);
+        assertSame(object.getItem("doubles"), object.getDoubleArray("doubles"));
+        assertArrayEquals(new long[]{1, 2}, object.getLongArray("boxed"));
+        assertArrayEquals(new Object[]{1, 2}, object.getArray("ints"));
+        assertThrows(IllegalTypeException.class, () -> object.getDoubleArray("mixed"));
+    }
+
+    @Test
+    public void testRemovals() {
+        JSONObject object = new JSONObject();
+        for (int i = 0; i < 20; i++) object.addLong("n" + i, i);
+        for (int i = 0; i < 20; i += 2) assertEquals((long) i, object.removeAttribute("n" + i));
+        for (int i = 0; i < 20; i++) object.addAttribute("s" + i, "v" + i);
+        for (int i = 1; i < 20; i += 2) assertEquals(i, object.getLong("n" + i));
+        for (int i = 0; i < 20; i++) assertEquals("v" + i, object.getString("s" + i));
+        assertEquals(30, object.jsonAttributes().size());
+    }
+
+    @Test
+    public void testParse() {
+        String json = "{\"t\":1700000000,\"v\":[1.5,2.5],\"i\":[1,2],\"b\":[true,false],\"m\":[1,\"x\",true],"
+                + "\"o\":{\"x\":-3},\"f\":false,\"n\":null}";
+        ParserConfig config = ParserConfig.DEFAULT.withUnboxedPrimitives(true);
+
+        JSONObject object = (JSONObject) JSONParser.parse(json, config.withNumberType(NumberType.DOUBLE));
+        assertEquals(1700000000L, object.getLong("t"));
+        assertEquals(Double.valueOf(1.7e9), object.getNumber("t"));
+        assertTrue(object.getItem("v") instanceof double[]);
+        assertArrayEquals(new double[]{1.5, 2.5}, object.getDoubleArray("v"), 0);
+        assertTrue(object.getItem("b") instanceof boolean[]);
+        assertArrayEquals(new Object[]{1.0, "x", true}, object.getArray("m"));
+        assertEquals(-3.0, object.getJSONObject("o").getDouble("x"), 0);
+        assertEquals(Boolean.FALSE, object.getItem("f"));
+
+        JSONObject ints = (JSONObject) JSONParser.parse(json.replace("1.5,2.5", "1,2"), config.withNumberType(NumberType.INT));
+        assertTrue(ints.getItem("i") instanceof int[]);
+        assertEquals(Integer.valueOf(1700000000), ints.getNumber("t"));
+
+        //Unboxed trees are equal to and serialise the same as boxed ones
+        for (NumberType type : new NumberType[]{NumberType.FLOAT, NumberType.DOUBLE, NumberType.BIGDECIMAL}) {
+            JSONObject boxed = (JSONObject) JSONParser.parse(json, type);
+            JSONObject unboxed = (JSONObject) JSONParser.parse(json, config.withNumberType(type));
+            assertEquals(boxed.serialise(COMPACT), unboxed.serialise(COMPACT));
+        }
+        assertEquals(2.5f, JSONParser.parse("2.5", config));
+        assertNotEquals(config, ParserConfig.DEFAULT);
+        assertTrue(config.isUnboxedPrimitives());
+    }
+}
@@ -0,0 +1,113 @@
+import com.friska.kompakt.CyclePolicy;
+import com.friska.kompakt.JSONObject;
+import com.friska.kompakt.JSONParser;
+import com.friska.kompakt.JSONSerialisable;
+import com.friska.kompakt.WriterConfig;
+import com.friska.kompakt.exceptions.CircularReferenceException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests serialisation with a {@link WriterConfig}.
+ */
+public class WriterConfigTest {
+
+    static class Person implements JSONSerialisable {
+        String name = "Zoë \"Z\"";
+        int age = 30;
+        String nickname = null;
+        List<Object> tags = new ArrayList<>(List.of("a", 1));
+        Map<String, Object> extra = new LinkedHashMap<>();
+        Object self;
+
+        Person() {
+            tags.add(null);
+            extra.put("b", null);
+            extra.put("a", true);
+        }
+    }
+
+    @Test
+    public void testCompact() {
+        WriterConfig compact = WriterConfig.DEFAULT.withCompact(true);
+        assertEquals("{\"name\":\"Zoë \\\"Z\\\"\",\"age\":30,\"nickname\":null,\"tags\":[\"a\",1,null],"
+                + "\"extra\":{\"b\":null,\"a\":true},\"self\":null}", new Person().serialise(compact));
+        assertEquals("{}", new JSONObject().serialise(compact));
+        assertEquals("{\"a\":[[],{}]}", new JSONObject().addAttribute("a", new Object[]{new int[0], Map.of()})
+                .serialise(compact));
+    }
+
+    @Test
+    public void testOptions() {
+        WriterConfig config = WriterConfig.DEFAULT.withCompact(true).withIncludeNulls(false).withAsciiOnly(true)
+                .withSortMapKeys(true);
+        assertEquals("{\"name\":\"Zo\\u00EB \\\"Z\\\"\",\"age\":30,\"tags\":[\"a\",1,null],\"extra\":{\"a\":true}}",
+                new Person().serialise(config));
+        assertEquals("{\"\\u00E9\":\"\\uD83D\\uDE00\"}",
+                new JSONObject().addAttribute("é", "\uD83D\uDE00").serialise(config));
+        assertEquals("\uD83D\uDE00", JSONParser.parseAsObject(
+                new JSONObject().addAttribute("é", "\uD83D\uDE00").serialise(config)).getString("é"));
+    }
+
+    @Test
+    public void testIndent() {
+        JSONObject object = new JSONObject().addAttribute("a", 1).addAttribute("b", "c");
+        assertEquals("{\n    \"a\": 1,\n    \"b\": \"c\"\n}", object.serialise(WriterConfig.DEFAULT.withIndentSize(4)));
+        assertEquals("{\n\"a\": 1,\n\"b\": \"c\"\n}", object.serialise(WriterConfig.DEFAULT.withIndentSize(0)));
+        assertThrows(IllegalArgumentException.class, () -> WriterConfig.DEFAULT.withIndentSize(-1));
+    }
+
+    @Test
+    public void testIndependentOfSetters() {
+        Person person = new Person();
+        person.self = person;
+        WriterConfig config = WriterConfig.DEFAULT.withCyclePolicy(CyclePolicy.NULL);
+        try {
+            JSONSerialisable.setIndentSize(7);
+            JSONSerialisable.setCyclePolicy(CyclePolicy.FAIL);
+            assertThrows(CircularReferenceException.class, person::serialise);
+            String json = person.serialise(config);
+            assertTrue(json.contains("\n  \"age\": 30"));
+            assertTrue(json.contains("\"self\": null"));
+        } finally {
+            JSONSerialisable.setIndentSize(2);
+        }
+        assertEquals(WriterConfig.DEFAULT, WriterConfig.DEFAULT.withCompact(true).withCompact(false));
+        assertNotEquals(WriterConfig.DEFAULT, config);
+    }
+
+    static class Sorted implements JSONSerialisable {
+        Map<String, Integer> map = new LinkedHashMap<>(Map.of("b", 1));
+
+        Sorted() {
+            map.put("a", 2);
+        }
+    }
+
+    @Test
+    public void testConcurrentSetters() throws InterruptedException {
+        //Each thread ends on its own setting, which must not be lost to the other thread's updates
+        Thread indent = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) JSONSerialisable.setIndentSize(i % 2 == 0 ? 4 : 3);
+        });
+        Thread sort = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) JSONSerialisable.setSortMapKeys(i % 2 == 1);
+        });
+        try {
+            indent.start();
+            sort.start();
+            indent.join();
+            sort.join();
+            assertEquals("{\n   \"map\": {\n      \"a\": 2,\n      \"b\": 1\n   }\n}", new Sorted().serialise());
+        } finally {
+            JSONSerialisable.setIndentSize(2);
+            JSONSerialisable.setSortMapKeys(false);
+        }
+    }
+}